@@ -25,7 +25,7 @@ import com.mendhak.gpslogger.common.BundleConstants;
 import com.mendhak.gpslogger.common.Session;
 import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.slf4j.Logs;
-import com.mendhak.gpslogger.loggers.nmea.NmeaSentence;
+import com.mendhak.gpslogger.loggers.nmea.NmeaParser;
 import org.slf4j.Logger;
 
 import java.util.Iterator;
@@ -43,6 +43,7 @@ class GeneralLocationListener implements LocationListener, GpsStatus.Listener, G
     protected String dgpsId;
     protected int satellitesUsedInFix;
     private Session session = Session.getInstance();
+    private final NmeaParser nmea = new NmeaParser();
 
     GeneralLocationListener(GpsLoggingService activity, String name) {
         loggingService = activity;
@@ -150,36 +151,41 @@ class GeneralLocationListener implements LocationListener, GpsStatus.Listener, G
             return;
         }
 
-        NmeaSentence nmea = new NmeaSentence(nmeaSentence);
-
-        if(nmea.isLocationSentence()){
-            if(nmea.getLatestPdop() != null){
-                this.latestPdop = nmea.getLatestPdop();
+        //The values are logged as the receiver wrote them, so 0.90 stays 0.90 and a DGPS ID of 0027 stays 0027
+        if (nmea.parse(nmeaSentence) && nmea.isLocationSentence()) {
+            String value = nmea.getPdopText();
+            if (value != null) {
+                this.latestPdop = value;
             }
 
-            if(nmea.getLatestHdop() != null){
-                this.latestHdop = nmea.getLatestHdop();
+            value = nmea.getHdopText();
+            if (value != null) {
+                this.latestHdop = value;
             }
 
-            if(nmea.getLatestVdop() != null){
-                this.latestVdop = nmea.getLatestVdop();
+            value = nmea.getVdopText();
+            if (value != null) {
+                this.latestVdop = value;
             }
 
-            if(nmea.getGeoIdHeight() != null){
-                this.geoIdHeight = nmea.getGeoIdHeight();
+            value = nmea.getGeoIdHeightText();
+            if (value != null) {
+                this.geoIdHeight = value;
             }
 
-            if(nmea.getAgeOfDgpsData() != null){
-                this.ageOfDgpsData = nmea.getAgeOfDgpsData();
+            value = nmea.getAgeOfDgpsDataText();
+            if (value != null) {
+                this.ageOfDgpsData = value;
             }
 
-            if(nmea.getDgpsId() != null){
-                this.dgpsId = nmea.getDgpsId();
+            value = nmea.getDgpsIdText();
+            if (value != null) {
+                this.dgpsId = value;
             }
-
         }
 
     }
+
     private void locationChange(Location loc) {
         Bundle b = new Bundle();
         b.putString(BundleConstants.HDOP, this.latestHdop);
@@ -53,6 +53,9 @@ import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public class GpsLoggingService extends Service  {
     private static NotificationManager notificationManager;
@@ -63,6 +66,16 @@ public class GpsLoggingService extends Service  {
 
     private static final Logger LOG = Logs.of(GpsLoggingService.class);
 
+    //Waiting for the log files to be written and zipping them can take a while on slow storage, so it's kept off the main thread
+    private static final ExecutorService AUTO_SEND = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AutoSend");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     // ---------------------------------------------------
     // Helpers and managers
     // ---------------------------------------------------
@@ -142,12 +155,15 @@ public class GpsLoggingService extends Service  {
         LOG.warn(SessionLogcatAppender.MARKER_INTERNAL, "GpsLoggingService is being destroyed by Android OS.");
         unregisterEventBus();
         removeNotification();
+        FileLoggerFactory.close();
+        session.persist();
         super.onDestroy();
     }
 
     @Override
     public void onLowMemory() {
         LOG.error("Android is low on memory!");
+        session.persist();
         super.onLowMemory();
     }
 
@@ -364,8 +380,14 @@ public class GpsLoggingService extends Service  {
         LOG.debug("Filename: " + formattedFileName);
 
         if ( !Strings.isNullOrEmpty(formattedFileName) || !Strings.isNullOrEmpty(Strings.getFormattedFileName()) ) {
-            String fileToSend = Strings.isNullOrEmpty(formattedFileName) ? Strings.getFormattedFileName() : formattedFileName;
-            FileSenderFactory.autoSendFiles(fileToSend);
+            final String fileToSend = Strings.isNullOrEmpty(formattedFileName) ? Strings.getFormattedFileName() : formattedFileName;
+            AUTO_SEND.execute(new Runnable() {
+                @Override
+                public void run() {
+                    FileLoggerFactory.flush();
+                    FileSenderFactory.autoSendFiles(fileToSend);
+                }
+            });
             setupAutoSendTimers();
         }
     }
@@ -458,6 +480,7 @@ public class GpsLoggingService extends Service  {
         stopGpsManager();
         stopPassiveManager();
         stopActivityRecognitionUpdates();
+        FileLoggerFactory.close();
         notifyClientsStarted(false);
         session.setCurrentFileName("");
         session.setCurrentFormattedFileName("");
@@ -619,7 +642,7 @@ public class GpsLoggingService extends Service  {
 
     private boolean userHasBeenStillForTooLong() {
         return !session.hasDescription() && !session.isSinglePointMode() &&
-                (session.getUserStillSinceTimeStamp() > 0 && (System.currentTimeMillis() - session.getUserStillSinceTimeStamp()) > (preferenceHelper.getMinimumLoggingInterval() * 1000));
+                (session.getUserStillSinceTimeStamp() > 0 && (System.currentTimeMillis() - session.getUserStillSinceTimeStamp()) > preferenceHelper.getLoggingConfig().minimumLoggingIntervalMillis);
     }
 
     private void startAbsoluteTimer() {
@@ -753,12 +776,13 @@ public class GpsLoggingService extends Service  {
         }
 
         long currentTimeStamp = System.currentTimeMillis();
+        LoggingConfig config = preferenceHelper.getLoggingConfig();
 
         LOG.debug("Has description? " + session.hasDescription() + ", Single point? " + session.isSinglePointMode() + ", Last timestamp: " + session.getLatestTimeStamp());
 
         // Don't log a point until the user-defined time has elapsed
         // However, if user has set an annotation, just log the point, disregard any filters
-        if (!session.hasDescription() && !session.isSinglePointMode() && (currentTimeStamp - session.getLatestTimeStamp()) < (preferenceHelper.getMinimumLoggingInterval() * 1000)) {
+        if (!session.hasDescription() && !session.isSinglePointMode() && (currentTimeStamp - session.getLatestTimeStamp()) < config.minimumLoggingIntervalMillis) {
             return;
         }
 
@@ -769,7 +793,7 @@ public class GpsLoggingService extends Service  {
             return;
         }
 
-        if(!isFromValidListener(loc)){
+        if(!config.acceptsProvider(loc.getProvider())){
             return;
         }
 
@@ -777,7 +801,7 @@ public class GpsLoggingService extends Service  {
         boolean isPassiveLocation = loc.getExtras().getBoolean(BundleConstants.PASSIVE);
         
         //check if we change of day and then write the last position of yesterday as the first position of today
-        if (preferenceHelper.shouldCreateNewFileOnceADay()) {
+        if (config.createNewFileOnceADay) {
             SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
             String today = sdf.format(new Date());
             if (!today.equals(Strings.getFormattedFileName())) {
@@ -791,7 +815,7 @@ public class GpsLoggingService extends Service  {
 
         // Don't do anything until the user-defined accuracy is reached
         // However, if user has set an annotation, just log the point, disregard any filters
-        if (!session.hasDescription() &&  preferenceHelper.getMinimumAccuracy() > 0) {
+        if (!session.hasDescription() &&  config.minimumAccuracy > 0) {
 
 
             if(!loc.hasAccuracy() || loc.getAccuracy() == 0){
@@ -799,20 +823,20 @@ public class GpsLoggingService extends Service  {
             }
 
             //Don't apply the retry interval to passive locations
-            if (!isPassiveLocation && preferenceHelper.getMinimumAccuracy() < Math.abs(loc.getAccuracy())) {
+            if (!isPassiveLocation && config.minimumAccuracy < Math.abs(loc.getAccuracy())) {
 
                 if(session.getFirstRetryTimeStamp() == 0){
                     session.setFirstRetryTimeStamp(System.currentTimeMillis());
                 }
 
-                boolean isDuringThePeriod = currentTimeStamp - session.getFirstRetryTimeStamp() <= preferenceHelper.getLoggingRetryPeriod() * 1000;
+                boolean isDuringThePeriod = currentTimeStamp - session.getFirstRetryTimeStamp() <= config.loggingRetryPeriodMillis;
                 if (isDuringThePeriod) {
                     LOG.warn("Only accuracy of " + String.valueOf(loc.getAccuracy()) + " m. Point discarded." + getString(R.string.inaccurate_point_discarded));
                     //return and keep trying
                     return;
                 }
 
-                if (currentTimeStamp - session.getFirstRetryTimeStamp() > preferenceHelper.getLoggingRetryPeriod() * 1000) {
+                if (currentTimeStamp - session.getFirstRetryTimeStamp() > config.loggingRetryPeriodMillis) {
                     LOG.warn("Only accuracy of " + String.valueOf(loc.getAccuracy()) + " m and timeout reached." + getString(R.string.inaccurate_point_discarded));
                     //Give up for now
                     stopManagerAndResetAlarm();
@@ -829,12 +853,12 @@ public class GpsLoggingService extends Service  {
 
         //Don't do anything until the user-defined distance has been traversed
         // However, if user has set an annotation, just log the point, disregard any filters
-        if (!session.hasDescription() && !session.isSinglePointMode() && preferenceHelper.getMinimumDistanceInterval() > 0 && session.hasValidLocation()) {
+        if (!session.hasDescription() && !session.isSinglePointMode() && config.minimumDistanceInterval > 0 && session.hasValidLocation()) {
 
             double distanceTraveled = Maths.calculateDistance(loc.getLatitude(), loc.getLongitude(),
                     session.getCurrentLatitude(), session.getCurrentLongitude());
 
-            if (preferenceHelper.getMinimumDistanceInterval() > distanceTraveled) {
+            if (config.minimumDistanceInterval > distanceTraveled) {
                 LOG.warn(String.format(getString(R.string.not_enough_distance_traveled), String.valueOf(Math.floor(distanceTraveled))) + ", point discarded");
                 stopManagerAndResetAlarm();
                 return;
@@ -880,23 +904,6 @@ public class GpsLoggingService extends Service  {
         return false;
     }
 
-    private boolean isFromValidListener(Location loc) {
-
-        if(!preferenceHelper.getChosenListeners().contains(LocationManager.GPS_PROVIDER) && !preferenceHelper.getChosenListeners().contains(LocationManager.NETWORK_PROVIDER)){
-            return true;
-        }
-
-        if(!preferenceHelper.getChosenListeners().contains(LocationManager.NETWORK_PROVIDER)){
-            return loc.getProvider().equalsIgnoreCase(LocationManager.GPS_PROVIDER);
-        }
-
-        if(!preferenceHelper.getChosenListeners().contains(LocationManager.GPS_PROVIDER)){
-            return !loc.getProvider().equalsIgnoreCase(LocationManager.GPS_PROVIDER);
-        }
-
-        return true;
-    }
-
     private void setDistanceTraveled(Location loc) {
         // Distance
         if (session.getPreviousLocationInfo() == null) {
@@ -914,7 +921,7 @@ public class GpsLoggingService extends Service  {
     }
 
     protected void stopManagerAndResetAlarm() {
-        if (!preferenceHelper.shouldKeepGPSOnBetweenFixes()) {
+        if (!preferenceHelper.getLoggingConfig().keepGpsOnBetweenFixes) {
             stopGpsManager();
         }
 
@@ -987,9 +994,8 @@ public class GpsLoggingService extends Service  {
 
     public void onNmeaSentence(long timestamp, String nmeaSentence) {
 
-        if (preferenceHelper.shouldLogToNmea()) {
-            NmeaFileLogger nmeaLogger = new NmeaFileLogger(Strings.getFormattedFileName());
-            nmeaLogger.write(timestamp, nmeaSentence);
+        if (preferenceHelper.getLoggingConfig().logToNmea) {
+            NmeaFileLogger.getInstance().write(timestamp, nmeaSentence);
         }
     }
 
@@ -1119,6 +1125,9 @@ public class GpsLoggingService extends Service  {
             //Switch current profile name
             preferenceHelper.setCurrentProfileName(switchToProfileEvent.newProfileName);
 
+            //Loggers built from the old profile's settings no longer apply
+            FileLoggerFactory.invalidateLoggers();
+
         } catch (IOException e) {
             LOG.error("Could not save profile to file", e);
         }
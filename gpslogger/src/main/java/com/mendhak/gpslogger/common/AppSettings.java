@@ -22,6 +22,7 @@ package com.mendhak.gpslogger.common;
 import android.app.Application;
 import com.mendhak.gpslogger.BuildConfig;
 import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.senders.UploadConcurrency;
 import com.path.android.jobqueue.JobManager;
 import com.path.android.jobqueue.config.Configuration;
 import com.path.android.jobqueue.log.CustomLogger;
@@ -53,7 +54,8 @@ public class AppSettings extends Application {
                 .networkUtil(new WifiNetworkUtil(getInstance()))
                 .consumerKeepAlive(60)
                 .minConsumerCount(0)
-                .maxConsumerCount(1)
+                .maxConsumerCount(UploadConcurrency.MAX_PARALLEL_JOBS)
+                .loadFactor(1)
                 .customLogger(jobQueueLogger)
                 .build();
         jobManager = new JobManager(this, config);
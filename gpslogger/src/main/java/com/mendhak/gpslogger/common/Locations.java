@@ -21,10 +21,56 @@ package com.mendhak.gpslogger.common;
 
 
 import android.location.Location;
+import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 public class Locations {
 
+    /**
+     * Writes a location, including its extras, to a serialization stream.
+     * Location isn't Serializable, so anything holding one marks it transient and calls this from writeObject.
+     */
+    public static void writeLocation(ObjectOutputStream out, Location loc) throws IOException {
+        out.writeBoolean(loc != null);
+        if (loc == null) {
+            return;
+        }
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            loc.writeToParcel(parcel, 0);
+            byte[] bytes = parcel.marshall();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Reads back a location written by {@link #writeLocation(ObjectOutputStream, Location)}
+     */
+    public static Location readLocation(ObjectInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return Location.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
 
     public static Location getLocationWithAdjustedAltitude(Location loc, PreferenceHelper ph) {
         return getLocation(loc, ph);
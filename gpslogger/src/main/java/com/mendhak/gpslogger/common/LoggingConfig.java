@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.common;
+
+import android.location.LocationManager;
+
+import java.util.Set;
+
+/**
+ * The preferences GpsLoggingService checks for every fix and NMEA sentence, read once and parsed into plain values.
+ * Get the current one from {@link PreferenceHelper#getLoggingConfig()}, which builds a new one after any preference
+ * changes, including a profile switch. A config never changes once built.
+ */
+public class LoggingConfig {
+
+    /**
+     * Seconds to wait between points
+     */
+    public final int minimumLoggingInterval;
+
+    /**
+     * {@link #minimumLoggingInterval} in milliseconds
+     */
+    public final long minimumLoggingIntervalMillis;
+
+    /**
+     * Worst accuracy in meters a point may have, 0 for any
+     */
+    public final int minimumAccuracy;
+
+    /**
+     * Meters to travel between points, 0 for any
+     */
+    public final int minimumDistanceInterval;
+
+    /**
+     * How long to keep trying for an accurate point, in milliseconds
+     */
+    public final long loggingRetryPeriodMillis;
+
+    public final boolean createNewFileOnceADay;
+    public final boolean keepGpsOnBetweenFixes;
+    public final boolean logToNmea;
+    public final boolean notLogIfUserIsStill;
+
+    public final boolean listensToGps;
+    public final boolean listensToNetwork;
+    public final boolean listensToPassive;
+
+    public LoggingConfig(PreferenceHelper preferenceHelper) {
+        minimumLoggingInterval = preferenceHelper.getMinimumLoggingInterval();
+        minimumLoggingIntervalMillis = minimumLoggingInterval * 1000L;
+        minimumAccuracy = preferenceHelper.getMinimumAccuracy();
+        minimumDistanceInterval = preferenceHelper.getMinimumDistanceInterval();
+        loggingRetryPeriodMillis = preferenceHelper.getLoggingRetryPeriod() * 1000L;
+
+        createNewFileOnceADay = preferenceHelper.shouldCreateNewFileOnceADay();
+        keepGpsOnBetweenFixes = preferenceHelper.shouldKeepGPSOnBetweenFixes();
+        logToNmea = preferenceHelper.shouldLogToNmea();
+        notLogIfUserIsStill = preferenceHelper.shouldNotLogIfUserIsStill();
+
+        Set<String> listeners = preferenceHelper.getChosenListeners();
+        listensToGps = listeners.contains(LocationManager.GPS_PROVIDER);
+        listensToNetwork = listeners.contains(LocationManager.NETWORK_PROVIDER);
+        listensToPassive = listeners.contains(LocationManager.PASSIVE_PROVIDER);
+    }
+
+    /**
+     * Whether a location from this provider should be logged, given the listeners the user has chosen.
+     * Passive locations can come from any provider, so only GPS or network being chosen on its own narrows it down.
+     */
+    public boolean acceptsProvider(String provider) {
+        if (!listensToGps && !listensToNetwork) {
+            return true;
+        }
+
+        if (!listensToNetwork) {
+            return provider.equalsIgnoreCase(LocationManager.GPS_PROVIDER);
+        }
+
+        if (!listensToGps) {
+            return !provider.equalsIgnoreCase(LocationManager.GPS_PROVIDER);
+        }
+
+        return true;
+    }
+}
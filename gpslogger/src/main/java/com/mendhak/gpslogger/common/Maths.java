@@ -83,6 +83,17 @@ public class Maths {
         return mps * 1.94384449;
     }
 
+    /**
+     * Division rounding towards negative infinity, as Math.floorDiv which isn't available before API 24.
+     */
+    public static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            quotient--;
+        }
+        return quotient;
+    }
+
     /**
      * Checks bundle in the Location object for satellties used in fix.
      * @param loc The location object to query
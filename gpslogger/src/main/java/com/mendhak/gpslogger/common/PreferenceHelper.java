@@ -42,6 +42,23 @@ public class PreferenceHelper {
     private SharedPreferences prefs;
     private static final Logger LOG = Logs.of(PreferenceHelper.class);
 
+    private volatile LoggingConfig loggingConfig;
+    private volatile int preferenceChanges;
+    private boolean listeningForLoggingConfigChanges = false;
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener loggingConfigInvalidator =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    //Session values share the same file but aren't preferences
+                    if (key != null && key.startsWith("SESSION_")) {
+                        return;
+                    }
+                    preferenceChanges++;
+                    loggingConfig = null;
+                }
+            };
+
     /**
      * Use PreferenceHelper.getInstance()
      */
@@ -58,6 +75,40 @@ public class PreferenceHelper {
         return instance;
     }
 
+    /**
+     * Registers a listener to be told when any preference changes.
+     * SharedPreferences only holds a weak reference, so the caller must keep the listener referenced.
+     */
+    public void registerOnPreferenceChangeListener(SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        prefs.registerOnSharedPreferenceChangeListener(listener);
+    }
+
+    /**
+     * The preferences checked for every point, as plain values.
+     * The same config is returned until a preference changes, so callers on the logging path needn't hold on to it.
+     */
+    public LoggingConfig getLoggingConfig() {
+        LoggingConfig config = loggingConfig;
+        if (config != null) {
+            return config;
+        }
+
+        synchronized (this) {
+            if (!listeningForLoggingConfigChanges) {
+                prefs.registerOnSharedPreferenceChangeListener(loggingConfigInvalidator);
+                listeningForLoggingConfigChanges = true;
+            }
+        }
+
+        //Only keep it if nothing changed while it was being read
+        int changesBefore = preferenceChanges;
+        config = new LoggingConfig(this);
+        if (changesBefore == preferenceChanges) {
+            loggingConfig = config;
+        }
+        return config;
+    }
+
     /**
      * Whether to auto send to Dropbox
      */
@@ -249,6 +300,14 @@ public class PreferenceHelper {
     }
 
 
+    /**
+     * Number of seconds to keep an FTP connection open after an upload, for the next file to reuse
+     */
+    @ProfilePreference(name = PreferenceNames.FTP_KEEP_ALIVE)
+    public int getFtpKeepAliveSeconds() {
+        return Strings.toInt(prefs.getString(PreferenceNames.FTP_KEEP_ALIVE, "60"), 60);
+    }
+
     /**
      * Whether to auto send to FTP target
      */
@@ -440,6 +499,22 @@ public class PreferenceHelper {
         prefs.edit().putString(PreferenceNames.ABSOLUTE_TIMEOUT, String.valueOf(absoluteTimeout)).apply();
     }
 
+    /**
+     * How many points to collect before writing them to the log files together
+     */
+    @ProfilePreference(name = PreferenceNames.WRITE_BATCH_SIZE)
+    public int getWriteBatchSize() {
+        return (Strings.toInt(prefs.getString(PreferenceNames.WRITE_BATCH_SIZE, "10"), 10));
+    }
+
+    /**
+     * The longest a point is held in memory before being written to the log files, in seconds
+     */
+    @ProfilePreference(name = PreferenceNames.WRITE_BATCH_INTERVAL)
+    public int getWriteBatchInterval() {
+        return (Strings.toInt(prefs.getString(PreferenceNames.WRITE_BATCH_INTERVAL, "10"), 10));
+    }
+
     /**
      * Whether to start logging on application launch
      */
@@ -589,6 +664,31 @@ public class PreferenceHelper {
         return prefs.getString(PreferenceNames.LOG_TO_URL_HEADERS, "");
     }
 
+    /**
+     * How points are combined when sent to the custom URL in batches: OFF sends a request per point,
+     * JSON sends the bodies as a JSON array and LINES sends them one per line
+     */
+    @ProfilePreference(name = PreferenceNames.LOG_TO_URL_BATCH_FORMAT)
+    public String getCustomLoggingBatchFormat() {
+        return prefs.getString(PreferenceNames.LOG_TO_URL_BATCH_FORMAT, "OFF");
+    }
+
+    /**
+     * How many points to collect before sending them to the custom URL in one request
+     */
+    @ProfilePreference(name = PreferenceNames.LOG_TO_URL_BATCH_SIZE)
+    public int getCustomLoggingBatchSize() {
+        return (Strings.toInt(prefs.getString(PreferenceNames.LOG_TO_URL_BATCH_SIZE, "50"), 50));
+    }
+
+    /**
+     * The longest a point waits to be sent to the custom URL with its batch, in seconds
+     */
+    @ProfilePreference(name = PreferenceNames.LOG_TO_URL_BATCH_INTERVAL)
+    public int getCustomLoggingBatchInterval() {
+        return (Strings.toInt(prefs.getString(PreferenceNames.LOG_TO_URL_BATCH_INTERVAL, "60"), 60));
+    }
+
     /**
      * The custom URL to log to.  Relevant only if {@link #shouldLogToCustomUrl()} returns true.
      */
@@ -839,6 +939,15 @@ public class PreferenceHelper {
     }
 
 
+    /**
+     * Milliseconds to wait between UDP datagrams sent to OpenGTS, 0 to send them back to back
+     */
+    @ProfilePreference(name = PreferenceNames.OPENGTS_UDP_PACING)
+    public int getOpenGTSUdpPacingMillis() {
+        return Strings.toInt(prefs.getString(PreferenceNames.OPENGTS_UDP_PACING, "0"), 0);
+    }
+
+
     /**
      * Sets OpenStreetMap OAuth Token for auto send
      */
@@ -1006,6 +1115,14 @@ public class PreferenceHelper {
         return prefs.getBoolean(PreferenceNames.AUTOSEND_WIFI_ONLY, false);
     }
 
+    /**
+     * Combined upload rate for all auto send targets in kilobytes per second, 0 for no limit
+     */
+    @ProfilePreference(name = PreferenceNames.AUTOSEND_BANDWIDTH_LIMIT)
+    public int getAutoSendBandwidthLimit() {
+        return Strings.toInt(prefs.getString(PreferenceNames.AUTOSEND_BANDWIDTH_LIMIT, "0"), 0);
+    }
+
 
     @ProfilePreference(name = PreferenceNames.CURRENT_PROFILE_NAME)
     public String getCurrentProfileName() {
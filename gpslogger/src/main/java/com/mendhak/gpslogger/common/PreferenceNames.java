@@ -27,6 +27,8 @@ public  class PreferenceNames {
     public static final String KEEP_GPS_ON_BETWEEN_FIXES = "keep_fix";
     public static final String LOGGING_RETRY_TIME = "retry_time";
     public static final String ABSOLUTE_TIMEOUT = "absolute_timeout";
+    public static final String WRITE_BATCH_SIZE = "write_batch_size";
+    public static final String WRITE_BATCH_INTERVAL = "write_batch_interval";
     public static final String START_LOGGING_ON_APP_LAUNCH = "startonapplaunch";
     public static final String START_LOGGING_ON_BOOTUP = "startonbootup";
     public static final String LOG_TO_KML = "log_kml";
@@ -40,6 +42,9 @@ public  class PreferenceNames {
     public static final String LOG_TO_URL_BODY = "log_customurl_body";
     public static final String LOG_TO_URL_HEADERS = "log_customurl_headers";
     public static final String LOG_TO_URL_METHOD = "log_customurl_method";
+    public static final String LOG_TO_URL_BATCH_FORMAT = "log_customurl_batch_format";
+    public static final String LOG_TO_URL_BATCH_SIZE = "log_customurl_batch_size";
+    public static final String LOG_TO_URL_BATCH_INTERVAL = "log_customurl_batch_interval";
     public static final String LOG_TO_OPENGTS = "log_opengts";
     public static final String LOCATION_LISTENERS = "listeners";
     public static final String NEW_FILE_CREATION_MODE = "new_file_creation";
@@ -67,6 +72,7 @@ public  class PreferenceNames {
     public static final String OPENGTS_SERVER_PATH = "autoopengts_server_path";
     public static final String OPENGTS_DEVICE_ID = "opengts_device_id";
     public static final String OPENGTS_ACCOUNT_NAME = "opengts_accountname";
+    public static final String OPENGTS_UDP_PACING = "opengts_udp_pacing";
     public static final String HIDE_NOTIFICATION_BUTTONS = "hide_notification_buttons";
     public static final String HIDE_NOTIFICATION_FROM_STATUS_BAR = "hide_notification_from_status_bar";
     public static final String DISPLAY_IMPERIAL = "useImperial";
@@ -95,6 +101,7 @@ public  class PreferenceNames {
     public static final String FTP_IMPLICIT = "autoftp_implicit";
     public static final String AUTOSEND_FTP_ENABLED = "autoftp_enabled";
     public static final String FTP_DIRECTORY = "autoftp_directory";
+    public static final String FTP_KEEP_ALIVE = "autoftp_keepalive";
     public static final String OWNCLOUD_SERVER = "owncloud_server";
     public static final String OWNCLOUD_USERNAME = "owncloud_username";
     public static final String OWNCLOUD_PASSWORD = "owncloud_password";
@@ -106,6 +113,7 @@ public  class PreferenceNames {
     public static final String ALTITUDE_SUBTRACT_OFFSET = "altitude_subtractoffset";
     public static final String ALTITUDE_SHOULD_ADJUST = "altitude_subtractgeoidheight";
     public static final String AUTOSEND_WIFI_ONLY = "autosend_wifionly";
+    public static final String AUTOSEND_BANDWIDTH_LIMIT = "autosend_bandwidth_limit";
     public static final String CURRENT_PROFILE_NAME = "current_profile_name";
     public static final String SELECTED_NAVITEM = "selected_navitem";
 
@@ -41,6 +41,15 @@ public class SerializableLocation implements Serializable {
     private String detectedActivity;
 
 
+    /**
+     * An empty location to be filled in with the setters, as android.location.Location(provider) would be.
+     * As with Location, setting altitude, accuracy, bearing or speed marks that value as present.
+     */
+    public SerializableLocation(String provider) {
+        this.provider = provider;
+        this.detectedActivity = "";
+    }
+
     public SerializableLocation(Location loc) {
 
         altitude = loc.getAltitude();
@@ -85,10 +94,12 @@ public class SerializableLocation implements Serializable {
 
     public void setAltitude(double altitude){
         this.altitude = altitude;
+        this.hasAltitude = true;
     }
 
     public void setAccuracy(double accuracy) {
         this.accuracy = accuracy;
+        this.hasAccuracy = true;
     }
 
     public float getBearing() {
@@ -97,6 +108,7 @@ public class SerializableLocation implements Serializable {
 
     public void setBearing(float bearing) {
         this.bearing = bearing;
+        this.hasBearing = true;
     }
 
     public double getLatitude() {
@@ -129,6 +141,7 @@ public class SerializableLocation implements Serializable {
 
     public void setSpeed(float speed) {
         this.speed = speed;
+        this.hasSpeed = true;
     }
 
     public long getTime() {
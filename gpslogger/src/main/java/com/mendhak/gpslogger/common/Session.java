@@ -25,110 +25,246 @@ import android.location.Location;
 import android.preference.PreferenceManager;
 import com.google.android.gms.location.DetectedActivity;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State of the current logging session, shared between the service and the UI.
+ * Values are held in memory, so the service can update them for every fix and the UI can read them from any thread
+ * without going near storage. They're saved to the SESSION_ preferences a few seconds after a change, all in one
+ * write, and straight away by {@link #persist()} when logging starts or stops or the service is going away, so a
+ * restarted process carries on where it left off.
+ */
 public class Session {
 
+    static final long PERSIST_DELAY_MILLIS = 5000;
 
-    private static Session instance = null;
-    private SharedPreferences prefs;
-    private Location previousLocationInfo;
-    private Location currentLocationInfo;
+    private final static ScheduledExecutorService PERSISTER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Session");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
-    private Session() {
+    private static Session instance = null;
+    private final SharedPreferences prefs;
+    private volatile Location previousLocationInfo;
+    private volatile Location currentLocationInfo;
+
+    private volatile boolean singlePointMode;
+    private volatile boolean towerEnabled;
+    private volatile boolean gpsEnabled;
+    private volatile boolean started;
+    private volatile long startTimeStamp;
+    private volatile boolean usingGps;
+    private volatile String currentFileName;
+    private volatile int visibleSatelliteCount;
+    private volatile double totalTravelled;
+    private volatile int numLegs;
+    private volatile long latestTimeStamp;
+    private volatile boolean addNewTrackSegment;
+    private volatile float autoSendDelay;
+    private volatile boolean boundToService;
+    private volatile String description;
+    private volatile boolean waitingForLocation;
+    private volatile boolean annotationMarked;
+    private volatile String currentFormattedFileName;
+    private volatile long userStillSinceTimeStamp;
+    private volatile long firstRetryTimeStamp;
+    private volatile String latestDetectedActivityName;
+
+    private boolean changed;
+    private boolean persistScheduled;
+
+    private final Runnable scheduledPersist = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (Session.this) {
+                persistScheduled = false;
+            }
+            persist();
+        }
+    };
 
+    Session(SharedPreferences prefs) {
+        this.prefs = prefs;
+        load();
     }
 
-    public static Session getInstance() {
+    public static synchronized Session getInstance() {
         if (instance == null) {
-            instance = new Session();
-            instance.prefs = PreferenceManager.getDefaultSharedPreferences(AppSettings.getInstance().getApplicationContext());
+            instance = new Session(PreferenceManager.getDefaultSharedPreferences(AppSettings.getInstance().getApplicationContext()));
         }
 
         return instance;
     }
 
     private String get(String key, String defaultValue) {
-        return prefs.getString("SESSION_" + key, defaultValue);
+        String value = prefs.getString("SESSION_" + key, defaultValue);
+        return value == null ? defaultValue : value;
+    }
+
+    private void load() {
+        singlePointMode = Boolean.valueOf(get("isSinglePointMode", "false"));
+        towerEnabled = Boolean.valueOf(get("towerEnabled", "false"));
+        gpsEnabled = Boolean.valueOf(get("gpsEnabled", "false"));
+        started = Boolean.valueOf(get("LOGGING_STARTED", "false"));
+        startTimeStamp = Long.valueOf(get("startTimeStamp", "0"));
+        usingGps = Boolean.valueOf(get("isUsingGps", "false"));
+        currentFileName = get("currentFileName", "");
+        visibleSatelliteCount = Integer.valueOf(get("satellites", "0"));
+        totalTravelled = Double.valueOf(get("totalTravelled", "0"));
+        numLegs = Integer.valueOf(get("numLegs", "0"));
+        latestTimeStamp = Long.valueOf(get("latestTimeStamp", "0"));
+        addNewTrackSegment = Boolean.valueOf(get("addNewTrackSegment", "false"));
+        autoSendDelay = Float.valueOf(get("autoSendDelay", "0"));
+        boundToService = Boolean.valueOf(get("isBound", "false"));
+        description = get("description", "");
+        waitingForLocation = Boolean.valueOf(get("waitingForLocation", "false"));
+        annotationMarked = Boolean.valueOf(get("annotationMarked", "false"));
+        currentFormattedFileName = get("currentFormattedFileName", "");
+        userStillSinceTimeStamp = Long.valueOf(get("userStillSinceTimeStamp", "0"));
+        firstRetryTimeStamp = Long.valueOf(get("firstRetryTimeStamp", "0"));
+        latestDetectedActivityName = get("latestDetectedActivity", "");
     }
 
-    private void set(String key, String value) {
-        prefs.edit().putString("SESSION_" + key, value).apply();
+    /**
+     * Saves the session now if anything has changed since it was last saved
+     */
+    public void persist() {
+        synchronized (this) {
+            if (!changed) {
+                return;
+            }
+            changed = false;
+        }
+
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.putString("SESSION_isSinglePointMode", String.valueOf(singlePointMode));
+        editor.putString("SESSION_towerEnabled", String.valueOf(towerEnabled));
+        editor.putString("SESSION_gpsEnabled", String.valueOf(gpsEnabled));
+        editor.putString("SESSION_LOGGING_STARTED", String.valueOf(started));
+        if (startTimeStamp != 0) {
+            editor.putString("SESSION_startTimeStamp", String.valueOf(startTimeStamp));
+        }
+        editor.putString("SESSION_isUsingGps", String.valueOf(usingGps));
+        editor.putString("SESSION_currentFileName", currentFileName);
+        editor.putString("SESSION_satellites", String.valueOf(visibleSatelliteCount));
+        editor.putString("SESSION_totalTravelled", String.valueOf(totalTravelled));
+        editor.putString("SESSION_numLegs", String.valueOf(numLegs));
+        editor.putString("SESSION_latestTimeStamp", String.valueOf(latestTimeStamp));
+        editor.putString("SESSION_addNewTrackSegment", String.valueOf(addNewTrackSegment));
+        editor.putString("SESSION_autoSendDelay", String.valueOf(autoSendDelay));
+        editor.putString("SESSION_isBound", String.valueOf(boundToService));
+        editor.putString("SESSION_description", description);
+        editor.putString("SESSION_waitingForLocation", String.valueOf(waitingForLocation));
+        editor.putString("SESSION_annotationMarked", String.valueOf(annotationMarked));
+        editor.putString("SESSION_currentFormattedFileName", currentFormattedFileName);
+        editor.putString("SESSION_userStillSinceTimeStamp", String.valueOf(userStillSinceTimeStamp));
+        editor.putString("SESSION_firstRetryTimeStamp", String.valueOf(firstRetryTimeStamp));
+        editor.putString("SESSION_latestDetectedActivity", latestDetectedActivityName);
+        editor.apply();
+    }
+
+    /**
+     * Notes that a value has changed, to be saved shortly along with anything else that changes meanwhile
+     */
+    private void changed() {
+        synchronized (this) {
+            changed = true;
+            if (persistScheduled) {
+                return;
+            }
+            persistScheduled = true;
+        }
+        PERSISTER.schedule(scheduledPersist, PERSIST_DELAY_MILLIS, TimeUnit.MILLISECONDS);
     }
 
 
     public boolean isSinglePointMode() {
-        return Boolean.valueOf(get("isSinglePointMode", "false"));
+        return singlePointMode;
     }
 
     public void setSinglePointMode(boolean singlePointMode) {
-        set("isSinglePointMode", String.valueOf(singlePointMode));
+        this.singlePointMode = singlePointMode;
+        changed();
     }
 
     /**
      * @return whether GPS (tower) is enabled
      */
     public boolean isTowerEnabled() {
-        return Boolean.valueOf(get("towerEnabled", "false"));
+        return towerEnabled;
     }
 
     /**
      * @param towerEnabled set whether GPS (tower) is enabled
      */
     public void setTowerEnabled(boolean towerEnabled) {
-        set("towerEnabled", String.valueOf(towerEnabled));
+        this.towerEnabled = towerEnabled;
+        changed();
     }
 
     /**
      * @return whether GPS (satellite) is enabled
      */
     public boolean isGpsEnabled() {
-        return Boolean.valueOf(get("gpsEnabled", "false"));
+        return gpsEnabled;
     }
 
     /**
      * @param gpsEnabled set whether GPS (satellite) is enabled
      */
     public void setGpsEnabled(boolean gpsEnabled) {
-        set("gpsEnabled", String.valueOf(gpsEnabled));
+        this.gpsEnabled = gpsEnabled;
+        changed();
     }
 
     /**
      * @return whether logging has started
      */
     public boolean isStarted() {
-        return Boolean.valueOf(get("LOGGING_STARTED", "false"));
+        return started;
     }
 
     /**
      * @param isStarted set whether logging has started
      */
     public void setStarted(boolean isStarted) {
-
-        set("LOGGING_STARTED", String.valueOf(isStarted));
+        this.started = isStarted;
 
         if (isStarted) {
-            set("startTimeStamp", String.valueOf(System.currentTimeMillis()));
+            this.startTimeStamp = System.currentTimeMillis();
         }
+
+        changed();
+        persist();
     }
 
     /**
      * @return the isUsingGps
      */
     public boolean isUsingGps() {
-        return Boolean.valueOf(get("isUsingGps", "false"));
+        return usingGps;
     }
 
     /**
      * @param isUsingGps the isUsingGps to set
      */
     public void setUsingGps(boolean isUsingGps) {
-        set("isUsingGps", String.valueOf(isUsingGps));
+        this.usingGps = isUsingGps;
+        changed();
     }
 
     /**
      * @return the currentFileName (without extension)
      */
     public String getCurrentFileName() {
-        return get("currentFileName", "");
+        return currentFileName;
     }
 
 
@@ -136,21 +272,23 @@ public class Session {
      * @param currentFileName the currentFileName to set
      */
     public void setCurrentFileName(String currentFileName) {
-        set("currentFileName", currentFileName);
+        this.currentFileName = currentFileName == null ? "" : currentFileName;
+        changed();
     }
 
     /**
      * @return the number of satellites visible
      */
     public int getVisibleSatelliteCount() {
-        return Integer.valueOf(get("satellites", "0"));
+        return visibleSatelliteCount;
     }
 
     /**
      * @param satellites sets the number of visible satellites
      */
     public void setVisibleSatelliteCount(int satellites) {
-        set("satellites", String.valueOf(satellites));
+        this.visibleSatelliteCount = satellites;
+        changed();
     }
 
 
@@ -206,15 +344,16 @@ public class Session {
     }
 
     public double getTotalTravelled() {
-        return Double.valueOf(get("totalTravelled", "0"));
+        return totalTravelled;
     }
 
     public int getNumLegs() {
-        return Integer.valueOf(get("numLegs", "0"));
+        return numLegs;
     }
 
     public void setNumLegs(int numLegs) {
-        set("numLegs", String.valueOf(numLegs));
+        this.numLegs = numLegs;
+        changed();
     }
 
     public void setTotalTravelled(double totalTravelled) {
@@ -223,7 +362,8 @@ public class Session {
         } else {
             setNumLegs(getNumLegs() + 1);
         }
-        set("totalTravelled", String.valueOf(totalTravelled));
+        this.totalTravelled = totalTravelled;
+        changed();
     }
 
     public Location getPreviousLocationInfo() {
@@ -257,49 +397,52 @@ public class Session {
      * @return the latestTimeStamp (for location info)
      */
     public long getLatestTimeStamp() {
-        return Long.valueOf(get("latestTimeStamp", "0"));
+        return latestTimeStamp;
     }
 
     /**
      * @return the timestamp when measuring was started
      */
     public long getStartTimeStamp() {
-        return Long.valueOf(get("startTimeStamp", String.valueOf(System.currentTimeMillis())));
+        return startTimeStamp != 0 ? startTimeStamp : System.currentTimeMillis();
     }
 
     /**
      * @param latestTimeStamp the latestTimeStamp (for location info) to set
      */
     public void setLatestTimeStamp(long latestTimeStamp) {
-        set("latestTimeStamp", String.valueOf(latestTimeStamp));
+        this.latestTimeStamp = latestTimeStamp;
+        changed();
     }
 
     /**
      * @return whether to create a new track segment
      */
     public boolean shouldAddNewTrackSegment() {
-        return Boolean.valueOf(get("addNewTrackSegment", "false"));
+        return addNewTrackSegment;
     }
 
     /**
      * @param addNewTrackSegment set whether to create a new track segment
      */
     public void setAddNewTrackSegment(boolean addNewTrackSegment) {
-        set("addNewTrackSegment", String.valueOf(addNewTrackSegment));
+        this.addNewTrackSegment = addNewTrackSegment;
+        changed();
     }
 
     /**
      * @param autoSendDelay the autoSendDelay to set
      */
     public void setAutoSendDelay(float autoSendDelay) {
-        set("autoSendDelay", String.valueOf(autoSendDelay));
+        this.autoSendDelay = autoSendDelay;
+        changed();
     }
 
     /**
      * @return the autoSendDelay to use for the timer
      */
     public float getAutoSendDelay() {
-        return Float.valueOf(get("autoSendDelay", "0"));
+        return autoSendDelay;
     }
 
     /**
@@ -321,14 +464,15 @@ public class Session {
      * @param isBound set whether the activity is bound to the GpsLoggingService
      */
     public void setBoundToService(boolean isBound) {
-        set("isBound", String.valueOf(isBound));
+        this.boundToService = isBound;
+        changed();
     }
 
     /**
      * @return whether the activity is bound to the GpsLoggingService
      */
     public boolean isBoundToService() {
-        return Boolean.valueOf(get("isBound", "false"));
+        return boundToService;
     }
 
     public boolean hasDescription() {
@@ -336,7 +480,7 @@ public class Session {
     }
 
     public String getDescription() {
-        return get("description", "");
+        return description;
     }
 
     public void clearDescription() {
@@ -344,55 +488,63 @@ public class Session {
     }
 
     public void setDescription(String newDescription) {
-        set("description", newDescription);
+        this.description = newDescription == null ? "" : newDescription;
+        changed();
     }
 
     public void setWaitingForLocation(boolean waitingForLocation) {
-        set("waitingForLocation", String.valueOf(waitingForLocation));
+        this.waitingForLocation = waitingForLocation;
+        changed();
     }
 
     public boolean isWaitingForLocation() {
-        return Boolean.valueOf(get("waitingForLocation", "false"));
+        return waitingForLocation;
     }
 
     public boolean isAnnotationMarked() {
-        return Boolean.valueOf(get("annotationMarked", "false"));
+        return annotationMarked;
     }
 
     public void setAnnotationMarked(boolean annotationMarked) {
-        set("annotationMarked", String.valueOf(annotationMarked));
+        this.annotationMarked = annotationMarked;
+        changed();
     }
 
     public String getCurrentFormattedFileName() {
-        return get("currentFormattedFileName", "");
+        return currentFormattedFileName;
     }
 
     public void setCurrentFormattedFileName(String currentFormattedFileName) {
-        set("currentFormattedFileName", currentFormattedFileName);
+        this.currentFormattedFileName = currentFormattedFileName == null ? "" : currentFormattedFileName;
+        changed();
     }
 
     public long getUserStillSinceTimeStamp() {
-        return Long.valueOf(get("userStillSinceTimeStamp", "0"));
+        return userStillSinceTimeStamp;
     }
 
     public void setUserStillSinceTimeStamp(long lastUserStillTimeStamp) {
-        set("userStillSinceTimeStamp", String.valueOf(lastUserStillTimeStamp));
+        this.userStillSinceTimeStamp = lastUserStillTimeStamp;
+        changed();
     }
 
     public void setFirstRetryTimeStamp(long firstRetryTimeStamp) {
-        set("firstRetryTimeStamp", String.valueOf(firstRetryTimeStamp));
+        this.firstRetryTimeStamp = firstRetryTimeStamp;
+        changed();
     }
 
     public long getFirstRetryTimeStamp() {
-        return Long.valueOf(get("firstRetryTimeStamp", "0"));
+        return firstRetryTimeStamp;
     }
 
     public void setLatestDetectedActivity(DetectedActivity latestDetectedActivity) {
-        set("latestDetectedActivity", Strings.getDetectedActivityName(latestDetectedActivity));
+        String name = Strings.getDetectedActivityName(latestDetectedActivity);
+        this.latestDetectedActivityName = name == null ? "" : name;
+        changed();
     }
 
     public String getLatestDetectedActivityName() {
-        return get("latestDetectedActivity", "");
+        return latestDetectedActivityName;
     }
 
 
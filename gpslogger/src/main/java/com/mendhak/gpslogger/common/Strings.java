@@ -181,21 +181,61 @@ public class Strings {
      * @return The ISO 8601 formatted string.
      */
     public static String getIsoDateTime(Date dateToFormat) {
-        /**
-         * This function is used in gpslogger.loggers.* and for most of them the
-         * default locale should be fine, but in the case of HttpUrlLogger we
-         * want machine-readable output, thus  Locale.US.
-         *
-         * Be wary of the default locale
-         * http://developer.android.com/reference/java/util/Locale.html#default_locale
-         */
-
         // GPX specs say that time given should be in UTC, no local time.
-        SimpleDateFormat sdf = new SimpleDateFormat(getIsoDateTimeFormat(),
-                Locale.US);
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder isoDateTime = new StringBuilder(24);
+        appendIsoDateTime(isoDateTime, dateToFormat.getTime());
+        return isoDateTime.toString();
+    }
 
-        return sdf.format(dateToFormat);
+    /**
+     * Appends the time as UTC in {@link #getIsoDateTimeFormat()}, without creating a formatter, calendar or string.
+     * Used by the loggers for every point, so it works the date out directly rather than using SimpleDateFormat.
+     */
+    public static void appendIsoDateTime(StringBuilder sb, long millis) {
+        long days = Maths.floorDiv(millis, 86400000L);
+        int millisOfDay = (int) (millis - days * 86400000L);
+
+        //Civil date from days since 1970-01-01, see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        long z = days + 719468;
+        long era = Maths.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 1000 || year > 9999) {
+            //Outside of anything a GPS will report, leave the odd cases (eras, Julian dates) to SimpleDateFormat
+            SimpleDateFormat sdf = new SimpleDateFormat(getIsoDateTimeFormat(), Locale.US);
+            sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+            sb.append(sdf.format(new Date(millis)));
+            return;
+        }
+
+        sb.append(year).append('-');
+        appendPadded(sb, month, 2);
+        sb.append('-');
+        appendPadded(sb, day, 2);
+        sb.append('T');
+        appendPadded(sb, millisOfDay / 3600000, 2);
+        sb.append(':');
+        appendPadded(sb, (millisOfDay / 60000) % 60, 2);
+        sb.append(':');
+        appendPadded(sb, (millisOfDay / 1000) % 60, 2);
+        sb.append('.');
+        appendPadded(sb, millisOfDay % 1000, 3);
+        sb.append('Z');
+    }
+
+    private static void appendPadded(StringBuilder sb, int value, int width) {
+        for (int limit = 10, digits = 1; digits < width; limit *= 10, digits++) {
+            if (value < limit) {
+                sb.append('0');
+            }
+        }
+        sb.append(value);
     }
 
     public static String getIsoDateTimeFormat() {
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.common.network;
+
+import java.io.*;
+
+/**
+ * Caps the combined upload rate of all senders, so that several destinations uploading at the same time
+ * don't saturate a slow or metered connection.
+ * Uploads draw from one shared allowance which refills at the configured rate; a sender that takes more than is
+ * available is made to wait until the allowance catches up.
+ */
+public class BandwidthLimiter {
+
+    private static final BandwidthLimiter instance = new BandwidthLimiter();
+
+    private long bytesPerSecond;
+    private double available;
+    private long lastRefill;
+
+    BandwidthLimiter() {
+    }
+
+    public static BandwidthLimiter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the combined upload rate, 0 for no limit
+     */
+    public synchronized void setKilobytesPerSecond(int kilobytesPerSecond) {
+        bytesPerSecond = Math.max(0, kilobytesPerSecond) * 1024L;
+        available = Math.min(available, bytesPerSecond);
+        lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Waits until count bytes may be sent
+     */
+    public void acquire(int count) throws InterruptedIOException {
+        long waitNanos;
+
+        synchronized (this) {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            available = Math.min(bytesPerSecond, available + (now - lastRefill) * bytesPerSecond / 1e9);
+            lastRefill = now;
+
+            //Going into debt makes later callers wait their turn as well
+            available -= count;
+            waitNanos = available < 0 ? (long) (-available * 1e9 / bytesPerSecond) : 0;
+        }
+
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for upload bandwidth");
+            }
+        }
+    }
+
+    /**
+     * Wraps a stream being uploaded so that reading from it is held to the limit
+     */
+    public InputStream throttle(InputStream inputStream) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b >= 0) {
+                    acquire(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = in.read(b, off, len);
+                if (count > 0) {
+                    acquire(count);
+                }
+                return count;
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.common.network;
+
+import com.mendhak.gpslogger.common.AppSettings;
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import okhttp3.*;
+import org.slf4j.Logger;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one HTTP client the app's OkHttp requests go through.
+ * Sharing a client shares its connection pool, so points logged to a custom URL or OpenGTS a few seconds apart
+ * reuse a kept-alive connection, or one HTTP/2 connection, instead of connecting and handshaking for every point.
+ * Senders that need something extra, such as request signing, derive a client with {@link OkHttpClient#newBuilder()},
+ * which keeps the same pool.
+ */
+public class HttpClients {
+
+    private static final Logger LOG = Logs.of(HttpClients.class);
+
+    //Frequent logging keeps a connection busy, so a few idle ones kept for a while covers every destination in use
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static OkHttpClient client;
+
+    private static final Map<Connection, Boolean> seenConnections = new WeakHashMap<>();
+    private static long connectionsOpened;
+    private static long connectionsReused;
+
+    /**
+     * The shared client, trusting the certificates the user has accepted as well as the system ones
+     */
+    public static synchronized OkHttpClient getClient() {
+        if (client == null) {
+            OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .addNetworkInterceptor(new ConnectionCounter());
+
+            SSLSocketFactory socketFactory = Networks.getSocketFactory(AppSettings.getInstance());
+            if (socketFactory != null) {
+                builder.sslSocketFactory(socketFactory);
+            }
+
+            client = builder.build();
+        }
+        return client;
+    }
+
+    /**
+     * Drops the shared client so the next one picks up a changed trust store. Requests already running carry on.
+     */
+    public static synchronized void reset() {
+        if (client != null) {
+            client.connectionPool().evictAll();
+            client = null;
+        }
+    }
+
+    /**
+     * Requests that needed a new connection
+     */
+    public static synchronized long getConnectionsOpened() {
+        return connectionsOpened;
+    }
+
+    /**
+     * Requests that went out over a connection already used by an earlier request
+     */
+    public static synchronized long getConnectionsReused() {
+        return connectionsReused;
+    }
+
+    private static synchronized void count(Connection connection) {
+        if (seenConnections.put(connection, Boolean.TRUE) == null) {
+            connectionsOpened++;
+        } else {
+            connectionsReused++;
+        }
+    }
+
+    private static class ConnectionCounter implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Connection connection = chain.connection();
+            if (connection != null) {
+                count(connection);
+                LOG.debug("HTTP connection pool: " + getConnectionsReused() + " reused, " + getConnectionsOpened() + " opened");
+            }
+            return chain.proceed(chain.request());
+        }
+    }
+}
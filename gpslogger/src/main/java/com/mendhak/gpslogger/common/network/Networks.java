@@ -81,6 +81,8 @@ public class Networks {
             //fos = context.openFileOutput(localTrustStoreFile.getName(), Context.MODE_PRIVATE);
             fos = new FileOutputStream(localTrustStoreFile);
             knownServers.store(fos, LOCAL_TRUSTSTORE_PASSWORD.toCharArray());
+            //Connections made from now on should trust the new certificate
+            HttpClients.reset();
         }
         catch(Exception e)
         {
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.loggers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Space reserved near the start of a log file for annotations, such as the waypoints which GPX wants before the track.
+ * New files are created with a run of spaces after the header. Annotations are written over those spaces in place,
+ * so adding one costs the same no matter how long the track has become.
+ * Only when the reserved space runs out is the file rewritten, and each time that happens the space is doubled.
+ */
+public class AnnotationRegion {
+
+    public static final int RESERVED_LENGTH = 4096;
+    private static final byte SPACE = ' ';
+
+    private final File file;
+    private final long start;
+    private final long end;
+    private long free;
+
+    private AnnotationRegion(File file, long start, long free, long end) {
+        this.file = file;
+        this.start = start;
+        this.free = free;
+        this.end = end;
+    }
+
+    /**
+     * The blank space to write after a new file's header
+     */
+    public static String getPadding() {
+        return getPadding(RESERVED_LENGTH);
+    }
+
+    private static String getPadding(int length) {
+        char[] padding = new char[length];
+        Arrays.fill(padding, (char) SPACE);
+        return new String(padding);
+    }
+
+    /**
+     * Locates the region in the file, which runs from start up to the first of the terminators (eg "<trk>").
+     * Only the region itself is read, not the rest of the file.
+     * Returns null if none of the terminators could be found.
+     */
+    public static AnnotationRegion find(FileSink sink, long start, String... terminators) throws IOException {
+        ByteArrayOutputStream region = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = start;
+        int end = -1;
+
+        while (end < 0) {
+            buffer.clear();
+            int read = sink.read(position, buffer);
+            if (read <= 0) {
+                return null;
+            }
+
+            region.write(buffer.array(), 0, read);
+            position += read;
+            end = indexOfAny(region.toString("ISO-8859-1"), terminators);
+        }
+
+        byte[] bytes = region.toByteArray();
+        int free = end;
+        while (free > 0 && bytes[free - 1] == SPACE) {
+            free--;
+        }
+
+        return new AnnotationRegion(sink.getFile(), start, start + free, start + end);
+    }
+
+    private static int indexOfAny(String text, String... terminators) {
+        int index = -1;
+        for (String terminator : terminators) {
+            int found = text.indexOf(terminator);
+            if (found >= 0 && (index < 0 || found < index)) {
+                index = found;
+            }
+        }
+        return index;
+    }
+
+    public boolean isFor(File otherFile) {
+        return otherFile != null && file.getAbsolutePath().equals(otherFile.getAbsolutePath());
+    }
+
+    /**
+     * Whether there is enough reserved space left for the annotation
+     */
+    public boolean fits(int length) {
+        return free + length <= end;
+    }
+
+    /**
+     * Writes the annotation into the reserved space, which must have room for it
+     */
+    public void write(FileSink sink, byte[] annotation) throws IOException {
+        sink.writeAt(free, annotation);
+        free += annotation.length;
+    }
+
+    /**
+     * For when there's no room left. Rewrites the file with the annotation after the existing ones,
+     * followed by double the reserved space. The file must not be open in a sink.
+     */
+    public void rewriteWithRoom(byte[] annotation) throws IOException {
+        rewriteWithRoom(file, free, annotation, (int) Math.max(RESERVED_LENGTH, (end - start) * 2));
+    }
+
+    /**
+     * Copies the file to a temporary file with the annotation and padding inserted at the position,
+     * then replaces the original. The file must not be open in a sink.
+     */
+    public static void rewriteWithRoom(File file, long position, byte[] annotation, int paddingLength) throws IOException {
+        File tempFile = new File(file.getAbsolutePath() + ".tmp");
+
+        BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file));
+        BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(tempFile));
+
+        try {
+            byte[] buffer = new byte[20480];
+            long remaining = position;
+            int readSize;
+
+            while (remaining > 0 && (readSize = bis.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                bos.write(buffer, 0, readSize);
+                remaining -= readSize;
+            }
+
+            bos.write(annotation);
+            bos.write(getPadding(paddingLength).getBytes());
+
+            while ((readSize = bis.read(buffer)) > 0) {
+                bos.write(buffer, 0, readSize);
+            }
+        } finally {
+            bis.close();
+            bos.close();
+        }
+
+        if (!file.delete() || !tempFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file.getName());
+        }
+    }
+}
@@ -20,17 +20,20 @@
 package com.mendhak.gpslogger.loggers;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.location.Location;
 import com.mendhak.gpslogger.common.PreferenceHelper;
 import com.mendhak.gpslogger.common.Session;
 import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.Systems;
 import com.mendhak.gpslogger.loggers.csv.CSVFileLogger;
+import com.mendhak.gpslogger.loggers.customurl.CustomUrlBatch;
 import com.mendhak.gpslogger.loggers.customurl.CustomUrlLogger;
 import com.mendhak.gpslogger.loggers.geojson.GeoJSONLogger;
 import com.mendhak.gpslogger.loggers.gpx.Gpx10FileLogger;
 import com.mendhak.gpslogger.loggers.gpx.Gpx11FileLogger;
 import com.mendhak.gpslogger.loggers.kml.Kml22FileLogger;
+import com.mendhak.gpslogger.loggers.nmea.NmeaFileLogger;
 import com.mendhak.gpslogger.loggers.opengts.OpenGTSLogger;
 import com.mendhak.gpslogger.loggers.wear.AndroidWearLogger;
 
@@ -43,7 +46,36 @@ public class FileLoggerFactory {
     private static PreferenceHelper preferenceHelper = PreferenceHelper.getInstance();
     private static Session session = Session.getInstance();
 
+    //Loggers reused from fix to fix, rebuilt when anything they were built from changes
+    private static List<FileLogger> cachedLoggers;
+    private static String cachedFileName;
+    private static boolean cachedAddNewTrackSegment;
+    private static int cachedBatteryLevel;
+    private static int cachedWriteBatchSize;
+    private static long cachedWriteBatchInterval;
+    private static boolean listeningForPreferenceChanges = false;
+
+    private static int batteryLevel;
+    private static long batteryLevelCheckedAt = 0;
+    private static final long BATTERY_LEVEL_MAX_AGE = 60000;
+
+    private static final SharedPreferences.OnSharedPreferenceChangeListener preferenceChangeListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    //Session values share the same file but are accounted for separately
+                    if (key != null && key.startsWith("SESSION_")) {
+                        return;
+                    }
+                    invalidateLoggers();
+                }
+            };
+
     public static List<FileLogger> getFileLoggers(Context context) {
+        return getFileLoggers(context, Strings.getFormattedFileName(), Systems.getBatteryLevel(context));
+    }
+
+    private static List<FileLogger> getFileLoggers(Context context, String formattedFileName, int batteryLevel) {
 
         List<FileLogger> loggers = new ArrayList<>();
 
@@ -57,7 +89,7 @@ public class FileLoggerFactory {
         }
 
         if (preferenceHelper.shouldLogToGpx()) {
-            File gpxFile = new File(gpxFolder.getPath(), Strings.getFormattedFileName() + ".gpx");
+            File gpxFile = new File(gpxFolder.getPath(), formattedFileName + ".gpx");
             if(preferenceHelper.shouldLogAsGpx11()) {
                 loggers.add(new Gpx11FileLogger(gpxFile, session.shouldAddNewTrackSegment()));
             } else {
@@ -66,13 +98,12 @@ public class FileLoggerFactory {
         }
 
         if (preferenceHelper.shouldLogToKml()) {
-            File kmlFile = new File(gpxFolder.getPath(), Strings.getFormattedFileName() + ".kml");
+            File kmlFile = new File(gpxFolder.getPath(), formattedFileName + ".kml");
             loggers.add(new Kml22FileLogger(kmlFile, session.shouldAddNewTrackSegment()));
         }
 
         if (preferenceHelper.shouldLogToCSV()) {
-            int batteryLevel = Systems.getBatteryLevel(context);
-            File file = new File(gpxFolder.getPath(), Strings.getFormattedFileName() + ".csv");
+            File file = new File(gpxFolder.getPath(), formattedFileName + ".csv");
             loggers.add(new CSVFileLogger(file, batteryLevel));
         }
 
@@ -81,10 +112,11 @@ public class FileLoggerFactory {
         }
 
         if (preferenceHelper.shouldLogToCustomUrl()) {
-            int batteryLevel = Systems.getBatteryLevel(context);
             String androidId = Systems.getAndroidId(context);
             loggers.add(new CustomUrlLogger(preferenceHelper.getCustomLoggingUrl(), batteryLevel,
-                    androidId, preferenceHelper.getCustomLoggingHTTPMethod(), preferenceHelper.getCustomLoggingHTTPBody(), preferenceHelper.getCustomLoggingHTTPHeaders()));
+                    androidId, preferenceHelper.getCustomLoggingHTTPMethod(), preferenceHelper.getCustomLoggingHTTPBody(), preferenceHelper.getCustomLoggingHTTPHeaders(),
+                    preferenceHelper.getCustomLoggingBatchFormat(), preferenceHelper.getCustomLoggingBatchSize(),
+                    preferenceHelper.getCustomLoggingBatchInterval()));
         }
 
         if(/* Should log to Android Wear */  true){
@@ -92,7 +124,7 @@ public class FileLoggerFactory {
         }
 
         if(preferenceHelper.shouldLogToGeoJSON()){
-            File file = new File(gpxFolder.getPath(), Strings.getFormattedFileName() + ".geojson");
+            File file = new File(gpxFolder.getPath(), formattedFileName + ".geojson");
             loggers.add(new GeoJSONLogger(file, session.shouldAddNewTrackSegment()));
         }
 
@@ -100,15 +132,97 @@ public class FileLoggerFactory {
         return loggers;
     }
 
+    /**
+     * Returns the loggers built for the current file name and preferences, only building new ones
+     * if the file name has rolled over, the preferences have changed or the battery level has moved.
+     */
+    private static synchronized List<FileLogger> getCachedLoggers(Context context) {
+        if (!listeningForPreferenceChanges) {
+            preferenceHelper.registerOnPreferenceChangeListener(preferenceChangeListener);
+            listeningForPreferenceChanges = true;
+        }
+
+        String fileName = Strings.getFormattedFileName();
+        boolean addNewTrackSegment = session.shouldAddNewTrackSegment();
+        int battery = getBatteryLevel(context);
+
+        if (cachedLoggers == null
+                || cachedAddNewTrackSegment != addNewTrackSegment
+                || cachedBatteryLevel != battery
+                || !fileName.equals(cachedFileName)) {
+
+            cachedLoggers = getFileLoggers(context, fileName, battery);
+            cachedFileName = fileName;
+            cachedAddNewTrackSegment = addNewTrackSegment;
+            cachedBatteryLevel = battery;
+            cachedWriteBatchSize = preferenceHelper.getWriteBatchSize();
+            cachedWriteBatchInterval = preferenceHelper.getWriteBatchInterval() * 1000L;
+        }
+
+        return cachedLoggers;
+    }
+
+    /**
+     * Asking Android for the battery level is an IPC call, and it changes slowly, so it's only checked once a minute
+     */
+    private static int getBatteryLevel(Context context) {
+        long now = System.currentTimeMillis();
+        if (batteryLevelCheckedAt == 0 || now - batteryLevelCheckedAt >= BATTERY_LEVEL_MAX_AGE) {
+            batteryLevel = Systems.getBatteryLevel(context);
+            batteryLevelCheckedAt = now;
+        }
+        return batteryLevel;
+    }
+
+    /**
+     * Discards the cached loggers so that they're rebuilt from the current preferences on the next point
+     */
+    public static synchronized void invalidateLoggers() {
+        cachedLoggers = null;
+    }
+
     public static void write(Context context, Location loc) throws Exception {
-        for (FileLogger logger : getFileLoggers(context)) {
-            logger.write(loc);
+        List<FileLogger> loggers = getCachedLoggers(context);
+
+        if (session.isSinglePointMode()) {
+            WritePipeline.setFlushPolicy(1, 0);
+        } else {
+            WritePipeline.setFlushPolicy(cachedWriteBatchSize, cachedWriteBatchInterval);
+        }
+
+        for (int i = 0; i < loggers.size(); i++) {
+            loggers.get(i).write(loc);
         }
     }
 
     public static void annotate(Context context, String description, Location loc) throws Exception {
-        for (FileLogger logger : getFileLoggers(context)) {
-            logger.annotate(description, loc);
+        List<FileLogger> loggers = getCachedLoggers(context);
+
+        for (int i = 0; i < loggers.size(); i++) {
+            loggers.get(i).annotate(description, loc);
         }
     }
+
+    /**
+     * Flushes and releases any log files being held open by the loggers, including the NMEA file, and sends any
+     * custom URL batch still being collected. Called when logging stops. The write pipeline adds its files to the
+     * media database once it has closed them.
+     */
+    public static void close() {
+        invalidateLoggers();
+        batteryLevelCheckedAt = 0;
+        WritePipeline.close();
+        NmeaFileLogger.getInstance().close();
+        MediaScanQueue.getInstance().flush();
+        CustomUrlBatch.getInstance().flush();
+    }
+
+    /**
+     * Writes any points still held in memory to the log files, waiting briefly for it to happen.
+     * Called before the log files are read, such as when auto-sending them.
+     */
+    public static void flush() {
+        WritePipeline.flushAndWait();
+        NmeaFileLogger.getInstance().flush();
+    }
 }
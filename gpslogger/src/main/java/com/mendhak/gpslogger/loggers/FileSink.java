@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.loggers;
+
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A log file held open for the whole logging session.
+ * Files such as GPX end in a closing trailer (eg </trk></gpx>) which has to be overwritten for every new point.
+ * Instead of reopening the file and asking the file system for its length each time, the end of the file is
+ * tracked in memory and new content is written over the trailer with positional writes.
+ * Writes are held in memory until {@link #flush()} so that a batch of points reaches storage as a single write.
+ * Not thread safe, sinks are only used from the {@link WritePipeline} thread.
+ */
+public class FileSink {
+
+    private static final Logger LOG = Logs.of(FileSink.class);
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private long size;
+    private long committedSize;
+
+    //Bytes not yet written to storage, they belong at pendingStart onwards
+    private byte[] pending = new byte[4096];
+    private int pendingLength;
+    private long pendingStart = -1;
+    private int pendingWrites;
+
+    private FileSink(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        this.size = channel.size();
+        this.committedSize = size;
+    }
+
+    /**
+     * Opens (creating if necessary) the given file for writing.
+     */
+    public static FileSink open(File file) throws IOException {
+        if (!Files.reallyExists(file)) {
+            file.createNewFile();
+        }
+        return new FileSink(file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Whether this sink is writing to the given file
+     */
+    public boolean isFor(File otherFile) {
+        return otherFile != null && file.getAbsolutePath().equals(otherFile.getAbsolutePath());
+    }
+
+    /**
+     * The current length of the file, as tracked by this sink, including writes not yet flushed
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Writes to the end of the file
+     */
+    public void append(byte[] bytes) throws IOException {
+        writeBeforeTrailer(0, bytes);
+    }
+
+    /**
+     * Writes the text, UTF-8 encoded, to the end of the file
+     */
+    public void append(CharSequence text) throws IOException {
+        writeBeforeTrailer(0, text);
+    }
+
+    /**
+     * Overwrites the last trailerLength bytes of the file with the given bytes.
+     * The bytes are expected to end with the (possibly new) trailer.
+     */
+    public void writeBeforeTrailer(int trailerLength, byte[] bytes) throws IOException {
+        long position = startWrite(trailerLength, bytes.length);
+        System.arraycopy(bytes, 0, pending, pendingLength, bytes.length);
+        finishWrite(position, bytes.length);
+    }
+
+    /**
+     * Overwrites the last trailerLength bytes of the file with the given text, UTF-8 encoded.
+     * The text is encoded straight into the pending buffer so no intermediate String or byte[] is created.
+     */
+    public void writeBeforeTrailer(int trailerLength, CharSequence text) throws IOException {
+        int length = text.length();
+        long position = startWrite(trailerLength, length * 3);
+
+        int p = pendingLength;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                pending[p++] = (byte) c;
+            } else if (c < 0x800) {
+                pending[p++] = (byte) (0xC0 | (c >> 6));
+                pending[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                pending[p++] = (byte) (0xF0 | (codePoint >> 18));
+                pending[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                pending[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                pending[p++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                //Unpaired surrogate, same replacement as String.getBytes
+                pending[p++] = (byte) '?';
+            } else {
+                pending[p++] = (byte) (0xE0 | (c >> 12));
+                pending[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                pending[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        finishWrite(position, p - pendingLength);
+    }
+
+    /**
+     * Positions the pending buffer for a write over the trailer, with room for maxLength more bytes
+     */
+    private long startWrite(int trailerLength, int maxLength) {
+        long position = Math.max(0, size - trailerLength);
+
+        if (pendingStart < 0 || position < pendingStart) {
+            //Anything pending from position onwards is being replaced
+            pendingStart = position;
+            pendingLength = 0;
+        } else {
+            pendingLength = (int) (position - pendingStart);
+        }
+
+        if (pendingLength + maxLength > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + maxLength));
+        }
+
+        return position;
+    }
+
+    private void finishWrite(long position, int length) {
+        pendingLength += length;
+        size = position + length;
+        pendingWrites++;
+    }
+
+    /**
+     * Overwrites bytes within the file, such as space reserved near the start. Commits any pending writes first.
+     */
+    public void writeAt(long position, byte[] bytes) throws IOException {
+        if (position < 0 || position + bytes.length > size) {
+            throw new IOException("Cannot write outside of " + file.getName());
+        }
+
+        flush();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+    }
+
+    /**
+     * Reads from the file into the buffer, returning the number of bytes read or -1 at the end of the file.
+     * Commits any pending writes first.
+     */
+    public int read(long position, ByteBuffer buffer) throws IOException {
+        flush();
+        return channel.read(buffer, position);
+    }
+
+    /**
+     * Number of writes made since the last flush
+     */
+    public int getPendingWrites() {
+        return pendingWrites;
+    }
+
+    /**
+     * Commits all pending writes to the file with a single positional write
+     */
+    public void flush() throws IOException {
+        if (pendingStart < 0) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(pending, 0, pendingLength);
+        long writePosition = pendingStart;
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+
+        if (size < committedSize) {
+            channel.truncate(size);
+        }
+
+        committedSize = size;
+        pendingStart = -1;
+        pendingLength = 0;
+        pendingWrites = 0;
+    }
+
+    /**
+     * Flushes the file to storage and releases it
+     */
+    public void close() {
+        try {
+            flush();
+            channel.force(true);
+        } catch (IOException e) {
+            LOG.error("Could not flush " + file.getName(), e);
+        }
+
+        try {
+            raf.close();
+        } catch (IOException e) {
+            LOG.error("Could not close " + file.getName(), e);
+        }
+    }
+}
@@ -66,10 +66,14 @@ public class Files {
     }
 
     public static void addToMediaDatabase(File file, String mimeType){
-        MediaScannerConnection.scanFile(AppSettings.getInstance(),
-                new String[]{file.getPath()},
-                new String[]{mimeType},
-                null);
+        addToMediaDatabase(new String[]{file.getPath()}, new String[]{mimeType});
+    }
+
+    /**
+     * Adds several files in one go. Log files being written should go through {@link MediaScanQueue} instead.
+     */
+    public static void addToMediaDatabase(String[] paths, String[] mimeTypes){
+        MediaScannerConnection.scanFile(AppSettings.getInstance(), paths, mimeTypes, null);
     }
 
     public static File[] fromFolder(File folder) {
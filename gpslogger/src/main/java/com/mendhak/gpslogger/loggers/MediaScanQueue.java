@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.loggers;
+
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects requests to add log files to the media database, so they show up over USB, and makes them together.
+ * Loggers ask after every point, which would be several calls to the media provider a second when logging
+ * frequently to several formats. A file asked for again while its request is waiting only counts once.
+ * Waiting requests are made after a while, when a logger moves on to a new file of the same type, and when
+ * logging stops.
+ */
+public class MediaScanQueue {
+
+    private static final Logger LOG = Logs.of(MediaScanQueue.class);
+
+    static final long DEFAULT_DELAY_MILLIS = 30000;
+
+    private final static ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MediaScanQueue");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static MediaScanQueue instance;
+
+    private final Scanner scanner;
+    private final long delayMillis;
+
+    //File path to MIME type, in the order they were first asked for
+    private final Map<String, String> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    private long scansRequested;
+    private long scansAvoided;
+
+    private final Runnable scheduledFlush = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (MediaScanQueue.this) {
+                flushScheduled = false;
+            }
+            flush();
+        }
+    };
+
+    /**
+     * Adds files to the media database
+     */
+    interface Scanner {
+        void scan(String[] paths, String[] mimeTypes);
+    }
+
+    MediaScanQueue(Scanner scanner, long delayMillis) {
+        this.scanner = scanner;
+        this.delayMillis = delayMillis;
+    }
+
+    public static synchronized MediaScanQueue getInstance() {
+        if (instance == null) {
+            instance = new MediaScanQueue(new Scanner() {
+                @Override
+                public void scan(String[] paths, String[] mimeTypes) {
+                    Files.addToMediaDatabase(paths, mimeTypes);
+                }
+            }, DEFAULT_DELAY_MILLIS);
+        }
+        return instance;
+    }
+
+    /**
+     * Asks for a file to be added to the media database, or updated there, soon
+     */
+    public void request(File file, String mimeType) {
+        List<String> rolledOver = null;
+
+        synchronized (this) {
+            String path = file.getPath();
+            if (pending.containsKey(path)) {
+                scansAvoided++;
+                return;
+            }
+
+            //A waiting file with the same extension means a logger has moved on to a new file
+            String extension = extensionOf(path);
+            Iterator<Map.Entry<String, String>> it = pending.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, String> entry = it.next();
+                if (extension.equals(extensionOf(entry.getKey()))) {
+                    if (rolledOver == null) {
+                        rolledOver = new ArrayList<>();
+                    }
+                    rolledOver.add(entry.getKey());
+                    rolledOver.add(entry.getValue());
+                    it.remove();
+                }
+            }
+
+            pending.put(path, mimeType);
+
+            if (!flushScheduled) {
+                flushScheduled = true;
+                TIMER.schedule(scheduledFlush, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (rolledOver != null) {
+            String[] paths = new String[rolledOver.size() / 2];
+            String[] mimeTypes = new String[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                paths[i] = rolledOver.get(i * 2);
+                mimeTypes[i] = rolledOver.get(i * 2 + 1);
+            }
+            scan(paths, mimeTypes);
+        }
+    }
+
+    /**
+     * Makes all the waiting requests now, such as when logging stops
+     */
+    public void flush() {
+        String[] paths;
+        String[] mimeTypes;
+
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            paths = new String[pending.size()];
+            mimeTypes = new String[pending.size()];
+            int i = 0;
+            for (Map.Entry<String, String> entry : pending.entrySet()) {
+                paths[i] = entry.getKey();
+                mimeTypes[i] = entry.getValue();
+                i++;
+            }
+            pending.clear();
+        }
+
+        scan(paths, mimeTypes);
+    }
+
+    /**
+     * Files added to the media database
+     */
+    public synchronized long getScansRequested() {
+        return scansRequested;
+    }
+
+    /**
+     * Requests which didn't need a scan of their own because the file was already waiting
+     */
+    public synchronized long getScansAvoided() {
+        return scansAvoided;
+    }
+
+    private void scan(String[] paths, String[] mimeTypes) {
+        synchronized (this) {
+            scansRequested += paths.length;
+        }
+
+        try {
+            scanner.scan(paths, mimeTypes);
+            LOG.debug("Media scan of " + paths.length + " file(s), " + getScansAvoided() + " scans avoided so far");
+        } catch (Exception e) {
+            LOG.error("Could not add files to the media database", e);
+        }
+    }
+
+    private static String extensionOf(String path) {
+        int dot = path.lastIndexOf('.');
+        int slash = path.lastIndexOf(File.separatorChar);
+        return dot > slash ? path.substring(dot + 1).toLowerCase() : "";
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.loggers;
+
+/**
+ * Helpers for writing points out as text without the garbage of String.format and String.valueOf.
+ * Numbers are appended straight into a StringBuilder, which the write handlers reuse from point to point,
+ * and come out exactly as the formatting they replace would have produced.
+ */
+public class PointEncoder {
+
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(1024);
+        }
+    };
+
+    private static final ThreadLocal<char[]> DIGITS = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[64];
+        }
+    };
+
+    /**
+     * An empty StringBuilder belonging to the current thread, for encoding one point at a time.
+     * The contents are only valid until the next call on the same thread.
+     */
+    public static StringBuilder getBuilder() {
+        StringBuilder sb = BUILDER.get();
+        sb.setLength(0);
+        return sb;
+    }
+
+    /**
+     * Appends the value with a fixed number of decimal places, the same as String.format(Locale.US, "%.nf").
+     * Like the formatter, it rounds half up from the shortest decimal representation (as Double.toString).
+     */
+    public static void appendFixed(StringBuilder sb, double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append(value);
+            return;
+        }
+
+        //Let StringBuilder produce the shortest representation, eg 12.193 or 1.0E-5, then take it apart
+        int start = sb.length();
+        sb.append(value);
+
+        boolean negative = sb.charAt(start) == '-';
+        char[] digits = DIGITS.get();
+        int digitCount = 0;
+        int pointAt = -1;
+        int exponent = 0;
+
+        for (int i = negative ? start + 1 : start; i < sb.length(); i++) {
+            char c = sb.charAt(i);
+            if (c == '.') {
+                pointAt = digitCount;
+            } else if (c == 'E') {
+                exponent = parseExponent(sb, i + 1);
+                break;
+            } else {
+                digits[digitCount++] = c;
+            }
+        }
+
+        sb.setLength(start);
+
+        //The value is 0.d1d2d3... x 10^integerDigits, with leadingZeros put in front when that's negative
+        int integerDigits = (pointAt < 0 ? digitCount : pointAt) + exponent;
+        int leadingZeros = 0;
+        if (integerDigits < 0) {
+            leadingZeros = -integerDigits;
+            integerDigits = 0;
+        }
+
+        int keep = integerDigits + decimals;
+        char[] kept = keep + 1 <= digits.length - digitCount ? digits : new char[keep + 1];
+        int keptStart = kept == digits ? digitCount : 0;
+
+        for (int k = 0; k < keep; k++) {
+            kept[keptStart + 1 + k] = digitAt(digits, digitCount, leadingZeros, k);
+        }
+
+        //Round half up, carrying into an extra leading digit if needed
+        kept[keptStart] = '0';
+        if (digitAt(digits, digitCount, leadingZeros, keep) >= '5') {
+            int k = keptStart + keep;
+            while (kept[k] == '9') {
+                kept[k--] = '0';
+            }
+            kept[k]++;
+        }
+
+        if (negative) {
+            sb.append('-');
+        }
+
+        int first = kept[keptStart] == '0' ? keptStart + 1 : keptStart;
+        int pointPosition = keptStart + 1 + integerDigits;
+
+        if (first == pointPosition) {
+            sb.append('0');
+        } else {
+            sb.append(kept, first, pointPosition - first);
+        }
+
+        if (decimals > 0) {
+            sb.append('.');
+            sb.append(kept, pointPosition, decimals);
+        }
+    }
+
+    private static char digitAt(char[] digits, int digitCount, int leadingZeros, int index) {
+        int i = index - leadingZeros;
+        return (i >= 0 && i < digitCount) ? digits[i] : '0';
+    }
+
+    private static int parseExponent(CharSequence text, int from) {
+        boolean negative = text.charAt(from) == '-';
+        int exponent = 0;
+        for (int i = negative ? from + 1 : from; i < text.length(); i++) {
+            exponent = exponent * 10 + (text.charAt(i) - '0');
+        }
+        return negative ? -exponent : exponent;
+    }
+}
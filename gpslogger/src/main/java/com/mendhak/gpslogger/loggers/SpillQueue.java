@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.loggers;
+
+import java.io.*;
+
+/**
+ * First-in first-out queue of write handlers kept in a file, for when the write pipeline's in-memory queue is full.
+ * Each handler is stored as a length prefixed serialized record and read back in the order it was added.
+ * The file is emptied whenever the last record has been read. Not thread safe.
+ */
+class SpillQueue {
+
+    private final File file;
+    private RandomAccessFile raf;
+    private long readPosition = 0;
+    private int size = 0;
+
+    SpillQueue(File file) {
+        this.file = file;
+        //Anything left over from a previous process refers to a session that's gone
+        file.delete();
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void push(Serializable handler) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(handler);
+        out.close();
+
+        if (raf == null) {
+            raf = new RandomAccessFile(file, "rw");
+        }
+
+        raf.seek(raf.length());
+        raf.writeInt(bytes.size());
+        raf.write(bytes.toByteArray());
+        size++;
+    }
+
+    /**
+     * Returns the oldest handler and removes it from the queue. Throws if it could not be read back,
+     * in which case it is still removed so that the rest of the queue can be drained.
+     */
+    Runnable poll() throws IOException, ClassNotFoundException {
+        if (size == 0) {
+            return null;
+        }
+
+        raf.seek(readPosition);
+        int length = raf.readInt();
+        byte[] record = new byte[length];
+        raf.readFully(record);
+
+        readPosition += 4 + length;
+        size--;
+
+        if (size == 0) {
+            raf.setLength(0);
+            readPosition = 0;
+        }
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(record));
+        try {
+            return (Runnable) in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
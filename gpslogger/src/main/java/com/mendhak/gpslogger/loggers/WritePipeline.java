@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.loggers;
+
+import com.mendhak.gpslogger.common.AppSettings;
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.common.slf4j.SessionLogcatAppender;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Single write queue shared by the file loggers.
+ * Every handler runs on the one pipeline thread and writes into a {@link FileSink}, which keeps the bytes in memory.
+ * The sinks are committed to storage once a file has collected enough points or the oldest point has waited long enough,
+ * so that during continuous logging each file sees one write per batch instead of one per point.
+ *
+ * When the in-memory queue is full, handlers are spilled to a {@link SpillQueue} on disk rather than dropped.
+ * While anything is spilled, new handlers go behind it, and the pipeline moves them back into memory as it catches up,
+ * so points are still written in the order they arrived.
+ */
+public class WritePipeline {
+
+    private static final Logger LOG = Logs.of(WritePipeline.class);
+
+    private final static int QUEUE_CAPACITY = 50;
+
+    private final static ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new SpillingRejectionHandler()) {
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            commitIfDue();
+            refillFromSpill();
+        }
+    };
+    private final static ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor();
+
+    //Open files by logger name, only accessed on the pipeline thread
+    private final static Map<String, FileSink> sinks = new HashMap<>();
+    private static long oldestPendingTime = 0;
+
+    private static volatile int batchSize = 1;
+    private static volatile long batchIntervalMillis = 0;
+    private static volatile boolean flushScheduled = false;
+
+    //Guards the spill queue and the order in which handlers reach the executor
+    private final static Object spillLock = new Object();
+    private static SpillQueue spillQueue;
+
+    private static volatile long queuedCount = 0;
+    private static volatile long spilledCount = 0;
+    private static volatile long droppedCount = 0;
+    private static volatile long droppedCommandCount = 0;
+
+    /**
+     * Work the pipeline does for itself. Being an enum, these can be spilled along with the handlers.
+     */
+    private enum Command implements Runnable {
+        FLUSH {
+            @Override
+            public void run() {
+                flushAll();
+            }
+        },
+        CLOSE {
+            @Override
+            public void run() {
+                flushAll();
+                for (FileSink sink : sinks.values()) {
+                    sink.close();
+                }
+                sinks.clear();
+                MediaScanQueue.getInstance().flush();
+
+                if (spilledCount > 0 || droppedCount > 0 || droppedCommandCount > 0) {
+                    LOG.info(SessionLogcatAppender.MARKER_INTERNAL, "Write pipeline: " + queuedCount + " queued, "
+                            + spilledCount + " spilled to disk, " + droppedCount + " dropped, "
+                            + droppedCommandCount + " flush commands dropped");
+                }
+            }
+        }
+    }
+
+    private final static Runnable SCHEDULED_FLUSH = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Sets when pending points are committed to storage.
+     * @param points Commit a file once it has this many pending writes, 1 commits every point
+     * @param millis Commit all files once the oldest pending write is this old, 0 to only go by the number of points
+     */
+    public static void setFlushPolicy(int points, long millis) {
+        batchSize = Math.max(1, points);
+        batchIntervalMillis = Math.max(0, millis);
+    }
+
+    /**
+     * Queues a write or annotate handler on the pipeline thread.
+     * Handlers should be Serializable so that they can be spilled to disk if the pipeline falls behind.
+     */
+    public static void execute(Runnable handler) {
+        synchronized (spillLock) {
+            if (hasSpilled() || EXECUTOR.getQueue().remainingCapacity() == 0) {
+                spill(handler);
+                return;
+            }
+
+            EXECUTOR.execute(handler);
+            if (isPoint(handler)) {
+                queuedCount++;
+            }
+        }
+    }
+
+    /**
+     * Returns the open sink for the given logger, closing its previous file if the file name has rolled over.
+     * Must only be called from a handler running on the pipeline.
+     */
+    public static FileSink getSink(String loggerName, File file) throws IOException {
+        FileSink sink = sinks.get(loggerName);
+        if (sink != null && sink.isFor(file)) {
+            return sink;
+        }
+
+        closeSink(loggerName);
+        sink = FileSink.open(file);
+        sinks.put(loggerName, sink);
+        return sink;
+    }
+
+    /**
+     * Commits and releases the logger's file, for handlers which need to rewrite it directly.
+     * Must only be called from a handler running on the pipeline.
+     */
+    public static void closeSink(String loggerName) {
+        FileSink sink = sinks.remove(loggerName);
+        if (sink != null) {
+            sink.close();
+        }
+    }
+
+    /**
+     * Commits pending points to storage after anything already queued
+     */
+    public static void flush() {
+        execute(Command.FLUSH);
+    }
+
+    /**
+     * Commits pending points and waits (briefly) for it to happen, for callers about to read the log files
+     */
+    public static void flushAndWait() {
+        final CountDownLatch flushed = new CountDownLatch(1);
+
+        execute(new FlushAndNotify(flushed));
+
+        try {
+            if (!flushed.await(5, TimeUnit.SECONDS)) {
+                LOG.warn("Timed out waiting for log files to be written");
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted waiting for log files to be written", e);
+        }
+    }
+
+    /**
+     * Commits pending points and releases all files after anything already queued
+     */
+    public static void close() {
+        execute(Command.CLOSE);
+    }
+
+    public static int getActiveCount() {
+        return EXECUTOR.getActiveCount();
+    }
+
+    /**
+     * Number of handlers which went straight into the in-memory queue
+     */
+    public static long getQueuedCount() {
+        return queuedCount;
+    }
+
+    /**
+     * Number of handlers which had to be spilled to disk because the pipeline had fallen behind
+     */
+    public static long getSpilledCount() {
+        return spilledCount;
+    }
+
+    /**
+     * Number of handlers which were lost, because they could be neither queued nor spilled, or not read back
+     */
+    public static long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Number of the pipeline's own flush and close commands which could be neither queued nor spilled.
+     * These lose no points, which are committed by the next flush, so they aren't part of {@link #getDroppedCount()}.
+     */
+    public static long getDroppedCommandCount() {
+        return droppedCommandCount;
+    }
+
+    /**
+     * Whether the task writes a point, as opposed to the pipeline's own flushing and closing
+     */
+    private static boolean isPoint(Runnable task) {
+        return !(task instanceof Command) && !(task instanceof FlushAndNotify);
+    }
+
+    private static boolean hasSpilled() {
+        return spillQueue != null && !spillQueue.isEmpty();
+    }
+
+    /**
+     * Must be called while holding the spill lock
+     */
+    private static void spill(Runnable handler) {
+        if (!(handler instanceof Serializable)) {
+            countDropped(handler);
+            LOG.warn(SessionLogcatAppender.MARKER_INTERNAL, "Could not queue task, some points may not be logged.");
+            return;
+        }
+
+        try {
+            if (spillQueue == null) {
+                spillQueue = new SpillQueue(new File(AppSettings.getInstance().getCacheDir(), "write_pipeline.spill"));
+            }
+
+            spillQueue.push((Serializable) handler);
+            if (isPoint(handler)) {
+                spilledCount++;
+            }
+        } catch (Exception e) {
+            countDropped(handler);
+            LOG.error(SessionLogcatAppender.MARKER_INTERNAL, "Could not spill task to disk, some points may not be logged.", e);
+        }
+    }
+
+    /**
+     * Must be called while holding the spill lock
+     */
+    private static void countDropped(Runnable task) {
+        if (isPoint(task)) {
+            droppedCount++;
+        } else {
+            droppedCommandCount++;
+        }
+    }
+
+    /**
+     * Moves spilled handlers back into the in-memory queue, oldest first, as space frees up
+     */
+    private static void refillFromSpill() {
+        synchronized (spillLock) {
+            while (hasSpilled() && EXECUTOR.getQueue().remainingCapacity() > 0) {
+                try {
+                    Runnable handler = spillQueue.poll();
+                    EXECUTOR.getQueue().offer(handler);
+                } catch (Exception e) {
+                    droppedCount++;
+                    LOG.error(SessionLogcatAppender.MARKER_INTERNAL, "Could not read spilled task, a point may not be logged.", e);
+                }
+            }
+        }
+    }
+
+    private static void commitIfDue() {
+        boolean hasPending = false;
+
+        for (FileSink sink : sinks.values()) {
+            if (sink.getPendingWrites() >= batchSize) {
+                flushSink(sink);
+            }
+
+            hasPending = hasPending || sink.getPendingWrites() > 0;
+        }
+
+        if (!hasPending) {
+            oldestPendingTime = 0;
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (oldestPendingTime == 0) {
+            oldestPendingTime = now;
+        }
+
+        if (batchIntervalMillis > 0 && now - oldestPendingTime >= batchIntervalMillis) {
+            flushAll();
+        } else if (batchIntervalMillis > 0 && !flushScheduled) {
+            flushScheduled = true;
+            TIMER.schedule(SCHEDULED_FLUSH, batchIntervalMillis - (now - oldestPendingTime), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void flushAll() {
+        flushScheduled = false;
+        oldestPendingTime = 0;
+
+        for (FileSink sink : sinks.values()) {
+            flushSink(sink);
+        }
+    }
+
+    private static void flushSink(FileSink sink) {
+        try {
+            sink.flush();
+        } catch (IOException e) {
+            LOG.error("Could not write to " + sink.getFile().getName(), e);
+        }
+    }
+
+    /**
+     * Flushes, then lets a waiting caller know. Only lives in memory, so if it has to be spilled the caller times out.
+     */
+    private static class FlushAndNotify implements Runnable {
+        private final CountDownLatch flushed;
+
+        FlushAndNotify(CountDownLatch flushed) {
+            this.flushed = flushed;
+        }
+
+        @Override
+        public void run() {
+            flushAll();
+            flushed.countDown();
+        }
+    }
+
+    /**
+     * The pipeline checks for space before queuing, so this only catches anything that slips past that check.
+     */
+    private static class SpillingRejectionHandler implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor threadPoolExecutor) {
+            synchronized (spillLock) {
+                spill(runnable);
+            }
+        }
+    }
+}
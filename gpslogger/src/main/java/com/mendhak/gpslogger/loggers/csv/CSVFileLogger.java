@@ -20,27 +20,32 @@
 package com.mendhak.gpslogger.loggers.csv;
 
 import android.location.Location;
+import android.os.Bundle;
 import android.support.annotation.Nullable;
 
 import com.mendhak.gpslogger.common.BundleConstants;
 import com.mendhak.gpslogger.common.Maths;
 import com.mendhak.gpslogger.common.Session;
 import com.mendhak.gpslogger.common.Strings;
+import com.mendhak.gpslogger.common.slf4j.Logs;
 import com.mendhak.gpslogger.loggers.FileLogger;
-import com.mendhak.gpslogger.loggers.Files;
+import com.mendhak.gpslogger.loggers.FileSink;
+import com.mendhak.gpslogger.loggers.MediaScanQueue;
+import com.mendhak.gpslogger.loggers.PointEncoder;
+import com.mendhak.gpslogger.loggers.WritePipeline;
+import org.slf4j.Logger;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.Serializable;
 import java.util.Date;
-import java.util.Locale;
 
 
 public class CSVFileLogger implements FileLogger {
 
     private final Integer batteryLevel;
     private File file;
-    protected final String name = "TXT";
+    static final String NAME = "TXT";
+    protected final String name = NAME;
 
     public CSVFileLogger(File setfile, @Nullable Integer setbatteryLevel) {
         this.file = setfile;
@@ -64,53 +69,64 @@ public class CSVFileLogger implements FileLogger {
             description = "\"" + description.replaceAll("\"", "\"\"") + "\"";
         }
 
-        String outputString = String.format(Locale.US, "%s,%f,%f,%s,%s,%s,%s,%d,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s\n", dateTimeString,
-                loc.getLatitude(),
-                loc.getLongitude(),
-                loc.hasAltitude() ? loc.getAltitude() : "",
-                loc.hasAccuracy() ? loc.getAccuracy() : "",
-                loc.hasBearing() ? loc.getBearing() : "",
-                loc.hasSpeed() ? loc.getSpeed() : "",
-                Maths.getBundledSatelliteCount(loc),
-                loc.getProvider(),
-                (loc.getExtras() != null && !Strings.isNullOrEmpty(loc.getExtras().getString(BundleConstants.HDOP))) ? loc.getExtras().getString(BundleConstants.HDOP) : "",
-                (loc.getExtras() != null && !Strings.isNullOrEmpty(loc.getExtras().getString(BundleConstants.VDOP))) ? loc.getExtras().getString(BundleConstants.VDOP) : "",
-                (loc.getExtras() != null && !Strings.isNullOrEmpty(loc.getExtras().getString(BundleConstants.PDOP))) ? loc.getExtras().getString(BundleConstants.PDOP) : "",
-                (loc.getExtras() != null && !Strings.isNullOrEmpty(loc.getExtras().getString(BundleConstants.GEOIDHEIGHT))) ? loc.getExtras().getString(BundleConstants.GEOIDHEIGHT) : "",
-                (loc.getExtras() != null && !Strings.isNullOrEmpty(loc.getExtras().getString(BundleConstants.AGEOFDGPSDATA))) ? loc.getExtras().getString(BundleConstants.AGEOFDGPSDATA) : "",
-                (loc.getExtras() != null && !Strings.isNullOrEmpty(loc.getExtras().getString(BundleConstants.DGPSID))) ? loc.getExtras().getString(BundleConstants.DGPSID) : "",
-                (loc.getExtras() != null && !Strings.isNullOrEmpty(loc.getExtras().getString(BundleConstants.DETECTED_ACTIVITY))) ? loc.getExtras().getString(BundleConstants.DETECTED_ACTIVITY) : "",
-                (batteryLevel != null) ? batteryLevel : "",
-                description
-        );
-        return outputString;
-    }
-
-    @Override
-    public void annotate(String description, Location loc) throws Exception {
-        if (!Files.reallyExists(file)) {
-            file.createNewFile();
+        StringBuilder csv = PointEncoder.getBuilder();
+        csv.append(dateTimeString).append(',');
+        PointEncoder.appendFixed(csv, loc.getLatitude(), 6);
+        csv.append(',');
+        PointEncoder.appendFixed(csv, loc.getLongitude(), 6);
+        csv.append(',');
+        if (loc.hasAltitude()) {
+            csv.append(loc.getAltitude());
+        }
+        csv.append(',');
+        if (loc.hasAccuracy()) {
+            csv.append(loc.getAccuracy());
+        }
+        csv.append(',');
+        if (loc.hasBearing()) {
+            csv.append(loc.getBearing());
+        }
+        csv.append(',');
+        if (loc.hasSpeed()) {
+            csv.append(loc.getSpeed());
+        }
+        csv.append(',').append(Maths.getBundledSatelliteCount(loc));
+        csv.append(',').append(loc.getProvider());
+
+        Bundle extras = loc.getExtras();
+        appendExtra(csv, extras, BundleConstants.HDOP);
+        appendExtra(csv, extras, BundleConstants.VDOP);
+        appendExtra(csv, extras, BundleConstants.PDOP);
+        appendExtra(csv, extras, BundleConstants.GEOIDHEIGHT);
+        appendExtra(csv, extras, BundleConstants.AGEOFDGPSDATA);
+        appendExtra(csv, extras, BundleConstants.DGPSID);
+        appendExtra(csv, extras, BundleConstants.DETECTED_ACTIVITY);
+
+        csv.append(',');
+        if (batteryLevel != null) {
+            csv.append(batteryLevel);
+        }
+        csv.append(',').append(description).append('\n');
 
-            FileOutputStream writer = new FileOutputStream(file, true);
-            BufferedOutputStream output = new BufferedOutputStream(writer);
-            String header = "time,lat,lon,elevation,accuracy,bearing,speed,satellites,provider,hdop,vdop,pdop,geoidheight,ageofdgpsdata,dgpsid,activity,battery,annotation\n";
-            output.write(header.getBytes());
-            output.flush();
-            output.close();
+        return csv.toString();
+    }
 
+    private static void appendExtra(StringBuilder csv, Bundle extras, String key) {
+        csv.append(',');
+        if (extras != null) {
+            String value = extras.getString(key);
+            if (!Strings.isNullOrEmpty(value)) {
+                csv.append(value);
+            }
         }
+    }
 
-        FileOutputStream writer = new FileOutputStream(file, true);
-        BufferedOutputStream output = new BufferedOutputStream(writer);
-
+    @Override
+    public void annotate(String description, Location loc) throws Exception {
         String dateTimeString = Strings.getIsoDateTime(new Date(loc.getTime()));
         String csvLine = getCsvLine(description, loc, dateTimeString);
 
-
-        output.write(csvLine.getBytes());
-        output.flush();
-        output.close();
-        Files.addToMediaDatabase(file, "text/csv");
+        WritePipeline.execute(new CSVWriteHandler(file, csvLine));
     }
 
     @Override
@@ -118,3 +134,33 @@ public class CSVFileLogger implements FileLogger {
         return name;
     }
 }
+
+class CSVWriteHandler implements Runnable, Serializable {
+
+    private static final Logger LOG = Logs.of(CSVWriteHandler.class);
+    private static final String HEADER = "time,lat,lon,elevation,accuracy,bearing,speed,satellites,provider,hdop,vdop,pdop,geoidheight,ageofdgpsdata,dgpsid,activity,battery,annotation\n";
+    File file;
+    String csvLine;
+
+    CSVWriteHandler(File setFile, String setCsvLine) {
+        this.file = setFile;
+        this.csvLine = setCsvLine;
+    }
+
+    @Override
+    public void run() {
+        try {
+            FileSink sink = WritePipeline.getSink(CSVFileLogger.NAME, file);
+
+            if (sink.size() == 0) {
+                sink.append(HEADER.getBytes());
+            }
+
+            sink.append(csvLine.getBytes());
+            MediaScanQueue.getInstance().request(file, "text/csv");
+        } catch (Exception e) {
+            WritePipeline.closeSink(CSVFileLogger.NAME);
+            LOG.error("CSVFileLogger.annotate", e);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.loggers.customurl;
+
+import com.mendhak.gpslogger.common.AppSettings;
+import com.mendhak.gpslogger.common.events.UploadEvents;
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects points for the custom URL and sends them together, so that logging every second is one job and one
+ * request every few dozen points rather than one of each per point.
+ * The body template is filled in for every point and the results are joined into a JSON array or one per line.
+ * A batch is sent once it has enough points or its oldest point has waited long enough, and goes out as a
+ * single persisted job, so a retry after a failed connection or an unsuccessful response sends exactly the
+ * same points again. Each batch carries an Idempotency-Key header which stays the same across retries, letting
+ * the server ignore a batch it already has.
+ * Points waiting for their batch are also written to a pending file, so that they survive the app being stopped
+ * and are sent the next time the batch is used.
+ */
+public class CustomUrlBatch {
+
+    private static final Logger LOG = Logs.of(CustomUrlBatch.class);
+
+    public static final String FORMAT_OFF = "OFF";
+    public static final String FORMAT_JSON = "JSON";
+    public static final String FORMAT_LINES = "LINES";
+
+    private final static ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "CustomUrlBatch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static CustomUrlBatch instance;
+
+    private final Sender sender;
+    private final File pendingFile;
+    private String format = FORMAT_JSON;
+    private int maxPoints = 50;
+    private long maxAgeMillis = 60000;
+
+    private final List<String> bodies = new ArrayList<>();
+    private String url;
+    private String method;
+    private String headers;
+    private long oldestPointTime;
+    private boolean flushScheduled;
+
+    private final Runnable scheduledFlush = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (CustomUrlBatch.this) {
+                flushScheduled = false;
+                if (!bodies.isEmpty() && System.currentTimeMillis() - oldestPointTime >= maxAgeMillis) {
+                    flush();
+                } else {
+                    scheduleFlush();
+                }
+            }
+        }
+    };
+
+    /**
+     * Takes a finished batch and makes sure it gets sent
+     */
+    interface Sender {
+        void send(CustomUrlRequest request, int points);
+    }
+
+    CustomUrlBatch(Sender sender) {
+        this(sender, null);
+    }
+
+    /**
+     * @param pendingFile where points waiting for their batch are kept, any left there from before are read back
+     *                    in, null to only keep them in memory
+     */
+    CustomUrlBatch(Sender sender, File pendingFile) {
+        this.sender = sender;
+        this.pendingFile = pendingFile;
+
+        if (pendingFile != null && pendingFile.exists()) {
+            readPending();
+            scheduleFlush();
+        }
+    }
+
+    public static synchronized CustomUrlBatch getInstance() {
+        if (instance == null) {
+            instance = new CustomUrlBatch(new Sender() {
+                @Override
+                public void send(CustomUrlRequest request, int points) {
+                    AppSettings.getJobManager().addJobInBackground(new CustomUrlJob(request, new UploadEvents.CustomUrl(), points));
+                }
+            }, new File(AppSettings.getInstance().getFilesDir(), "customurl.pending"));
+        }
+        return instance;
+    }
+
+    /**
+     * Sets how points are joined and when a batch is sent. A batch already being collected is sent first if the format changes.
+     *
+     * @param maxAgeMillis how long the oldest point may wait, 0 to only go by the number of points
+     */
+    public synchronized void setPolicy(String format, int maxPoints, long maxAgeMillis) {
+        if (!format.equals(this.format)) {
+            flush();
+        }
+
+        this.format = format;
+        this.maxPoints = Math.max(1, maxPoints);
+        this.maxAgeMillis = Math.max(0, maxAgeMillis);
+
+        if (bodies.size() >= this.maxPoints) {
+            flush();
+        }
+    }
+
+    /**
+     * Adds a point whose URL, body and headers have already been filled in.
+     * The URL, method and headers of the batch are those of its first point.
+     */
+    public synchronized void add(String url, String method, String body, String headers) {
+        if (bodies.isEmpty()) {
+            this.url = url;
+            this.method = method;
+            this.headers = headers;
+            this.oldestPointTime = System.currentTimeMillis();
+        }
+
+        bodies.add(body);
+        writePending(body);
+
+        if (bodies.size() >= maxPoints) {
+            flush();
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Sends whatever has been collected, such as when logging stops
+     */
+    public synchronized void flush() {
+        if (bodies.isEmpty()) {
+            return;
+        }
+
+        LOG.debug("Sending batch of " + bodies.size() + " points to custom URL");
+        sender.send(toRequest(), bodies.size());
+        bodies.clear();
+
+        //The points are now in the job
+        if (pendingFile != null) {
+            pendingFile.delete();
+        }
+    }
+
+    /**
+     * How many points are waiting to be sent
+     */
+    public synchronized int getPendingCount() {
+        return bodies.size();
+    }
+
+    private CustomUrlRequest toRequest() {
+        StringBuilder body = new StringBuilder();
+
+        if (FORMAT_LINES.equals(format)) {
+            for (String point : bodies) {
+                body.append(point).append('\n');
+            }
+        } else {
+            body.append('[');
+            for (int i = 0; i < bodies.size(); i++) {
+                if (i > 0) {
+                    body.append(',');
+                }
+                body.append(bodies.get(i));
+            }
+            body.append(']');
+        }
+
+        //The points go in the body, which a GET request can't have
+        String batchMethod = "GET".equalsIgnoreCase(method) ? "POST" : method;
+        CustomUrlRequest request = new CustomUrlRequest(url, batchMethod, body.toString(), headers);
+
+        if (FORMAT_JSON.equals(format)) {
+            request.getHttpHeaders().put("Content-Type", "application/json");
+        }
+        request.getHttpHeaders().put("Idempotency-Key", UUID.randomUUID().toString());
+
+        return request;
+    }
+
+    /**
+     * Appends a point to the pending file, starting with the batch's format, URL, method, headers and time for its first point.
+     * Each point is written in one go so that a point cut short when the app is stopped can be told apart.
+     */
+    private void writePending(String body) {
+        if (pendingFile == null) {
+            return;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            if (bodies.size() == 1) {
+                writeString(out, format);
+                writeString(out, url);
+                writeString(out, method);
+                writeString(out, headers);
+                out.writeLong(oldestPointTime);
+            }
+            writeString(out, body);
+            out.close();
+
+            FileOutputStream file = new FileOutputStream(pendingFile, bodies.size() > 1);
+            try {
+                file.write(bytes.toByteArray());
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not keep custom URL point in " + pendingFile + ", it is only held in memory", e);
+        }
+    }
+
+    private void readPending() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(pendingFile)));
+            format = readString(in);
+            url = readString(in);
+            method = readString(in);
+            headers = readString(in);
+            oldestPointTime = in.readLong();
+
+            while (true) {
+                bodies.add(readString(in));
+            }
+        } catch (EOFException e) {
+            //End of the file, or of the last point written in full
+        } catch (IOException e) {
+            LOG.warn("Could not read pending custom URL points from " + pendingFile, e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    LOG.debug("Could not close " + pendingFile, e);
+                }
+            }
+        }
+
+        if (!bodies.isEmpty()) {
+            LOG.info("Read back " + bodies.size() + " custom URL points that were waiting to be sent");
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled || maxAgeMillis == 0 || bodies.isEmpty()) {
+            return;
+        }
+
+        flushScheduled = true;
+        long delay = Math.max(0, maxAgeMillis - (System.currentTimeMillis() - oldestPointTime));
+        TIMER.schedule(scheduledFlush, delay, TimeUnit.MILLISECONDS);
+    }
+}
@@ -20,11 +20,11 @@
 package com.mendhak.gpslogger.loggers.customurl;
 
 
-import com.mendhak.gpslogger.common.AppSettings;
-import com.mendhak.gpslogger.common.network.Networks;
+import com.mendhak.gpslogger.common.network.HttpClients;
 import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.events.UploadEvents;
 import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.senders.UploadConcurrency;
 import com.path.android.jobqueue.Job;
 import com.path.android.jobqueue.Params;
 import de.greenrobot.event.EventBus;
@@ -39,14 +39,32 @@ public class CustomUrlJob extends Job {
 
     private static final Logger LOG = Logs.of(CustomUrlJob.class);
 
+    /**
+     * A batch holds many points which exist nowhere else, so it gets more attempts than a single point
+     */
+    private static final int BATCH_RETRY_LIMIT = 10;
+
     private UploadEvents.BaseUploadEvent callbackEvent;
     private CustomUrlRequest urlRequest;
+    private boolean batch;
+    private int batchPoints;
 
     public CustomUrlJob(CustomUrlRequest setUrlRequest, UploadEvents.BaseUploadEvent setCallbackEvent) {
-        super(new Params(1).requireNetwork().persist());
+        this(setUrlRequest, setCallbackEvent, 0);
+    }
+
+    /**
+     * @param batchPoints how many points are in the request if it is a {@link CustomUrlBatch}, 0 for a single point.
+     *                    A batch is retried on an unsuccessful response rather than dropped, carrying the same
+     *                    Idempotency-Key each time, and the points are reported as lost if it is given up on.
+     */
+    public CustomUrlJob(CustomUrlRequest setUrlRequest, UploadEvents.BaseUploadEvent setCallbackEvent, int batchPoints) {
+        super(new Params(1).requireNetwork().persist().groupBy(UploadConcurrency.groupFor(UploadConcurrency.CUSTOM_URL)));
 
         this.callbackEvent = setCallbackEvent;
         this.urlRequest = setUrlRequest;
+        this.batch = batchPoints > 0;
+        this.batchPoints = batchPoints;
     }
 
     @Override
@@ -58,8 +76,6 @@ public class CustomUrlJob extends Job {
 
         LOG.info("HTTP Request - " + urlRequest.getLogURL());
 
-        OkHttpClient.Builder okBuilder = new OkHttpClient.Builder();
-        okBuilder.sslSocketFactory(Networks.getSocketFactory(AppSettings.getInstance()));
         Request.Builder requestBuilder = new Request.Builder().url(urlRequest.getLogURL());
 
         for(Map.Entry<String,String> header : urlRequest.getHttpHeaders().entrySet()){
@@ -72,23 +88,32 @@ public class CustomUrlJob extends Job {
         }
 
         Request request = requestBuilder.build();
-        Response response = okBuilder.build().newCall(request).execute();
-
-        if (response.isSuccessful()) {
-            LOG.debug("Success - response code " + response);
-            EventBus.getDefault().post(callbackEvent.succeeded());
+        Response response = HttpClients.getClient().newCall(request).execute();
+
+        try {
+            if (response.isSuccessful()) {
+                LOG.debug("Success - response code " + response);
+                EventBus.getDefault().post(callbackEvent.succeeded());
+            }
+            else if (batch) {
+                throw new IOException("Unexpected code " + response);
+            }
+            else {
+                LOG.error("Unexpected response code " + response );
+                EventBus.getDefault().post(callbackEvent.failed("Unexpected code " + response,new Throwable(response.body().string())));
+            }
+        } finally {
+            response.body().close();
         }
-        else {
-            LOG.error("Unexpected response code " + response );
-            EventBus.getDefault().post(callbackEvent.failed("Unexpected code " + response,new Throwable(response.body().string())));
-        }
-
-        response.body().close();
     }
 
     @Override
     protected void onCancel() {
-
+        //Called once the retries have run out, the batch's points exist nowhere else
+        if (batch) {
+            LOG.error("Gave up sending batch to custom URL, " + batchPoints + " points lost");
+            EventBus.getDefault().post(callbackEvent.failed("Gave up sending to custom URL, " + batchPoints + " points lost"));
+        }
     }
 
     @Override
@@ -100,6 +125,6 @@ public class CustomUrlJob extends Job {
 
     @Override
     protected int getRetryLimit() {
-        return 2;
+        return batch ? BATCH_RETRY_LIMIT : 2;
     }
 }
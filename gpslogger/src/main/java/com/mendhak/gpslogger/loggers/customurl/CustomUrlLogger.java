@@ -42,14 +42,29 @@ public class CustomUrlLogger implements FileLogger {
     private final String httpMethod;
     private final String httpBody;
     private final String httpHeaders;
+    private final String batchFormat;
+    private final int batchSize;
+    private final int batchInterval;
 
     public CustomUrlLogger(String setCustomLoggingUrl, int setBatteryLevel, String setAndroidId, String setHttpMethod, String setHttpBody, String setHttpHeaders) {
+        this(setCustomLoggingUrl, setBatteryLevel, setAndroidId, setHttpMethod, setHttpBody, setHttpHeaders, CustomUrlBatch.FORMAT_OFF, 1, 0);
+    }
+
+    /**
+     * @param setBatchFormat one of the {@link CustomUrlBatch} formats, OFF to send a request per point
+     * @param setBatchInterval the longest a point waits for its batch, in seconds
+     */
+    public CustomUrlLogger(String setCustomLoggingUrl, int setBatteryLevel, String setAndroidId, String setHttpMethod, String setHttpBody, String setHttpHeaders,
+                           String setBatchFormat, int setBatchSize, int setBatchInterval) {
         this.customLoggingUrl = setCustomLoggingUrl;
         this.batteryLevel = setBatteryLevel;
         this.androidId = setAndroidId;
         this.httpMethod = setHttpMethod;
         this.httpBody = setHttpBody;
         this.httpHeaders = setHttpHeaders;
+        this.batchFormat = setBatchFormat;
+        this.batchSize = setBatchSize;
+        this.batchInterval = setBatchInterval;
     }
 
     @Override
@@ -69,6 +84,12 @@ public class CustomUrlLogger implements FileLogger {
         String finalHeaders = getFormattedTextblock(httpHeaders, loc, description, androidId, batteryLevel, Strings.getBuildSerial(),
                 Session.getInstance().getStartTimeStamp(), Session.getInstance().getCurrentFormattedFileName());
 
+        if (!CustomUrlBatch.FORMAT_OFF.equalsIgnoreCase(batchFormat)) {
+            CustomUrlBatch batch = CustomUrlBatch.getInstance();
+            batch.setPolicy(batchFormat.toUpperCase(), batchSize, batchInterval * 1000L);
+            batch.add(finalUrl, httpMethod, finalBody, finalHeaders);
+            return;
+        }
 
         JobManager jobManager = AppSettings.getJobManager();
         jobManager.addJobInBackground(new CustomUrlJob(new CustomUrlRequest(finalUrl,httpMethod, finalBody, finalHeaders), new UploadEvents.CustomUrl()));
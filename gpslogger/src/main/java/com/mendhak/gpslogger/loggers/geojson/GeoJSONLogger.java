@@ -2,13 +2,10 @@ package com.mendhak.gpslogger.loggers.geojson;
 
 import android.location.Location;
 
-import com.mendhak.gpslogger.common.RejectionHandler;
 import com.mendhak.gpslogger.loggers.FileLogger;
+import com.mendhak.gpslogger.loggers.WritePipeline;
 
 import java.io.File;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Created by clemens on 10.05.17.
@@ -16,14 +13,14 @@ import java.util.concurrent.TimeUnit;
 
 public class GeoJSONLogger implements FileLogger {
     final static Object lock = new Object();
-    private final static ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(10), new RejectionHandler());
+    static final String NAME = "GeoJSON";
     private final File file;
     protected final String name;
     private final boolean addNewTrackSegment;
 
     public GeoJSONLogger(File setFile, boolean setAddNewTrackSegment) {
         this.file = setFile;
-        name = "GeoJSON";
+        name = NAME;
         this.addNewTrackSegment = setAddNewTrackSegment;
     }
 
@@ -35,7 +32,7 @@ public class GeoJSONLogger implements FileLogger {
     @Override
     public void annotate(String description, Location loc) throws Exception {
         Runnable gw = new GeoJSONWriterPoints(file, loc, description);
-        EXECUTOR.execute(gw);
+        WritePipeline.execute(gw);
     }
 
     @Override
@@ -44,7 +41,7 @@ public class GeoJSONLogger implements FileLogger {
     }
 
     public static int getCount(){
-        return EXECUTOR.getActiveCount();
+        return WritePipeline.getActiveCount();
     }
 }
 
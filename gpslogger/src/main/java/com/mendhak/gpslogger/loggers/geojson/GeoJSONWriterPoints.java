@@ -3,41 +3,39 @@ package com.mendhak.gpslogger.loggers.geojson;
 import android.location.Location;
 import android.support.annotation.NonNull;
 
+import com.mendhak.gpslogger.common.Locations;
 import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.slf4j.Logs;
-import com.mendhak.gpslogger.loggers.Files;
+import com.mendhak.gpslogger.loggers.FileSink;
+import com.mendhak.gpslogger.loggers.MediaScanQueue;
+import com.mendhak.gpslogger.loggers.PointEncoder;
+import com.mendhak.gpslogger.loggers.WritePipeline;
 
 import org.slf4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.Date;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 
 /**
  * Created by clemens on 10.05.17.
  */
 
 
-public class GeoJSONWriterPoints implements Runnable {
+public class GeoJSONWriterPoints implements Runnable, Serializable {
     private final static Logger LOG = Logs.of(GeoJSONWriterPoints.class);
     private final static String HEADER = "{\"type\": \"FeatureCollection\",\"features\": [\n";
     private final static String TRAILER = "]}";
     private final static int TRAILER_LENGTH = -TRAILER.length();
-    private final static String TEMPLATE =
-            "{\"type\": \"Feature\"," +
-                    "\"properties\":{" +
-                    "%s" +
-                    "}," +
-                    "\"geometry\":{" +
-                    "\"type\":\"Point\",\"coordinates\":" +
-                    "%s}}\n";
-    private final static String ATTRIBUTE_TEMPLATE = ",\"%s\":\"%s\"";
-    private final static String COORD_TEMPLATE = "[%s,%s]";
+    private final static String FEATURE_START = "{\"type\": \"Feature\",\"properties\":{";
+    private final static String GEOMETRY_START = "},\"geometry\":{\"type\":\"Point\",\"coordinates\":[";
+    private final static String FEATURE_END = "]}}\n";
     private final static String DIVIDER = ",";
     private String desc;
     private File file;
-    private Location location;
+    private transient Location location;
 
     public GeoJSONWriterPoints(File setFile, Location setLocation, String setDesc) {
         this.file = setFile;
@@ -45,26 +43,31 @@ public class GeoJSONWriterPoints implements Runnable {
         this.desc = setDesc;
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Locations.writeLocation(out, location);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        location = Locations.readLocation(in);
+    }
+
     @Override
     public void run() {
         try {
 
             synchronized (GeoJSONLogger.lock) {
-                byte[] value = getString(Files.reallyExists(file)).getBytes();
-
-                RandomAccessFile raf;
-                if (!Files.reallyExists(file)) {
-                    file.createNewFile();
-                    raf = new RandomAccessFile(file, "rw");
-                } else {
-                    raf = new RandomAccessFile(file, "rw");
-                    raf.seek(file.length() + TRAILER_LENGTH);
-                }
-                raf.write(value);
-                raf.close();
+                FileSink sink = WritePipeline.getSink(GeoJSONLogger.NAME, file);
+                boolean append = sink.size() > 0;
+                StringBuilder value = PointEncoder.getBuilder();
+                appendString(value, append);
+
+                sink.writeBeforeTrailer(append ? -TRAILER_LENGTH : 0, value);
             }
+            MediaScanQueue.getInstance().request(file, "application/json");
         } catch (IOException e) {
-            e.printStackTrace();
+            WritePipeline.closeSink(GeoJSONLogger.NAME);
             LOG.error("GeoJSONWriterPoints", e);
         }
 
@@ -78,39 +81,52 @@ public class GeoJSONWriterPoints implements Runnable {
      */
     @NonNull
     protected String getString(boolean append) {
-        String coords = String.format(COORD_TEMPLATE, location.getLongitude(), location.getLatitude());
         StringBuilder value = new StringBuilder();
+        appendString(value, append);
+        return value.toString();
+    }
+
+    /**
+     * Appends the GeoJSON entry, numbers go straight into the builder rather than through String.format
+     */
+    void appendString(StringBuilder value, boolean append) {
         if (append) {
             value.append(DIVIDER);
         } else {
             value.append(HEADER);
         }
-        String dateTimeString = Strings.getIsoDateTime(new Date(location.getTime()));
-        String extra = "";
-        StringBuilder attributes = new StringBuilder();
-        attributes.append("\"time\":\"").append(dateTimeString).append("\"");
-        attributes.append(String.format(ATTRIBUTE_TEMPLATE, "provider", location.getProvider()));
-        attributes.append(String.format(ATTRIBUTE_TEMPLATE, "time_long", location.getTime()));
+
+        value.append(FEATURE_START);
+        value.append("\"time\":\"");
+        Strings.appendIsoDateTime(value, location.getTime());
+        value.append("\"");
+        appendAttributeName(value, "provider").append(location.getProvider()).append('"');
+        appendAttributeName(value, "time_long").append(location.getTime()).append('"');
         if (!Strings.isNullOrEmpty(desc)) {
-            attributes.append(String.format(ATTRIBUTE_TEMPLATE, "description", Strings.cleanDescriptionForJson(desc)));
+            appendAttributeName(value, "description").append(Strings.cleanDescriptionForJson(desc)).append('"');
         }
         if (location.hasAccuracy()) {
-            attributes.append(String.format(ATTRIBUTE_TEMPLATE, "accuracy", location.getAccuracy()));
+            appendAttributeName(value, "accuracy").append(location.getAccuracy()).append('"');
         }
         if (location.hasAltitude()) {
-            attributes.append(String.format(ATTRIBUTE_TEMPLATE, "altitude", location.getAltitude()));
+            appendAttributeName(value, "altitude").append(location.getAltitude()).append('"');
         }
         if (location.hasBearing()) {
-            attributes.append(String.format(ATTRIBUTE_TEMPLATE, "bearing", location.getBearing()));
+            appendAttributeName(value, "bearing").append(location.getBearing()).append('"');
         }
         if (location.hasSpeed()) {
-            attributes.append(String.format(ATTRIBUTE_TEMPLATE, "speed", location.getSpeed()));
+            appendAttributeName(value, "speed").append(location.getSpeed()).append('"');
         }
 
-        extra = attributes.toString();
-        value.append(String.format(TEMPLATE,
-                extra,
-                coords)).append(TRAILER);
-        return value.toString();
+        value.append(GEOMETRY_START)
+                .append(location.getLongitude())
+                .append(DIVIDER)
+                .append(location.getLatitude())
+                .append(FEATURE_END)
+                .append(TRAILER);
+    }
+
+    private static StringBuilder appendAttributeName(StringBuilder value, String name) {
+        return value.append(",\"").append(name).append("\":\"");
     }
 }
@@ -20,31 +20,35 @@
 package com.mendhak.gpslogger.loggers.gpx;
 
 import android.location.Location;
+import android.os.Bundle;
 import com.mendhak.gpslogger.BuildConfig;
 import com.mendhak.gpslogger.common.BundleConstants;
+import com.mendhak.gpslogger.common.Locations;
 import com.mendhak.gpslogger.common.Maths;
-import com.mendhak.gpslogger.common.RejectionHandler;
 import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.loggers.AnnotationRegion;
 import com.mendhak.gpslogger.loggers.FileLogger;
+import com.mendhak.gpslogger.loggers.FileSink;
 import com.mendhak.gpslogger.loggers.Files;
+import com.mendhak.gpslogger.loggers.MediaScanQueue;
+import com.mendhak.gpslogger.loggers.PointEncoder;
+import com.mendhak.gpslogger.loggers.WritePipeline;
 import org.slf4j.Logger;
 
 import java.io.*;
 import java.util.Date;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 
 public class Gpx10FileLogger implements FileLogger {
     protected final static Object lock = new Object();
 
-    private final static ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<Runnable>(10), new RejectionHandler());
     private File gpxFile = null;
     private final boolean addNewTrackSegment;
-    protected final String name = "GPX";
+    static final String NAME = "GPX";
+    //Only accessed on the write pipeline thread
+    private static AnnotationRegion waypointRegion;
+    protected final String name = NAME;
 
     public Gpx10FileLogger(File setGpxFile, boolean setAddNewTrackSegment) {
         this.gpxFile = setGpxFile;
@@ -64,7 +68,7 @@ public class Gpx10FileLogger implements FileLogger {
         String dateTimeString = Strings.getIsoDateTime(new Date(time));
 
         Runnable writeHandler = getWriteHandler(dateTimeString, gpxFile, loc, addNewTrackSegment);
-        EXECUTOR.execute(writeHandler);
+        WritePipeline.execute(writeHandler);
     }
 
     public Runnable getWriteHandler(String dateTimeString, File gpxFile, Location loc, boolean addNewTrackSegment)
@@ -80,7 +84,7 @@ public class Gpx10FileLogger implements FileLogger {
         String dateTimeString = Strings.getIsoDateTime(new Date(time));
 
         Runnable annotateHandler = getAnnotateHandler(description, gpxFile, loc, dateTimeString);
-        EXECUTOR.execute(annotateHandler);
+        WritePipeline.execute(annotateHandler);
     }
 
     public Runnable getAnnotateHandler(String description, File gpxFile, Location loc, String dateTimeString){
@@ -94,14 +98,30 @@ public class Gpx10FileLogger implements FileLogger {
         return name;
     }
 
+    /**
+     * The space reserved for waypoints in the GPX file being written, located on first use.
+     * Must only be called from a handler running on the write pipeline.
+     */
+    static AnnotationRegion getWaypointRegion(FileSink gpxSink, int annotateOffset) throws IOException {
+        if (waypointRegion == null || !waypointRegion.isFor(gpxSink.getFile())) {
+            waypointRegion = AnnotationRegion.find(gpxSink, annotateOffset, "<trk>");
+        }
+        return waypointRegion;
+    }
 
+    /**
+     * Must only be called from a handler running on the write pipeline
+     */
+    static void forgetWaypointRegion() {
+        waypointRegion = null;
+    }
 }
 
-class Gpx10AnnotateHandler implements Runnable {
+class Gpx10AnnotateHandler implements Runnable, Serializable {
     private static final Logger LOG = Logs.of(Gpx10AnnotateHandler.class);
     String description;
     File gpxFile;
-    Location loc;
+    transient Location loc;
     String dateTimeString;
     int annotateOffset;
 
@@ -113,6 +133,16 @@ class Gpx10AnnotateHandler implements Runnable {
         this.annotateOffset = annotateOffset;
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Locations.writeLocation(out, loc);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        loc = Locations.readLocation(in);
+    }
+
     @Override
     public void run() {
 
@@ -121,40 +151,30 @@ class Gpx10AnnotateHandler implements Runnable {
                 return;
             }
 
-            String wpt = getWaypointXml(loc, dateTimeString, description);
+            byte[] wpt = getWaypointXml(loc, dateTimeString, description).getBytes();
 
             try {
-
-                //write to a temp file, delete original file, move temp to original
-                File gpxTempFile = new File(gpxFile.getAbsolutePath() + ".tmp");
-
-                BufferedInputStream bis = new BufferedInputStream(new FileInputStream(gpxFile));
-                BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(gpxTempFile));
-
-                int written = 0;
-                int readSize;
-                byte[] buffer = new byte[annotateOffset];
-                while ((readSize = bis.read(buffer)) > 0) {
-                    bos.write(buffer, 0, readSize);
-                    written += readSize;
-
-                    System.out.println(written);
-
-                    if (written == annotateOffset) {
-                        bos.write(wpt.getBytes());
-                        buffer = new byte[20480];
+                FileSink gpxSink = WritePipeline.getSink(Gpx10FileLogger.NAME, gpxFile);
+                AnnotationRegion region = Gpx10FileLogger.getWaypointRegion(gpxSink, annotateOffset);
+
+                if (region != null && region.fits(wpt.length)) {
+                    region.write(gpxSink, wpt);
+                } else {
+                    //Out of reserved space, the file is about to be replaced so commit and let go of it
+                    WritePipeline.closeSink(Gpx10FileLogger.NAME);
+                    Gpx10FileLogger.forgetWaypointRegion();
+
+                    if (region != null) {
+                        region.rewriteWithRoom(wpt);
+                    } else {
+                        AnnotationRegion.rewriteWithRoom(gpxFile, annotateOffset, wpt, AnnotationRegion.RESERVED_LENGTH);
                     }
-
                 }
 
-                bis.close();
-                bos.close();
-
-                gpxFile.delete();
-                gpxTempFile.renameTo(gpxFile);
-
                 LOG.debug("Finished annotation to GPX10 File");
             } catch (Exception e) {
+                WritePipeline.closeSink(Gpx10FileLogger.NAME);
+                Gpx10FileLogger.forgetWaypointRegion();
                 LOG.error("Gpx10FileLogger.annotate", e);
             }
 
@@ -166,13 +186,13 @@ class Gpx10AnnotateHandler implements Runnable {
         StringBuilder waypoint = new StringBuilder();
 
         waypoint.append("\n<wpt lat=\"")
-                .append(String.valueOf(loc.getLatitude()))
+                .append(loc.getLatitude())
                 .append("\" lon=\"")
-                .append(String.valueOf(loc.getLongitude()))
+                .append(loc.getLongitude())
                 .append("\">");
 
         if (loc.hasAltitude()) {
-            waypoint.append("<ele>").append(String.valueOf(loc.getAltitude())).append("</ele>");
+            waypoint.append("<ele>").append(loc.getAltitude()).append("</ele>");
         }
 
         waypoint.append("<time>").append(dateTimeString).append("</time>");
@@ -186,10 +206,10 @@ class Gpx10AnnotateHandler implements Runnable {
 }
 
 
-class Gpx10WriteHandler implements Runnable {
+class Gpx10WriteHandler implements Runnable, Serializable {
     private static final Logger LOG = Logs.of(Gpx10WriteHandler.class);
     String dateTimeString;
-    Location loc;
+    transient Location loc;
     private File gpxFile = null;
     private boolean addNewTrackSegment;
 
@@ -200,39 +220,42 @@ class Gpx10WriteHandler implements Runnable {
         this.loc = loc;
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Locations.writeLocation(out, loc);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        loc = Locations.readLocation(in);
+    }
+
     @Override
     public void run() {
         synchronized (Gpx10FileLogger.lock) {
 
             try {
-                if (!Files.reallyExists(gpxFile)) {
-                    gpxFile.createNewFile();
-
-                    FileOutputStream initialWriter = new FileOutputStream(gpxFile, true);
-                    BufferedOutputStream initialOutput = new BufferedOutputStream(initialWriter);
+                FileSink gpxSink = WritePipeline.getSink(Gpx10FileLogger.NAME, gpxFile);
 
-                    initialOutput.write(getBeginningXml(dateTimeString).getBytes());
-                    initialOutput.write("<trk>".getBytes());
-                    initialOutput.write(getEndXml().getBytes());
-                    initialOutput.flush();
-                    initialOutput.close();
+                if (gpxSink.size() == 0) {
+                    //Leave room after the header for waypoints, which GPX wants before the track
+                    gpxSink.append((getBeginningXml(dateTimeString) + AnnotationRegion.getPadding() + "<trk>" + getEndXml()).getBytes());
+                    Gpx10FileLogger.forgetWaypointRegion();
 
                     //New file, so new segment.
                     addNewTrackSegment = true;
                 }
 
                 int offsetFromEnd = (addNewTrackSegment) ? getEndXml().length() : getEndXmlWithSegment().length();
-                long startPosition = gpxFile.length() - offsetFromEnd;
-                String trackPoint = getTrackPointXml(loc, dateTimeString);
-
-                RandomAccessFile raf = new RandomAccessFile(gpxFile, "rw");
-                raf.seek(startPosition);
-                raf.write(trackPoint.getBytes());
-                raf.close();
-                Files.addToMediaDatabase(gpxFile, "text/plain");
+                StringBuilder trackPoint = PointEncoder.getBuilder();
+                appendTrackPointXml(trackPoint, loc, dateTimeString);
+
+                gpxSink.writeBeforeTrailer(offsetFromEnd, trackPoint);
+                MediaScanQueue.getInstance().request(gpxFile, "text/plain");
                 LOG.debug("Finished writing to GPX10 file");
 
             } catch (Exception e) {
+                WritePipeline.closeSink(Gpx10FileLogger.NAME);
                 LOG.error("Gpx10FileLogger.write", e);
             }
 
@@ -261,29 +284,35 @@ class Gpx10WriteHandler implements Runnable {
     }
 
     String getTrackPointXml(Location loc, String dateTimeString) {
-
         StringBuilder track = new StringBuilder();
+        appendTrackPointXml(track, loc, dateTimeString);
+        return track.toString();
+    }
+
+    void appendTrackPointXml(StringBuilder track, Location loc, String dateTimeString) {
 
         if (addNewTrackSegment) {
             track.append("<trkseg>");
         }
 
         track.append("<trkpt lat=\"")
-                .append(String.valueOf(loc.getLatitude()))
+                .append(loc.getLatitude())
                 .append("\" lon=\"")
-                .append(String.valueOf(loc.getLongitude()))
+                .append(loc.getLongitude())
                 .append("\">");
 
         if (loc.hasAltitude()) {
-            track.append("<ele>").append(String.valueOf(loc.getAltitude())).append("</ele>");
+            track.append("<ele>").append(loc.getAltitude()).append("</ele>");
         }
 
         track.append("<time>").append(dateTimeString).append("</time>");
 
         appendCourseAndSpeed(track, loc);
 
-        if (loc.getExtras() != null) {
-            String geoidheight = loc.getExtras().getString(BundleConstants.GEOIDHEIGHT);
+        Bundle extras = loc.getExtras();
+
+        if (extras != null) {
+            String geoidheight = extras.getString(BundleConstants.GEOIDHEIGHT);
 
             if (!Strings.isNullOrEmpty(geoidheight)) {
                 track.append("<geoidheight>").append(geoidheight).append("</geoidheight>");
@@ -292,20 +321,20 @@ class Gpx10WriteHandler implements Runnable {
 
         track.append("<src>").append(loc.getProvider()).append("</src>");
 
-        if (loc.getExtras() != null) {
+        if (extras != null) {
 
             int sat = Maths.getBundledSatelliteCount(loc);
 
             if(sat > 0){
-                track.append("<sat>").append(String.valueOf(sat)).append("</sat>");
+                track.append("<sat>").append(sat).append("</sat>");
             }
 
 
-            String hdop = loc.getExtras().getString(BundleConstants.HDOP);
-            String pdop = loc.getExtras().getString(BundleConstants.PDOP);
-            String vdop = loc.getExtras().getString(BundleConstants.VDOP);
-            String ageofdgpsdata = loc.getExtras().getString(BundleConstants.AGEOFDGPSDATA);
-            String dgpsid = loc.getExtras().getString(BundleConstants.DGPSID);
+            String hdop = extras.getString(BundleConstants.HDOP);
+            String pdop = extras.getString(BundleConstants.PDOP);
+            String vdop = extras.getString(BundleConstants.VDOP);
+            String ageofdgpsdata = extras.getString(BundleConstants.AGEOFDGPSDATA);
+            String dgpsid = extras.getString(BundleConstants.DGPSID);
 
             if (!Strings.isNullOrEmpty(hdop)) {
                 track.append("<hdop>").append(hdop).append("</hdop>");
@@ -332,18 +361,16 @@ class Gpx10WriteHandler implements Runnable {
         track.append("</trkpt>\n");
 
         track.append("</trkseg></trk></gpx>");
-
-        return track.toString();
     }
 
     public void appendCourseAndSpeed(StringBuilder track, Location loc)
     {
         if (loc.hasBearing()) {
-            track.append("<course>").append(String.valueOf(loc.getBearing())).append("</course>");
+            track.append("<course>").append(loc.getBearing()).append("</course>");
         }
 
         if (loc.hasSpeed()) {
-            track.append("<speed>").append(String.valueOf(loc.getSpeed())).append("</speed>");
+            track.append("<speed>").append(loc.getSpeed()).append("</speed>");
         }
     }
 }
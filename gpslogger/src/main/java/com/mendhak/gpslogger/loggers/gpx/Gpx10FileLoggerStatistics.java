@@ -9,6 +9,7 @@ import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.slf4j.Logs;
 import com.mendhak.gpslogger.loggers.FileLogger;
 import com.mendhak.gpslogger.loggers.Files;
+import com.mendhak.gpslogger.loggers.MediaScanQueue;
 import org.slf4j.Logger;
 
 import java.io.*;
@@ -202,7 +203,7 @@ class Gpx10WriteHandler implements Runnable {
                 raf.seek(startPosition);
                 raf.write(trackPoint.getBytes());
                 raf.close();
-                Files.addToMediaDatabase(gpxFile, "text/plain");
+                MediaScanQueue.getInstance().request(gpxFile, "text/plain");
                 LOG.debug("Finished writing to GPX10 file");
 
             } catch (Exception e) {
@@ -20,27 +20,29 @@
 package com.mendhak.gpslogger.loggers.kml;
 
 import android.location.Location;
-import com.mendhak.gpslogger.common.RejectionHandler;
+import com.mendhak.gpslogger.common.Locations;
 import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.loggers.AnnotationRegion;
 import com.mendhak.gpslogger.loggers.FileLogger;
+import com.mendhak.gpslogger.loggers.FileSink;
 import com.mendhak.gpslogger.loggers.Files;
+import com.mendhak.gpslogger.loggers.MediaScanQueue;
+import com.mendhak.gpslogger.loggers.PointEncoder;
+import com.mendhak.gpslogger.loggers.WritePipeline;
 import org.slf4j.Logger;
 
 import java.io.*;
-import java.nio.channels.FileChannel;
 import java.util.Date;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 public class Kml22FileLogger implements FileLogger {
     protected final static Object lock = new Object();
-    private final static ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<Runnable>(10), new RejectionHandler());
     private final boolean addNewTrackSegment;
     private final File kmlFile;
-    protected final String name = "KML";
+    static final String NAME = "KML";
+    //Only accessed on the write pipeline thread
+    private static AnnotationRegion placemarkRegion;
+    protected final String name = NAME;
 
 
     public Kml22FileLogger(File setKmlFile, boolean setAddNewTrackSegment) {
@@ -51,70 +53,102 @@ public class Kml22FileLogger implements FileLogger {
 
     public void write(Location loc) throws Exception {
         Kml22WriteHandler writeHandler = new Kml22WriteHandler(loc, kmlFile, addNewTrackSegment);
-        EXECUTOR.execute(writeHandler);
+        WritePipeline.execute(writeHandler);
     }
 
     public void annotate(String description, Location loc) throws Exception {
         
         description = Strings.cleanDescriptionForXml(description);
         
-        Kml22AnnotateHandler annotateHandler = new Kml22AnnotateHandler(kmlFile, description, loc);
-        EXECUTOR.execute(annotateHandler);
+        //Use the writer to calculate initial XML length, use that as offset for annotations
+        Kml22WriteHandler writer = new Kml22WriteHandler(loc, kmlFile, true);
+        int annotationOffset = writer.getBeginningXml(Strings.getIsoDateTime(new Date(loc.getTime()))).length();
+
+        Kml22AnnotateHandler annotateHandler = new Kml22AnnotateHandler(kmlFile, description, loc, annotationOffset);
+        WritePipeline.execute(annotateHandler);
     }
 
     @Override
     public String getName() {
         return name;
     }
+
+    /**
+     * The space reserved for annotations in the KML file being written, located on first use.
+     * It runs up to the first track placemark, or the end of the document if there's no track yet.
+     * Must only be called from a handler running on the write pipeline.
+     */
+    static AnnotationRegion getPlacemarkRegion(FileSink kmlSink, int annotationOffset) throws IOException {
+        if (placemarkRegion == null || !placemarkRegion.isFor(kmlSink.getFile())) {
+            placemarkRegion = AnnotationRegion.find(kmlSink, annotationOffset, "<Placemark>\n<gx:Track>", "</Document>");
+        }
+        return placemarkRegion;
+    }
+
+    /**
+     * Must only be called from a handler running on the write pipeline
+     */
+    static void forgetPlacemarkRegion() {
+        placemarkRegion = null;
+    }
 }
 
-class Kml22AnnotateHandler implements Runnable {
+class Kml22AnnotateHandler implements Runnable, Serializable {
     private static final Logger LOG = Logs.of(Kml22AnnotateHandler.class);
     File kmlFile;
     String description;
-    Location loc;
-    int kmlAnnotationOffset = 258;
+    transient Location loc;
+    int kmlAnnotationOffset;
 
-    public Kml22AnnotateHandler(File setKmlFile, String setDescription, Location setLoc) {
+    public Kml22AnnotateHandler(File setKmlFile, String setDescription, Location setLoc, int setAnnotationOffset) {
         this.kmlFile = setKmlFile;
         this.description = setDescription;
         this.loc = setLoc;
+        this.kmlAnnotationOffset = setAnnotationOffset;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Locations.writeLocation(out, loc);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        loc = Locations.readLocation(in);
     }
 
 
     @Override
     public void run() {
-        if(!Files.reallyExists(kmlFile)){
-            return;
-        }
-
         try {
             synchronized (Kml22FileLogger.lock) {
 
-                String descriptionNode = getPlacemarkXml(description, loc);
+                if(!Files.reallyExists(kmlFile)){
+                    return;
+                }
 
+                byte[] descriptionNode = getPlacemarkXml(description, loc).getBytes();
 
-                RandomAccessFile r = new RandomAccessFile(kmlFile, "rw");
-                File tmpFile = new File(kmlFile.getAbsolutePath() + "~");
-                tmpFile.createNewFile();
-                RandomAccessFile rtemp = new RandomAccessFile(tmpFile, "rw");
-                long fileSize = r.length();
-                FileChannel sourceChannel = r.getChannel();
-                FileChannel targetChannel = rtemp.getChannel();
-                sourceChannel.transferTo(kmlAnnotationOffset, (fileSize - kmlAnnotationOffset), targetChannel);
-                sourceChannel.truncate(kmlAnnotationOffset);
-                r.seek(kmlAnnotationOffset);
-                r.write(descriptionNode.getBytes());
-                long newOffset = r.getFilePointer();
-                targetChannel.position(0L);
-                sourceChannel.transferFrom(targetChannel, newOffset, (fileSize - kmlAnnotationOffset));
-                sourceChannel.close();
-                targetChannel.close();
-                tmpFile.delete();
+                FileSink kmlSink = WritePipeline.getSink(Kml22FileLogger.NAME, kmlFile);
+                AnnotationRegion region = Kml22FileLogger.getPlacemarkRegion(kmlSink, kmlAnnotationOffset);
 
+                if (region != null && region.fits(descriptionNode.length)) {
+                    region.write(kmlSink, descriptionNode);
+                } else {
+                    //Out of reserved space, the file is about to be replaced so commit and let go of it
+                    WritePipeline.closeSink(Kml22FileLogger.NAME);
+                    Kml22FileLogger.forgetPlacemarkRegion();
 
+                    if (region != null) {
+                        region.rewriteWithRoom(descriptionNode);
+                    } else {
+                        AnnotationRegion.rewriteWithRoom(kmlFile, kmlAnnotationOffset, descriptionNode, AnnotationRegion.RESERVED_LENGTH);
+                    }
+                }
             }
         } catch (Exception e) {
+            WritePipeline.closeSink(Kml22FileLogger.NAME);
+            Kml22FileLogger.forgetPlacemarkRegion();
             LOG.error("Kml22FileLogger.annotate", e);
         }
     }
@@ -135,12 +169,14 @@ class Kml22AnnotateHandler implements Runnable {
     }
 }
 
-class Kml22WriteHandler implements Runnable {
+class Kml22WriteHandler implements Runnable, Serializable {
 
     private static final Logger LOG = Logs.of(Kml22WriteHandler.class);
+    private static final String PLACEMARK_HEAD = "<Placemark>\n<gx:Track>\n";
+    private static final String PLACEMARK_TAIL = "</gx:Track>\n</Placemark></Document></kml>\n";
     boolean addNewTrackSegment;
     File kmlFile;
-    Location loc;
+    transient Location loc;
 
 
     public Kml22WriteHandler(Location setLoc, File setKmlFile, boolean setAddNewTrackSegment) {
@@ -149,38 +185,34 @@ class Kml22WriteHandler implements Runnable {
         this.addNewTrackSegment = setAddNewTrackSegment;
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Locations.writeLocation(out, loc);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        loc = Locations.readLocation(in);
+    }
+
 
     @Override
     public void run() {
         try {
-
-            RandomAccessFile raf;
-
-            String dateTimeString = Strings.getIsoDateTime(new Date(loc.getTime()));
-            String placemarkHead = "<Placemark>\n<gx:Track>\n";
-            String placemarkTail = "</gx:Track>\n</Placemark></Document></kml>\n";
-
             synchronized (Kml22FileLogger.lock) {
 
-                if(!Files.reallyExists(kmlFile)){
-                    kmlFile.createNewFile();
-
-                    FileOutputStream initialWriter = new FileOutputStream(kmlFile, true);
-                    BufferedOutputStream initialOutput = new BufferedOutputStream(initialWriter);
+                FileSink kmlSink = WritePipeline.getSink(Kml22FileLogger.NAME, kmlFile);
 
+                if(kmlSink.size() == 0){
                     StringBuilder initialXml = new StringBuilder();
-                    initialXml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                    initialXml.append("<kml xmlns=\"http://www.opengis.net/kml/2.2\" ");
-                    initialXml.append("xmlns:gx=\"http://www.google.com/kml/ext/2.2\" ");
-                    initialXml.append("xmlns:kml=\"http://www.opengis.net/kml/2.2\" ");
-                    initialXml.append("xmlns:atom=\"http://www.w3.org/2005/Atom\">");
-                    initialXml.append("<Document>");
-                    initialXml.append("<name>").append(dateTimeString).append("</name>\n");
+                    initialXml.append(getBeginningXml(Strings.getIsoDateTime(new Date(loc.getTime()))));
+
+                    //Leave room for annotation placemarks ahead of the track
+                    initialXml.append(AnnotationRegion.getPadding());
 
                     initialXml.append("</Document></kml>\n");
-                    initialOutput.write(initialXml.toString().getBytes());
-                    initialOutput.flush();
-                    initialOutput.close();
+                    kmlSink.append(initialXml.toString().getBytes());
+                    Kml22FileLogger.forgetPlacemarkRegion();
 
                     //New file, so new track segment
                     addNewTrackSegment = true;
@@ -188,35 +220,41 @@ class Kml22WriteHandler implements Runnable {
 
 
                 if (addNewTrackSegment) {
-                    raf = new RandomAccessFile(kmlFile, "rw");
-                    raf.seek(kmlFile.length() - 18);
-                    raf.write((placemarkHead + placemarkTail).getBytes());
-                    raf.close();
-
+                    kmlSink.writeBeforeTrailer(18, (PLACEMARK_HEAD + PLACEMARK_TAIL).getBytes());
                 }
 
-                StringBuilder coords = new StringBuilder();
+                StringBuilder coords = PointEncoder.getBuilder();
                 coords.append("\n<when>");
-                coords.append(dateTimeString);
+                Strings.appendIsoDateTime(coords, loc.getTime());
                 coords.append("</when>\n<gx:coord>");
-                coords.append(String.valueOf(loc.getLongitude()));
+                coords.append(loc.getLongitude());
                 coords.append(" ");
-                coords.append(String.valueOf(loc.getLatitude()));
+                coords.append(loc.getLatitude());
                 coords.append(" ");
-                coords.append(String.valueOf(loc.getAltitude()));
+                coords.append(loc.getAltitude());
                 coords.append("</gx:coord>\n");
-                coords.append(placemarkTail);
+                coords.append(PLACEMARK_TAIL);
 
-                raf = new RandomAccessFile(kmlFile, "rw");
-                raf.seek(kmlFile.length() - 42);
-                raf.write(coords.toString().getBytes());
-                raf.close();
-                Files.addToMediaDatabase(kmlFile, "text/xml");
+                kmlSink.writeBeforeTrailer(42, coords);
+                MediaScanQueue.getInstance().request(kmlFile, "text/xml");
                 LOG.debug("Finished writing to KML22 File");
             }
 
         } catch (Exception e) {
+            WritePipeline.closeSink(Kml22FileLogger.NAME);
             LOG.error("Kml22FileLogger.write", e);
         }
     }
+
+    String getBeginningXml(String dateTimeString){
+        StringBuilder initialXml = new StringBuilder();
+        initialXml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        initialXml.append("<kml xmlns=\"http://www.opengis.net/kml/2.2\" ");
+        initialXml.append("xmlns:gx=\"http://www.google.com/kml/ext/2.2\" ");
+        initialXml.append("xmlns:kml=\"http://www.opengis.net/kml/2.2\" ");
+        initialXml.append("xmlns:atom=\"http://www.w3.org/2005/Atom\">");
+        initialXml.append("<Document>");
+        initialXml.append("<name>").append(dateTimeString).append("</name>\n");
+        return initialXml.toString();
+    }
 }
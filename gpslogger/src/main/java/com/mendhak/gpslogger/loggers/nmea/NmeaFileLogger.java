@@ -20,81 +20,201 @@
 package com.mendhak.gpslogger.loggers.nmea;
 
 import com.mendhak.gpslogger.common.PreferenceHelper;
-import com.mendhak.gpslogger.common.RejectionHandler;
-import com.mendhak.gpslogger.common.Session;
 import com.mendhak.gpslogger.common.Strings;
-import com.mendhak.gpslogger.loggers.Files;
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.loggers.MediaScanQueue;
+import org.slf4j.Logger;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Writes raw NMEA sentences to the .nmea file for the whole logging session.
+ * The GPS can report dozens of sentences a second, so a sentence is only copied into an in-memory ring buffer by the
+ * thread reporting it. A background thread empties the buffer into the file about once a second, through a channel
+ * kept open until the file name rolls over or logging stops.
+ */
 public class NmeaFileLogger {
 
-    protected final static Object lock = new Object();
-    String fileName;
-    private final static ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<Runnable>(10), new RejectionHandler());
+    private static final Logger LOG = Logs.of(NmeaFileLogger.class);
+
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final long FLUSH_INTERVAL_MILLIS = 1000;
 
-    private PreferenceHelper preferenceHelper = PreferenceHelper.getInstance();
-    private Session session = Session.getInstance();
+    private final static ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "NmeaFileLogger");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static NmeaFileLogger instance;
+
+    //Sentences waiting to be written, count bytes from start, wrapping round
+    private final byte[] ring;
+    private int start;
+    private int count;
+    private boolean flushScheduled;
+
+    //Only used while holding drainLock
+    private final Object drainLock = new Object();
+    private final byte[] drainBuffer;
+    private File openFile;
+    private FileOutputStream outputStream;
+    private FileChannel channel;
+
+    private final Runnable scheduledFlush = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ring) {
+                flushScheduled = false;
+            }
+            flush();
+        }
+    };
 
-    public NmeaFileLogger(String setFileName) {
-        this.fileName = setFileName;
+    NmeaFileLogger(int bufferSize) {
+        this.ring = new byte[bufferSize];
+        this.drainBuffer = new byte[bufferSize];
     }
 
-    public void write(long timestamp, String nmeaSentence)  {
+    public static synchronized NmeaFileLogger getInstance() {
+        if (instance == null) {
+            instance = new NmeaFileLogger(BUFFER_SIZE);
+        }
+        return instance;
+    }
 
-        File gpxFolder = new File(preferenceHelper.getGpsLoggerFolder());
-        if (!gpxFolder.exists()) {
-            gpxFolder.mkdirs();
+    /**
+     * Queues a sentence to be written. Doesn't touch storage unless the buffer is full.
+     */
+    public void write(long timestamp, String nmeaSentence) {
+        int length = nmeaSentence.length() + 1;
+        if (length > ring.length) {
+            LOG.warn("Skipping NMEA sentence of " + length + " characters, longer than the buffer");
+            return;
         }
 
-        File nmeaFile = new File(gpxFolder.getPath(), Strings.getFormattedFileName() + ".nmea");
+        while (!append(nmeaSentence, length)) {
+            //The writer has fallen behind, empty the buffer here rather than lose sentences
+            flush();
+        }
+    }
 
-        if (!nmeaFile.exists()) {
-            try {
-                nmeaFile.createNewFile();
-            } catch (IOException e) {
+    private boolean append(String nmeaSentence, int length) {
+        synchronized (ring) {
+            if (count + length > ring.length) {
+                return false;
+            }
 
+            int position = (start + count) % ring.length;
+            for (int i = 0; i < length; i++) {
+                char c = i < length - 1 ? nmeaSentence.charAt(i) : '\n';
+                //NMEA is plain ASCII
+                ring[position] = c < 0x80 ? (byte) c : (byte) '?';
+                position = position + 1 == ring.length ? 0 : position + 1;
             }
-        }
+            count += length;
 
-        NmeaWriteHandler writeHandler = new NmeaWriteHandler(nmeaFile, nmeaSentence);
-        EXECUTOR.execute(writeHandler);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                TIMER.schedule(scheduledFlush, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
     }
-}
 
-class NmeaWriteHandler implements Runnable {
+    /**
+     * Writes the buffered sentences to the current NMEA file, moving on to a new file if the file name has rolled over
+     */
+    public void flush() {
+        synchronized (drainLock) {
+            int length;
+            synchronized (ring) {
+                length = count;
+                int firstPart = Math.min(length, ring.length - start);
+                System.arraycopy(ring, start, drainBuffer, 0, firstPart);
+                System.arraycopy(ring, 0, drainBuffer, firstPart, length - firstPart);
+                start = (start + length) % ring.length;
+                count = 0;
+            }
 
-    File gpxFile;
-    String nmeaSentence;
+            if (length == 0) {
+                return;
+            }
+
+            try {
+                File file = getCurrentFile();
+                if (channel == null || !file.equals(openFile)) {
+                    open(file);
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(drainBuffer, 0, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                LOG.error("Could not write NMEA sentences", e);
+                closeFile();
+            }
+        }
+    }
+
+    /**
+     * Writes out the buffered sentences and closes the file. Called when logging stops.
+     */
+    public void close() {
+        flush();
+        synchronized (drainLock) {
+            closeFile();
+        }
+    }
 
-    NmeaWriteHandler(File setGpxFile, String setNmeaSentence) {
-        this.gpxFile = setGpxFile;
-        this.nmeaSentence = setNmeaSentence;
+    /**
+     * The NMEA file sentences should be going to now
+     */
+    File getCurrentFile() {
+        File gpxFolder = new File(PreferenceHelper.getInstance().getGpsLoggerFolder());
+        return new File(gpxFolder, Strings.getFormattedFileName() + ".nmea");
     }
 
-    @Override
-    public void run() {
+    private void open(File file) throws IOException {
+        closeFile();
 
-        synchronized (NmeaFileLogger.lock) {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.exists()) {
+            folder.mkdirs();
+        }
 
-            try {
-                BufferedWriter writer = new BufferedWriter(new FileWriter(gpxFile, true));
-                writer.write(nmeaSentence);
-                writer.newLine();
-                writer.close();
-                Files.addToMediaDatabase(gpxFile, "text/plain");
+        outputStream = new FileOutputStream(file, true);
+        channel = outputStream.getChannel();
+        openFile = file;
+        LOG.debug("Writing NMEA sentences to " + file.getName());
+    }
 
-            } catch (IOException e) {
+    private void closeFile() {
+        if (outputStream == null) {
+            return;
+        }
 
-            }
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            LOG.warn("Could not close NMEA file", e);
         }
 
+        MediaScanQueue.getInstance().request(openFile, "text/plain");
+        outputStream = null;
+        channel = null;
+        openFile = null;
     }
 }
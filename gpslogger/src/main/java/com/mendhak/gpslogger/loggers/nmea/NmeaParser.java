@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.loggers.nmea;
+
+/**
+ * Reads the values GPSLogger wants out of NMEA sentences without creating any objects.
+ * A sentence is scanned once, recording where each field starts and ends and checking the checksum as it goes,
+ * and the fields are only turned into numbers when asked for.
+ * Each value can also be had as the text it was sent as, for logging it unchanged, which copies the field.
+ * Understands GGA and GSA from GPS, GLONASS, Galileo and BeiDou receivers as well as combined GNSS ones.
+ * One parser is meant to be reused for sentence after sentence from the same thread.
+ */
+public class NmeaParser {
+
+    public static final int TYPE_OTHER = 0;
+    public static final int TYPE_GGA = 1;
+    public static final int TYPE_GSA = 2;
+
+    public static final int TALKER_OTHER = 0;
+    public static final int TALKER_GPS = 1;
+    public static final int TALKER_GNSS = 2;
+    public static final int TALKER_GLONASS = 3;
+    public static final int TALKER_GALILEO = 4;
+    public static final int TALKER_BEIDOU = 5;
+    public static final int TALKER_QZSS = 6;
+
+    private static final int GGA_HDOP = 8;
+    private static final int GGA_GEOID_HEIGHT = 11;
+    private static final int GGA_AGE_OF_DGPS_DATA = 13;
+    private static final int GGA_DGPS_ID = 14;
+    private static final int GSA_PDOP = 15;
+    private static final int GSA_HDOP = 16;
+    private static final int GSA_VDOP = 17;
+
+    //More than any sentence this reads, fields past this are checksummed but not kept
+    private static final int MAX_FIELDS = 24;
+
+    private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    private CharSequence sentence;
+    private int fieldCount;
+    private int talker;
+    private int type;
+
+    /**
+     * Reads a sentence, replacing the last one.
+     *
+     * @return false if it isn't a complete NMEA sentence with a correct checksum, in which case no values are available
+     */
+    public boolean parse(CharSequence nmeaSentence) {
+        this.sentence = nmeaSentence;
+        this.fieldCount = 0;
+        this.talker = TALKER_OTHER;
+        this.type = TYPE_OTHER;
+
+        if (nmeaSentence == null || nmeaSentence.length() < 4 || nmeaSentence.charAt(0) != '$') {
+            return false;
+        }
+
+        int length = nmeaSentence.length();
+        int checksum = 0;
+        int fieldStart = 1;
+        int fields = 0;
+        int i = 1;
+
+        for (; i < length; i++) {
+            char c = nmeaSentence.charAt(i);
+            if (c == '*') {
+                break;
+            }
+
+            checksum ^= c;
+            if (c == ',') {
+                if (fields < MAX_FIELDS) {
+                    fieldStarts[fields] = fieldStart;
+                    fieldEnds[fields] = i;
+                }
+                fields++;
+                fieldStart = i + 1;
+            }
+        }
+
+        //Everything after the data is the two hex digit checksum, and perhaps the line ending
+        if (i + 2 >= length) {
+            return false;
+        }
+
+        int expected = hexValue(nmeaSentence.charAt(i + 1)) << 4 | hexValue(nmeaSentence.charAt(i + 2));
+        if (expected != checksum) {
+            return false;
+        }
+
+        if (fields < MAX_FIELDS) {
+            fieldStarts[fields] = fieldStart;
+            fieldEnds[fields] = i;
+        }
+        fields++;
+
+        this.fieldCount = Math.min(fields, MAX_FIELDS);
+        readAddress();
+        return true;
+    }
+
+    /**
+     * Whether the last sentence can carry dilution of precision or DGPS values
+     */
+    public boolean isLocationSentence() {
+        return type == TYPE_GGA || type == TYPE_GSA;
+    }
+
+    /**
+     * One of the TYPE_ constants
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * One of the TALKER_ constants
+     */
+    public int getTalker() {
+        return talker;
+    }
+
+    /**
+     * Position dilution of precision from a GSA sentence, NaN if the sentence doesn't have it
+     */
+    public double getPdop() {
+        return type == TYPE_GSA ? getDouble(GSA_PDOP) : Double.NaN;
+    }
+
+    /**
+     * Horizontal dilution of precision from a GGA or GSA sentence, NaN if the sentence doesn't have it
+     */
+    public double getHdop() {
+        if (type == TYPE_GGA) {
+            return getDouble(GGA_HDOP);
+        }
+        return type == TYPE_GSA ? getDouble(GSA_HDOP) : Double.NaN;
+    }
+
+    /**
+     * Vertical dilution of precision from a GSA sentence, NaN if the sentence doesn't have it
+     */
+    public double getVdop() {
+        return type == TYPE_GSA ? getDouble(GSA_VDOP) : Double.NaN;
+    }
+
+    /**
+     * Height of the geoid above the WGS84 ellipsoid from a GGA sentence, NaN if the sentence doesn't have it
+     */
+    public double getGeoIdHeight() {
+        return type == TYPE_GGA ? getDouble(GGA_GEOID_HEIGHT) : Double.NaN;
+    }
+
+    /**
+     * Seconds since the last DGPS update from a GGA sentence, NaN if the sentence doesn't have it
+     */
+    public double getAgeOfDgpsData() {
+        return type == TYPE_GGA ? getDouble(GGA_AGE_OF_DGPS_DATA) : Double.NaN;
+    }
+
+    /**
+     * DGPS station ID from a GGA sentence, -1 if the sentence doesn't have it
+     */
+    public int getDgpsId() {
+        if (type != TYPE_GGA || !hasField(GGA_DGPS_ID)) {
+            return -1;
+        }
+
+        int value = 0;
+        for (int i = fieldStarts[GGA_DGPS_ID]; i < fieldEnds[GGA_DGPS_ID]; i++) {
+            int digit = sentence.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value > 100000) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * {@link #getPdop()} as written in the sentence, null if the sentence doesn't have it
+     */
+    public String getPdopText() {
+        return type == TYPE_GSA ? getNumberText(GSA_PDOP) : null;
+    }
+
+    /**
+     * {@link #getHdop()} as written in the sentence, null if the sentence doesn't have it
+     */
+    public String getHdopText() {
+        if (type == TYPE_GGA) {
+            return getNumberText(GGA_HDOP);
+        }
+        return type == TYPE_GSA ? getNumberText(GSA_HDOP) : null;
+    }
+
+    /**
+     * {@link #getVdop()} as written in the sentence, null if the sentence doesn't have it
+     */
+    public String getVdopText() {
+        return type == TYPE_GSA ? getNumberText(GSA_VDOP) : null;
+    }
+
+    /**
+     * {@link #getGeoIdHeight()} as written in the sentence, null if the sentence doesn't have it
+     */
+    public String getGeoIdHeightText() {
+        return type == TYPE_GGA ? getNumberText(GGA_GEOID_HEIGHT) : null;
+    }
+
+    /**
+     * {@link #getAgeOfDgpsData()} as written in the sentence, null if the sentence doesn't have it
+     */
+    public String getAgeOfDgpsDataText() {
+        return type == TYPE_GGA ? getNumberText(GGA_AGE_OF_DGPS_DATA) : null;
+    }
+
+    /**
+     * {@link #getDgpsId()} as written in the sentence, keeping any leading zeros, null if the sentence doesn't have it
+     */
+    public String getDgpsIdText() {
+        return getDgpsId() < 0 ? null : getText(GGA_DGPS_ID);
+    }
+
+    private void readAddress() {
+        int start = fieldStarts[0];
+        if (fieldEnds[0] - start != 5) {
+            return;
+        }
+
+        talker = talkerFor(sentence.charAt(start), sentence.charAt(start + 1));
+        if (talker == TALKER_OTHER) {
+            return;
+        }
+
+        char a = sentence.charAt(start + 2);
+        char b = sentence.charAt(start + 3);
+        char c = sentence.charAt(start + 4);
+
+        if (a == 'G' && b == 'G' && c == 'A') {
+            type = TYPE_GGA;
+        } else if (a == 'G' && b == 'S' && c == 'A') {
+            type = TYPE_GSA;
+        }
+    }
+
+    private static int talkerFor(char first, char second) {
+        if (first == 'G') {
+            switch (second) {
+                case 'P':
+                    return TALKER_GPS;
+                case 'N':
+                    return TALKER_GNSS;
+                case 'L':
+                    return TALKER_GLONASS;
+                case 'A':
+                    return TALKER_GALILEO;
+                case 'B':
+                    return TALKER_BEIDOU;
+                case 'Q':
+                    return TALKER_QZSS;
+            }
+        } else if (first == 'B' && second == 'D') {
+            return TALKER_BEIDOU;
+        }
+
+        return TALKER_OTHER;
+    }
+
+    private boolean hasField(int field) {
+        return field < fieldCount && fieldEnds[field] > fieldStarts[field];
+    }
+
+    /**
+     * The text of a field, null unless it is a plain decimal that {@link #getDouble(int)} can read
+     */
+    private String getNumberText(int field) {
+        return Double.isNaN(getDouble(field)) ? null : getText(field);
+    }
+
+    private String getText(int field) {
+        return sentence.subSequence(fieldStarts[field], fieldEnds[field]).toString();
+    }
+
+    /**
+     * Reads a plain decimal such as -12.345, NaN if the field is empty or anything else
+     */
+    private double getDouble(int field) {
+        if (!hasField(field)) {
+            return Double.NaN;
+        }
+
+        int i = fieldStarts[field];
+        int end = fieldEnds[field];
+        boolean negative = false;
+
+        char first = sentence.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long digits = 0;
+        int significantDigits = 0;
+        int decimals = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+
+        for (; i < end; i++) {
+            char c = sentence.charAt(i);
+            if (c == '.' && !seenPoint) {
+                seenPoint = true;
+                continue;
+            }
+
+            int digit = c - '0';
+            if (digit < 0 || digit > 9) {
+                return Double.NaN;
+            }
+
+            seenDigit = true;
+            if (significantDigits < 18 && decimals < 18) {
+                digits = digits * 10 + digit;
+                if (digits > 0) {
+                    significantDigits++;
+                }
+                if (seenPoint) {
+                    decimals++;
+                }
+            } else if (!seenPoint) {
+                //Too many digits to hold, the rest only scale the value
+                return Double.NaN;
+            }
+        }
+
+        if (!seenDigit) {
+            return Double.NaN;
+        }
+
+        double value = decimals == 0 ? digits : digits / POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -256;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.loggers.opengts;
+
+import com.mendhak.gpslogger.common.events.UploadEvents;
+import com.mendhak.gpslogger.common.network.HttpClients;
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.senders.UploadConcurrency;
+import com.path.android.jobqueue.Job;
+import com.path.android.jobqueue.Params;
+import de.greenrobot.event.EventBus;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+
+/**
+ * Sends a batch of OpenGTS HTTP requests, one per point, as a single job.
+ * All of the requests go through the shared client so that they share a keep-alive connection and a single TLS handshake,
+ * rather than a job, client and connection per point.
+ */
+public class OpenGtsHttpJob extends Job {
+
+    private static final Logger LOG = Logs.of(OpenGtsHttpJob.class);
+
+    private final String[] urls;
+    //Requests the server has already accepted, a retry carries on from here instead of sending them again
+    private int sentCount;
+
+    public OpenGtsHttpJob(String[] urls) {
+        super(new Params(1).requireNetwork().persist().groupBy(UploadConcurrency.groupFor(UploadConcurrency.OPENGTS)));
+        this.urls = urls;
+    }
+
+    @Override
+    public void onAdded() {
+    }
+
+    @Override
+    public void onRun() throws Throwable {
+        LOG.debug("Sending " + (urls.length - sentCount) + " points to OpenGTS over HTTP");
+
+        OkHttpClient client = HttpClients.getClient();
+
+        while (sentCount < urls.length) {
+            Request request = new Request.Builder().url(urls[sentCount]).build();
+            Response response = client.newCall(request).execute();
+
+            try {
+                if (!response.isSuccessful()) {
+                    throw new IOException("Unexpected code " + response);
+                }
+            } finally {
+                response.body().close();
+            }
+
+            sentCount++;
+        }
+
+        LOG.debug("Sent " + urls.length + " points to OpenGTS");
+        EventBus.getDefault().post(new UploadEvents.OpenGTS().succeeded());
+    }
+
+    @Override
+    protected void onCancel() {
+    }
+
+    @Override
+    protected boolean shouldReRunOnThrowable(Throwable throwable) {
+        LOG.error("Could not send to OpenGTS, " + sentCount + " of " + urls.length + " points sent", throwable);
+        EventBus.getDefault().post(new UploadEvents.OpenGTS().failed("Could not send to OpenGTS", throwable));
+        return true;
+    }
+
+    @Override
+    protected int getRetryLimit() {
+        return 2;
+    }
+}
@@ -24,21 +24,35 @@ import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.events.UploadEvents;
 import com.mendhak.gpslogger.common.slf4j.Logs;
 import com.mendhak.gpslogger.senders.opengts.OpenGTSManager;
+import com.mendhak.gpslogger.senders.UploadConcurrency;
 import com.path.android.jobqueue.Job;
 import com.path.android.jobqueue.Params;
 import de.greenrobot.event.EventBus;
 import org.slf4j.Logger;
 
-import java.net.*;
+import java.io.IOException;
 
+/**
+ * Sends points to OpenGTS over UDP, one to a datagram, through the {@link OpenGtsUdpTransport}
+ * shared by every job sending to the same server and port
+ */
 public class OpenGtsUdpJob extends Job {
     private OpenGtsUdpJobData openGtsUdpJobData;
 
     private static final Logger LOG = Logs.of(OpenGtsUdpJob.class);
 
+    private static volatile long pacingMillis;
+
     public OpenGtsUdpJob(String server, int port, String accountName, String path, String deviceId, String communication, SerializableLocation[] locations){
-        super(new Params(1).requireNetwork().persist());
-        this.openGtsUdpJobData.setGpsUdpJobData(server, port, accountName, path, deviceId, communication, locations);
+        super(new Params(1).requireNetwork().persist().groupBy(UploadConcurrency.groupFor(UploadConcurrency.OPENGTS)));
+        this.openGtsUdpJobData = new OpenGtsUdpJobData(server, port, accountName, path, deviceId, communication, locations);
+    }
+
+    /**
+     * How long to wait between datagrams, for servers or links that drop bursts, 0 for no wait
+     */
+    public static void setPacingMillis(long millis) {
+        pacingMillis = Math.max(0, millis);
     }
 
     @Override
@@ -64,17 +78,30 @@ public class OpenGtsUdpJob extends Job {
     }
 
     public void sendRAW(String id, String accountName, SerializableLocation[] locations) throws Exception {
-        for (SerializableLocation loc : locations) {
-            if(Strings.isNullOrEmpty(accountName)){
-                accountName = id;
+        if(Strings.isNullOrEmpty(accountName)){
+            accountName = id;
+        }
+
+        String server = openGtsUdpJobData.getServer();
+        int port = openGtsUdpJobData.getPort();
+        OpenGtsUdpTransport transport = OpenGtsUdpTransport.forServer(server, port);
+        int datagrams;
+
+        synchronized (transport) {
+            transport.setPacingMillis(pacingMillis);
+            int sentBefore = transport.getDatagramsSent();
+            try {
+                for (SerializableLocation loc : locations) {
+                    transport.send(accountName + "/" + id + "/" + OpenGTSManager.gprmcEncode(loc));
+                }
+                transport.flush();
+            } catch (IOException e) {
+                OpenGtsUdpTransport.discard(server, port);
+                throw e;
             }
-            String message = accountName + "/" + id + "/" + OpenGTSManager.gprmcEncode(loc);
-            DatagramSocket socket = new DatagramSocket();
-            byte[] buffer = message.getBytes();
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, InetAddress.getByName(this.openGtsUdpJobData.getServer()), this.openGtsUdpJobData.getPort());
-            LOG.debug("Sending UDP " + message);
-            socket.send(packet);
-            socket.close();
+            datagrams = transport.getDatagramsSent() - sentBefore;
         }
+
+        LOG.debug("Sent " + locations.length + " points to OpenGTS in " + datagrams + " UDP datagrams");
     }
 }
@@ -2,7 +2,10 @@ package com.mendhak.gpslogger.loggers.opengts;
 
 import com.mendhak.gpslogger.common.SerializableLocation;
 
-public class OpenGtsUdpJobData {
+import java.io.Serializable;
+
+//Held by a persisted job, so it is written out along with it
+public class OpenGtsUdpJobData implements Serializable {
     private String server;
     private int port ;
     private String accountName ;
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.loggers.opengts;
+
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sends OpenGTS records to a server over UDP.
+ * The server is looked up once and all records go out through one channel, rather than a socket and a DNS lookup
+ * per point. Jobs share one transport per server and port through {@link #forServer(String, int)}, so the lookup
+ * and channel also outlive a single job.
+ *
+ * Each record is normally a datagram of its own, which is what an OpenGTS UDP device server expects.
+ * A transport can instead pack several records to a datagram, one per line, but that isn't used until it has been
+ * checked against a real server, as a stock server may read only the first record of each datagram.
+ */
+class OpenGtsUdpTransport implements Closeable {
+
+    private static final Logger LOG = Logs.of(OpenGtsUdpTransport.class);
+
+    /**
+     * The largest datagram that fits a 1500 byte Ethernet frame without fragmenting, after IPv4 and UDP headers
+     */
+    static final int DEFAULT_MAX_DATAGRAM_SIZE = 1500 - 20 - 8;
+
+    private static final byte SEPARATOR = '\n';
+
+    private static final Map<String, OpenGtsUdpTransport> TRANSPORTS = new HashMap<>();
+
+    private final InetSocketAddress address;
+    private final DatagramChannel channel;
+    private final ByteBuffer datagram;
+    private final boolean packed;
+    private volatile long pacingMillis;
+    private int recordsInDatagram;
+    private int datagramsSent;
+
+    /**
+     * @param maxDatagramSize the most bytes put in one datagram, a record longer than this is sent on its own
+     * @param packed whether to put several records in a datagram, rather than one each
+     * @param pacingMillis how long to wait between datagrams, for servers or links that drop bursts, 0 for no wait
+     */
+    OpenGtsUdpTransport(String server, int port, int maxDatagramSize, boolean packed, long pacingMillis) throws IOException {
+        this.address = new InetSocketAddress(InetAddress.getByName(server), port);
+        this.packed = packed;
+        this.pacingMillis = pacingMillis;
+        this.datagram = ByteBuffer.allocateDirect(Math.max(1, maxDatagramSize));
+        //Not connected, so ICMP errors from a server that isn't listening don't fail later sends
+        this.channel = DatagramChannel.open();
+    }
+
+    /**
+     * The transport shared by every job sending to this server and port, opened the first time it's needed
+     */
+    static synchronized OpenGtsUdpTransport forServer(String server, int port) throws IOException {
+        String key = server + ":" + port;
+        OpenGtsUdpTransport transport = TRANSPORTS.get(key);
+        if (transport == null) {
+            transport = new OpenGtsUdpTransport(server, port, DEFAULT_MAX_DATAGRAM_SIZE, false, 0);
+            TRANSPORTS.put(key, transport);
+        }
+        return transport;
+    }
+
+    /**
+     * Closes and forgets the shared transport for this server and port, so the next job looks the server up again
+     * and opens a new channel. Used after a send fails, when the address or the network may have changed.
+     */
+    static synchronized void discard(String server, int port) {
+        OpenGtsUdpTransport transport = TRANSPORTS.remove(server + ":" + port);
+        if (transport == null) {
+            return;
+        }
+
+        try {
+            transport.close();
+        } catch (IOException e) {
+            LOG.debug("Could not close OpenGTS UDP channel", e);
+        }
+    }
+
+    /**
+     * How long to wait between datagrams, 0 for no wait
+     */
+    void setPacingMillis(long pacingMillis) {
+        this.pacingMillis = pacingMillis;
+    }
+
+    /**
+     * Queues a record, sending the datagram so far first if the record doesn't fit in it or records aren't packed
+     */
+    void send(String record) throws IOException {
+        byte[] bytes = toBytes(record);
+        int needed = bytes.length + (recordsInDatagram > 0 ? 1 : 0);
+
+        if (recordsInDatagram > 0 && (!packed || needed > datagram.remaining())) {
+            flush();
+            needed = bytes.length;
+        }
+
+        if (needed > datagram.remaining()) {
+            LOG.warn("OpenGTS record of " + bytes.length + " bytes is larger than a datagram, sending it alone");
+            sendDatagram(ByteBuffer.wrap(bytes));
+            return;
+        }
+
+        if (recordsInDatagram > 0) {
+            datagram.put(SEPARATOR);
+        }
+        datagram.put(bytes);
+        recordsInDatagram++;
+    }
+
+    /**
+     * Sends the records queued so far
+     */
+    void flush() throws IOException {
+        if (recordsInDatagram == 0) {
+            return;
+        }
+
+        datagram.flip();
+        try {
+            sendDatagram(datagram);
+        } finally {
+            datagram.clear();
+            recordsInDatagram = 0;
+        }
+    }
+
+    /**
+     * How many datagrams have gone out so far, over the life of the transport
+     */
+    int getDatagramsSent() {
+        return datagramsSent;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void sendDatagram(ByteBuffer buffer) throws IOException {
+        if (datagramsSent > 0 && pacingMillis > 0) {
+            try {
+                Thread.sleep(pacingMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while pacing OpenGTS datagrams");
+            }
+        }
+
+        channel.send(buffer, address);
+        datagramsSent++;
+    }
+
+    private static byte[] toBytes(String record) {
+        try {
+            return record.getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
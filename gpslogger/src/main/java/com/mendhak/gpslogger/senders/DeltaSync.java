@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.senders;
+
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Remembers how much of a local file has been uploaded to each remote file, so that the periodic auto-send
+ * only sends what changed since the last upload instead of the whole file.
+ *
+ * For every remote file the ledger holds the uploaded length and an MD5 of each 64KB block of what was uploaded.
+ * When planning the next upload, the local file is compared block by block and sending resumes from the
+ * first block that changed. A file which only had points appended resumes at the old length; a GPX or KML file whose
+ * closing tags were overwritten resumes at the start of the last block; a file rewritten near the start, for example
+ * by an annotation, is sent in full.
+ *
+ * The entries are kept in the {@link UploadLedger}, alongside the record of which files each destination has.
+ */
+public class DeltaSync {
+
+    private static final Logger LOG = Logs.of(DeltaSync.class);
+
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final String KEY_PREFIX = "delta|";
+
+    private static DeltaSync instance;
+
+    private final UploadLedger ledger;
+
+    DeltaSync(UploadLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    public static synchronized DeltaSync getInstance() {
+        if (instance == null) {
+            instance = new DeltaSync(UploadLedger.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Works out which part of the local file needs to be sent to bring the remote file up to date.
+     *
+     * The file is read and hashed without holding the ledger, so uploads to other destinations can plan at the same time.
+     *
+     * @param remoteKey identifies the remote file, including the server and account it is on
+     */
+    public Delta plan(String remoteKey, File localFile) throws IOException {
+        long length = localFile.length();
+        String entry = ledger.getEntry(KEY_PREFIX + remoteKey);
+
+        long remoteLength = -1;
+        String[] remoteHashes = new String[0];
+        if (entry != null) {
+            String[] parts = entry.split(":", 2);
+            try {
+                remoteLength = Long.parseLong(parts[0]);
+                if (!parts[1].isEmpty()) {
+                    remoteHashes = parts[1].split(",");
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Ignoring unreadable upload ledger entry for " + remoteKey);
+                remoteLength = -1;
+            }
+        }
+
+        //A file that shrank can't be patched by writing past a point, it has to be replaced
+        boolean matching = remoteLength >= 0 && remoteLength <= length
+                && remoteHashes.length == (remoteLength + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long offset = 0;
+
+        int blockCount = (int) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        StringBuilder hashes = new StringBuilder(blockCount * 33);
+        MessageDigest digest = md5();
+        byte[] buffer = new byte[BLOCK_SIZE];
+
+        InputStream inputStream = new FileInputStream(localFile);
+        try {
+            for (int block = 0; block < blockCount; block++) {
+                long blockStart = (long) block * BLOCK_SIZE;
+                int blockLength = (int) Math.min(BLOCK_SIZE, length - blockStart);
+                readFully(inputStream, buffer, blockLength);
+
+                digest.update(buffer, 0, blockLength);
+                String hash = toHex(digest.digest());
+                if (block > 0) {
+                    hashes.append(',');
+                }
+                hashes.append(hash);
+
+                if (matching && block < remoteHashes.length) {
+                    //The last block uploaded may have been partial, compare against that much of this block
+                    int remoteBlockLength = (int) Math.min(BLOCK_SIZE, remoteLength - blockStart);
+                    String compareTo = hash;
+                    if (remoteBlockLength != blockLength) {
+                        digest.update(buffer, 0, remoteBlockLength);
+                        compareTo = toHex(digest.digest());
+                    }
+
+                    if (compareTo.equals(remoteHashes[block])) {
+                        offset = blockStart + remoteBlockLength;
+                    } else {
+                        matching = false;
+                    }
+                }
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        return new Delta(remoteKey, localFile, length, remoteLength, offset, length + ":" + hashes);
+    }
+
+    /**
+     * Records that the remote file now holds the local file as it was when the delta was planned
+     */
+    public void commit(Delta delta) {
+        ledger.putEntry(KEY_PREFIX + delta.remoteKey, delta.file, delta.entry);
+    }
+
+    /**
+     * Removes what's known about a remote file so that the next upload is a full one
+     */
+    public void forget(String remoteKey) {
+        ledger.removeEntry(KEY_PREFIX + remoteKey);
+    }
+
+    private static void readFully(InputStream inputStream, byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count = inputStream.read(buffer, read, length - read);
+            if (count < 0) {
+                throw new EOFException("File shrank while it was being read");
+            }
+            read += count;
+        }
+    }
+
+    static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * The part of a local file that needs sending to a remote file
+     */
+    public static class Delta {
+        private final String remoteKey;
+        private final File file;
+        private final long length;
+        private final long remoteLength;
+        private final long offset;
+        private final String entry;
+
+        private Delta(String remoteKey, File file, long length, long remoteLength, long offset, String entry) {
+            this.remoteKey = remoteKey;
+            this.file = file;
+            this.length = length;
+            this.remoteLength = remoteLength;
+            this.offset = offset;
+            this.entry = entry;
+        }
+
+        /**
+         * Where in the file to start sending from
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * The length of the local file when planned. Only this much is sent, even if the file has since grown.
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * The length the remote file had after the last upload, or -1 if it was never uploaded
+         */
+        public long getRemoteLength() {
+            return remoteLength;
+        }
+
+        public boolean isFullUpload() {
+            return offset == 0;
+        }
+
+        /**
+         * Whether the new content simply follows on from what's already on the server
+         */
+        public boolean isAppend() {
+            return offset > 0 && offset == remoteLength;
+        }
+
+        /**
+         * Whether the remote file already holds exactly this content
+         */
+        public boolean isUpToDate() {
+            return remoteLength == length && offset == length;
+        }
+
+        /**
+         * Whether the remote file is the length the ledger expects. If it isn't, it was changed or removed
+         * by something else and only a full upload can be trusted.
+         */
+        public boolean remoteMatches(long actualRemoteLength) {
+            return remoteLength >= 0 && actualRemoteLength == remoteLength;
+        }
+
+        /**
+         * The same delta, but sending the whole file
+         */
+        public Delta fullUpload() {
+            return new Delta(remoteKey, file, length, -1, 0, entry);
+        }
+
+        /**
+         * Opens the file positioned at the offset, ending at the planned length
+         */
+        public InputStream openStream() throws IOException {
+            FileInputStream inputStream = new FileInputStream(file);
+            inputStream.getChannel().position(offset);
+            return new RangeInputStream(inputStream, length - offset);
+        }
+    }
+
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = in.read(b, off, (int) Math.min(len, remaining));
+            if (count > 0) {
+                remaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -22,6 +22,7 @@ package com.mendhak.gpslogger.senders;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.List;
+import java.util.zip.Deflater;
 
 public abstract class FileSender implements FilenameFilter {
     /**
@@ -47,6 +48,27 @@ public abstract class FileSender implements FilenameFilter {
         return hasUserAllowedAutoSending() && isAvailable();
     }
 
+    /**
+     * Names this sender's destination in the {@link UploadLedger}, so auto-send can skip files it already has.
+     * It should include whatever the user can change to send somewhere else, such as the server, account, folder
+     * or recipients, and the sender's jobs record uploads under the same name. Null sends every file every time.
+     */
+    public String getDestination() {
+        return null;
+    }
+
+    /**
+     * The deflate level of zip files made for this sender, see {@link Deflater}
+     */
+    public int getZipCompressionLevel() {
+        return Deflater.DEFAULT_COMPRESSION;
+    }
 
+    /**
+     * How much of each file is read and compressed at a time when zipping for this sender
+     */
+    public int getZipBufferSize() {
+        return ZipHelper.DEFAULT_BUFFER_SIZE;
+    }
 
 }
@@ -19,7 +19,9 @@
 
 package com.mendhak.gpslogger.senders;
 
+import com.mendhak.gpslogger.common.AppSettings;
 import com.mendhak.gpslogger.common.PreferenceHelper;
+import com.mendhak.gpslogger.common.network.BandwidthLimiter;
 import com.mendhak.gpslogger.common.slf4j.Logs;
 import com.mendhak.gpslogger.loggers.Files;
 import com.mendhak.gpslogger.senders.dropbox.DropBoxManager;
@@ -36,7 +38,10 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
 
 public class FileSenderFactory {
 
@@ -49,6 +54,8 @@ public class FileSenderFactory {
         PreferenceHelper preferenceHelper = PreferenceHelper.getInstance();
         LOG.info("Auto-sending file " + fileToSend);
 
+        BandwidthLimiter.getInstance().setKilobytesPerSecond(preferenceHelper.getAutoSendBandwidthLimit());
+
         File gpxFolder = new File(preferenceHelper.getGpsLoggerFolder());
 
         if (Files.fromFolder(gpxFolder).length < 1) {
@@ -63,49 +70,84 @@ public class FileSenderFactory {
             }
         })));
 
-        List<File> zipFiles = new ArrayList<>();
-
         if (files.size() == 0) {
             LOG.warn("No files found to send after filtering.");
             return;
         }
 
         List<FileSender> senders = getFileAutosenders();
-
-        if (!senders.isEmpty() && preferenceHelper.shouldSendZipFile()) {
-            File zipFile = new File(gpxFolder.getPath(), fileToSend + ".zip");
-            ArrayList<String> filePaths = new ArrayList<>();
-
-            for (File f : files) {
-                filePaths.add(f.getAbsolutePath());
-            }
-
-            LOG.info("Zipping file");
-            ZipHelper zh = new ZipHelper(filePaths.toArray(new String[filePaths.size()]), zipFile.getAbsolutePath());
-            zh.zipFiles();
-
-            zipFiles.clear();
-            zipFiles.add(zipFile);
-        }
-
+        Map<Integer, List<File>> zipsByLevel = new HashMap<>();
 
         for (FileSender sender : senders) {
             LOG.debug("Sender: " + sender.getClass().getName());
             //Special case for OSM Uploader
             if(!sender.accept(null, ".zip")){
-                sender.uploadFile(files);
+                uploadChangedFiles(sender, files);
                 continue;
             }
 
             if(preferenceHelper.shouldSendZipFile()){
-                sender.uploadFile(zipFiles);
+                //Senders wanting the same compression share a zip, which is only made once per auto-send
+                List<File> zipFiles = zipsByLevel.get(sender.getZipCompressionLevel());
+                if (zipFiles == null) {
+                    zipFiles = new ArrayList<>();
+                    zipFiles.add(zipFiles(files, fileToSend, gpxFolder, sender));
+                    zipsByLevel.put(sender.getZipCompressionLevel(), zipFiles);
+                }
+                uploadChangedFiles(sender, zipFiles);
             } else {
-                sender.uploadFile(files);
+                uploadChangedFiles(sender, files);
             }
 
         }
     }
 
+    /**
+     * Sends the sender only the files that changed since they were last delivered to it
+     */
+    private static void uploadChangedFiles(FileSender sender, List<File> files) {
+        if (sender.getDestination() != null) {
+            files = UploadLedger.getInstance().getNotUploaded(sender.getDestination(), files);
+        }
+
+        if (files.isEmpty()) {
+            LOG.info("Nothing has changed since the last upload to " + sender.getDestination());
+            return;
+        }
+
+        sender.uploadFile(files);
+    }
+
+    private static File zipFiles(List<File> files, String fileToSend, File gpxFolder, FileSender sender) {
+        int level = sender.getZipCompressionLevel();
+        File zipFile;
+
+        if (level == Deflater.DEFAULT_COMPRESSION) {
+            zipFile = new File(gpxFolder.getPath(), fileToSend + ".zip");
+        } else {
+            //Keep other levels out of the GPSLogger folder, where they'd show up as files to upload
+            File zipFolder = new File(AppSettings.getInstance().getCacheDir(), "zips/level" + level);
+            if (!zipFolder.exists() && !zipFolder.mkdirs()) {
+                LOG.warn("Could not create " + zipFolder.getPath());
+            }
+            zipFile = new File(zipFolder, fileToSend + ".zip");
+        }
+
+        ArrayList<String> filePaths = new ArrayList<>();
+
+        for (File f : files) {
+            filePaths.add(f.getAbsolutePath());
+        }
+
+        LOG.info("Zipping file");
+        ZipHelper zh = new ZipHelper(filePaths.toArray(new String[filePaths.size()]), zipFile.getAbsolutePath(),
+                level, sender.getZipBufferSize());
+        zh.zipFiles();
+        LOG.info(zh.getStatistics().toString());
+
+        return zipFile;
+    }
+
     private static List<FileSender> getFileAutosenders() {
 
         List<FileSender> senders = new ArrayList<>();
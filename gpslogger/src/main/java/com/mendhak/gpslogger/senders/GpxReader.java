@@ -19,17 +19,10 @@
 
 package com.mendhak.gpslogger.senders;
 
-import android.location.Location;
-
-import com.mendhak.gpslogger.common.BundleConstants;
 import com.mendhak.gpslogger.common.SerializableLocation;
 import com.mendhak.gpslogger.common.Strings;
-import org.w3c.dom.*;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
-import java.io.FileInputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -46,65 +39,19 @@ public class GpxReader {
 
     private static final SimpleDateFormat gpxDate = new SimpleDateFormat(Strings.getIsoDateTimeFormat());
 
+    /**
+     * Reads every track point of the file into a list. For long tracks prefer {@link GpxTrackPointReader},
+     * which holds one point (or one batch) at a time.
+     */
     public static List<SerializableLocation> getPoints(File gpxFile) throws Exception {
-        List<SerializableLocation> points;
-
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-
-        FileInputStream fis = new FileInputStream(gpxFile);
-        Document dom = builder.parse(fis);
-        Element root = dom.getDocumentElement();
-        NodeList items = root.getElementsByTagName("trkpt");
-
-        points = new ArrayList<>();
-
-        for (int j = 0; j < items.getLength(); j++) {
-            Node item = items.item(j);
-            NamedNodeMap attrs = item.getAttributes();
-            NodeList props = item.getChildNodes();
-
-            Location pt = new Location("test");
-
-            pt.setLatitude(Double.parseDouble(attrs.getNamedItem("lat").getNodeValue()));
-            pt.setLongitude(Double.parseDouble(attrs.getNamedItem("lon").getNodeValue()));
+        final List<SerializableLocation> points = new ArrayList<>();
 
-            for (int k = 0; k < props.getLength(); k++) {
-                Node item2 = props.item(k);
-                String name = item2.getNodeName();
-
-                if (name.equalsIgnoreCase("ele")) {
-                    pt.setAltitude(Double.parseDouble(item2.getFirstChild().getNodeValue()));
-                }
-                if (name.equalsIgnoreCase("course")) {
-                    pt.setBearing(Float.parseFloat(item2.getFirstChild().getNodeValue()));
-                }
-                if (name.equalsIgnoreCase("speed")) {
-                    pt.setSpeed(Float.parseFloat(item2.getFirstChild().getNodeValue()));
-                }
-                if (name.equalsIgnoreCase(BundleConstants.HDOP)) {
-                    pt.setAccuracy(Float.parseFloat(item2.getFirstChild().getNodeValue()) * 5);
-                }
-                if (name.equalsIgnoreCase("time")) {
-                    pt.setTime((getDateFormatter().parse(item2.getFirstChild().getNodeValue())).getTime());
-                }
-
-            }
-
-            for (int y = 0; y < props.getLength(); y++) {
-                Node item3 = props.item(y);
-                String name = item3.getNodeName();
-                if (!name.equalsIgnoreCase("ele")) {
-                    continue;
-                }
-                pt.setAltitude(Double.parseDouble(item3.getFirstChild().getNodeValue()));
+        GpxTrackPointReader.forEach(gpxFile, new GpxTrackPointReader.TrackPointCallback() {
+            @Override
+            public void onTrackPoint(SerializableLocation point) {
+                points.add(point);
             }
-
-            points.add(new SerializableLocation(pt));
-
-        }
-
-        fis.close();
+        });
 
         return points;
     }
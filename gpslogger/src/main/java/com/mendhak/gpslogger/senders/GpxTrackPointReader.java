@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.senders;
+
+import com.mendhak.gpslogger.common.BundleConstants;
+import com.mendhak.gpslogger.common.SerializableLocation;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the track points of a GPX file one at a time with a pull parser, so that only the current point is held
+ * in memory no matter how long the track is. Points can be pulled with {@link #next()}, in bounded batches with
+ * {@link #nextBatch(int)}, or pushed to a {@link TrackPointCallback} with {@link #forEach(File, TrackPointCallback)}.
+ */
+public class GpxTrackPointReader implements Closeable {
+
+    public interface TrackPointCallback {
+        void onTrackPoint(SerializableLocation point) throws Exception;
+    }
+
+    private final InputStream inputStream;
+    private final XmlPullParser parser;
+    private final SimpleDateFormat dateFormatter = GpxReader.getDateFormatter();
+
+    public GpxTrackPointReader(File gpxFile) throws Exception {
+        inputStream = new BufferedInputStream(new FileInputStream(gpxFile));
+
+        try {
+            parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setInput(inputStream, null);
+        } catch (Exception e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads every track point in the file, handing each to the callback as it is parsed
+     * @return The number of points read
+     */
+    public static int forEach(File gpxFile, TrackPointCallback callback) throws Exception {
+        int count = 0;
+
+        GpxTrackPointReader reader = new GpxTrackPointReader(gpxFile);
+
+        try {
+            SerializableLocation point;
+            while ((point = reader.next()) != null) {
+                callback.onTrackPoint(point);
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+
+        return count;
+    }
+
+    /**
+     * The next track point in the file, or null once there are no more
+     */
+    public SerializableLocation next() throws Exception {
+        int eventType = parser.getEventType();
+
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG && "trkpt".equals(parser.getName())) {
+                return readTrackPoint();
+            }
+            eventType = parser.next();
+        }
+
+        return null;
+    }
+
+    /**
+     * Up to maxPoints of the next track points, an empty list once there are no more
+     */
+    public List<SerializableLocation> nextBatch(int maxPoints) throws Exception {
+        List<SerializableLocation> batch = new ArrayList<>(Math.min(maxPoints, 1024));
+
+        SerializableLocation point;
+        while (batch.size() < maxPoints && (point = next()) != null) {
+            batch.add(point);
+        }
+
+        return batch;
+    }
+
+    private SerializableLocation readTrackPoint() throws Exception {
+        SerializableLocation pt = new SerializableLocation("test");
+
+        pt.setLatitude(Double.parseDouble(parser.getAttributeValue(null, "lat")));
+        pt.setLongitude(Double.parseDouble(parser.getAttributeValue(null, "lon")));
+
+        int childDepth = parser.getDepth() + 1;
+        int eventType = parser.next();
+
+        while (eventType != XmlPullParser.END_DOCUMENT
+                && !(eventType == XmlPullParser.END_TAG && parser.getDepth() < childDepth)) {
+
+            if (eventType == XmlPullParser.START_TAG && parser.getDepth() == childDepth) {
+                String name = parser.getName();
+
+                if (name.equalsIgnoreCase("ele")) {
+                    pt.setAltitude(Double.parseDouble(parser.nextText()));
+                } else if (name.equalsIgnoreCase("course")) {
+                    pt.setBearing(Float.parseFloat(parser.nextText()));
+                } else if (name.equalsIgnoreCase("speed")) {
+                    pt.setSpeed(Float.parseFloat(parser.nextText()));
+                } else if (name.equalsIgnoreCase(BundleConstants.HDOP)) {
+                    pt.setAccuracy(Float.parseFloat(parser.nextText()) * 5);
+                } else if (name.equalsIgnoreCase("time")) {
+                    pt.setTime(dateFormatter.parse(parser.nextText()).getTime());
+                }
+            }
+
+            eventType = parser.next();
+        }
+
+        //Step past </trkpt> so the next call carries on from the following element
+        if (eventType != XmlPullParser.END_DOCUMENT) {
+            parser.next();
+        }
+
+        return pt;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.senders;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides which network jobs may run at the same time.
+ * The job queue runs jobs of different groups in parallel but jobs within a group one at a time, so each destination
+ * gets as many groups as the uploads it can take at once. A slow destination then only holds up its own uploads.
+ */
+public class UploadConcurrency {
+
+    /**
+     * The most network jobs running at once, across all destinations
+     */
+    public static final int MAX_PARALLEL_JOBS = 4;
+
+    public static final String GOOGLE_DRIVE = "GOOGLEDRIVE";
+    public static final String DROPBOX = "DROPBOX";
+    public static final String EMAIL = "EMAIL";
+    public static final String FTP = "FTP";
+    public static final String SFTP = "SFTP";
+    public static final String OWNCLOUD = "OWNCLOUD";
+    public static final String OSM = "OSM";
+    public static final String OPENGTS = "OPENGTS";
+    public static final String CUSTOM_URL = "CUSTOMURL";
+
+    private static final Map<String, Integer> limits = new HashMap<>();
+    private static final Map<String, Integer> nextSlot = new HashMap<>();
+
+    static {
+        //FTP uploads are serialised on one pooled connection, Drive looks up and creates folders by name, and
+        //points sent to OpenGTS or a custom URL should arrive in order, so those go one at a time
+        limits.put(GOOGLE_DRIVE, 1);
+        limits.put(DROPBOX, 2);
+        limits.put(EMAIL, 1);
+        limits.put(FTP, 1);
+        limits.put(SFTP, 2);
+        limits.put(OWNCLOUD, 2);
+        limits.put(OSM, 1);
+        limits.put(OPENGTS, 1);
+        limits.put(CUSTOM_URL, 1);
+    }
+
+    /**
+     * How many jobs for this destination may run at once
+     */
+    public static synchronized int getLimit(String destination) {
+        Integer limit = limits.get(destination);
+        return limit == null ? 1 : limit;
+    }
+
+    public static synchronized void setLimit(String destination, int limit) {
+        limits.put(destination, Math.max(1, limit));
+    }
+
+    /**
+     * The job group for the next job to this destination. Jobs are spread over the destination's groups in turn.
+     */
+    public static synchronized String groupFor(String destination) {
+        int limit = getLimit(destination);
+        Integer slot = nextSlot.get(destination);
+        slot = slot == null ? 0 : slot % limit;
+        nextSlot.put(destination, slot + 1);
+        return destination + "-" + slot;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.senders;
+
+import com.mendhak.gpslogger.common.AppSettings;
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Remembers which files have been delivered to which destination, so that auto-send can skip files
+ * that haven't changed since they were last sent.
+ *
+ * Each entry is the size, modification time and MD5 of a file as it was when an upload of it began. A file
+ * with a different size has changed and one with the same size and time hasn't; only when the size matches
+ * but the time doesn't, such as after a zip is rebuilt from the same files, is the file read to compare its hash.
+ *
+ * The ledger also holds the block hashes {@link DeltaSync} keeps for each remote file, so there is one store
+ * of what has been uploaded. It is kept in the app's private files, away from the profiles in the storage folder.
+ * Every entry records its local file and when it was written; entries for files that have been deleted, or that
+ * haven't been written in a long time because the destination changed, are dropped when the ledger is loaded.
+ */
+public class UploadLedger {
+
+    private static final Logger LOG = Logs.of(UploadLedger.class);
+
+    static final long STALE_MILLIS = 90L * 24 * 60 * 60 * 1000;
+
+    private static final String SENT_PREFIX = "sent|";
+
+    private static UploadLedger instance;
+
+    private final File ledgerFile;
+    private final Properties ledger = new Properties();
+
+    UploadLedger(File ledgerFile) {
+        this.ledgerFile = ledgerFile;
+
+        if (ledgerFile.exists()) {
+            try {
+                FileInputStream inputStream = new FileInputStream(ledgerFile);
+                try {
+                    ledger.load(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+            } catch (IOException e) {
+                LOG.error("Could not read upload ledger, files will be sent again", e);
+                ledger.clear();
+            }
+        }
+
+        prune(System.currentTimeMillis());
+    }
+
+    public static synchronized UploadLedger getInstance() {
+        if (instance == null) {
+            instance = new UploadLedger(new File(AppSettings.getInstance().getFilesDir(), "uploads.ledger"));
+        }
+        return instance;
+    }
+
+    private void prune(long now) {
+        Iterator<Map.Entry<Object, Object>> iterator = ledger.entrySet().iterator();
+        while (iterator.hasNext()) {
+            //data|time|local path
+            String[] parts = ((String) iterator.next().getValue()).split("\\|", 3);
+            try {
+                if (parts.length != 3 || now - Long.parseLong(parts[1]) > STALE_MILLIS || !new File(parts[2]).exists()) {
+                    iterator.remove();
+                }
+            } catch (NumberFormatException e) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The data stored under the key, or null if there is none
+     */
+    synchronized String getEntry(String key) {
+        String value = ledger.getProperty(key);
+        return value == null ? null : value.substring(0, value.indexOf('|'));
+    }
+
+    /**
+     * Stores data about a local file, which must not contain '|'
+     */
+    synchronized void putEntry(String key, File localFile, String data) {
+        ledger.setProperty(key, data + "|" + System.currentTimeMillis() + "|" + localFile.getAbsolutePath());
+        save();
+    }
+
+    synchronized void removeEntry(String key) {
+        if (ledger.remove(key) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Whether this file, as it is now, has already been delivered to the destination
+     */
+    public synchronized boolean isUploaded(String destination, File file) {
+        String key = getKey(destination, file);
+        String entry = getEntry(key);
+        if (entry == null) {
+            return false;
+        }
+
+        String[] parts = entry.split(":");
+        if (parts.length != 3 || !parts[0].equals(String.valueOf(file.length()))) {
+            return false;
+        }
+
+        if (parts[1].equals(String.valueOf(file.lastModified()))) {
+            return true;
+        }
+
+        try {
+            Snapshot snapshot = snapshot(file);
+            if (!snapshot.hash.equals(parts[2])) {
+                return false;
+            }
+            //Same contents, remember the new time so the file needn't be read next time
+            putEntry(key, file, snapshot.toString());
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not read " + file.getName() + " to compare with what was uploaded", e);
+            return false;
+        }
+    }
+
+    /**
+     * The files in the list that this destination doesn't have yet
+     */
+    public List<File> getNotUploaded(String destination, List<File> files) {
+        List<File> notUploaded = new ArrayList<>();
+        for (File file : files) {
+            if (isUploaded(destination, file)) {
+                LOG.debug(file.getName() + " is unchanged since it was sent to " + destination);
+            } else {
+                notUploaded.add(file);
+            }
+        }
+        return notUploaded;
+    }
+
+    /**
+     * Describes the file as it is about to be uploaded, to be recorded once the upload succeeds.
+     * Changes made to the file during the upload then still count as not uploaded.
+     */
+    public static Snapshot snapshot(File file) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        MessageDigest digest = DeltaSync.md5();
+        byte[] buffer = new byte[8192];
+
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        return new Snapshot(file, length, lastModified, DeltaSync.toHex(digest.digest()));
+    }
+
+    /**
+     * Records that the snapshotted file has been delivered to the destination
+     */
+    public synchronized void recordUploaded(String destination, Snapshot snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        putEntry(getKey(destination, snapshot.file), snapshot.file, snapshot.toString());
+    }
+
+    /**
+     * Snapshots and records a file in one go, for uploads that can't fail afterwards
+     */
+    public void recordUploaded(String destination, File file) {
+        try {
+            recordUploaded(destination, snapshot(file));
+        } catch (IOException e) {
+            LOG.warn("Could not record upload of " + file.getName(), e);
+        }
+    }
+
+    /**
+     * A short stand-in for an access token, so that a destination can name an account without the token being stored
+     */
+    public static String fingerprint(String secret) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return DeltaSync.toHex(digest.digest(String.valueOf(secret).getBytes("UTF-8"))).substring(0, 16);
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getKey(String destination, File file) {
+        return SENT_PREFIX + destination + "|" + file.getAbsolutePath();
+    }
+
+    private void save() {
+        try {
+            File temp = new File(ledgerFile.getPath() + ".tmp");
+            FileOutputStream outputStream = new FileOutputStream(temp);
+            try {
+                ledger.store(outputStream, null);
+                outputStream.getFD().sync();
+            } finally {
+                outputStream.close();
+            }
+
+            if (!temp.renameTo(ledgerFile)) {
+                throw new IOException("Could not replace " + ledgerFile.getName());
+            }
+        } catch (IOException e) {
+            LOG.error("Could not save upload ledger", e);
+        }
+    }
+
+    /**
+     * A file's size, time and hash at one moment
+     */
+    public static class Snapshot {
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private final String hash;
+
+        private Snapshot(File file, long length, long lastModified, String hash) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        @Override
+        public String toString() {
+            return length + ":" + lastModified + ":" + hash;
+        }
+    }
+}
@@ -22,51 +22,479 @@ package com.mendhak.gpslogger.senders;
 import com.mendhak.gpslogger.common.slf4j.Logs;
 import org.slf4j.Logger;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
+/**
+ * Zips log files for sending.
+ * Auto-send zips the same files over and over while only some of them, usually just today's, have changed.
+ * The zip is written by hand rather than with ZipOutputStream so that, when rebuilding over an earlier zip, entries
+ * for files that haven't changed since are copied across still compressed instead of being deflated again.
+ * A file counts as unchanged when its size, modification time and CRC all match. The CRC is needed because
+ * annotations are written over reserved space without changing the file's size, and modification times can be
+ * whole seconds, so an annotation written in the same second as the earlier zip would otherwise be missed.
+ * Working out a CRC still reads the file, but is much cheaper than compressing it again.
+ */
 public class ZipHelper {
-    private static final int BUFFER = 2048;
     private static final Logger LOG = Logs.of(ZipHelper.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int VERSION = 20;
+    //Private extra field holding the source file's exact modification time, zip times are only to 2 seconds
+    private static final int EXTRA_MODIFIED_TIME = 0x4c47;
+
     private final String[] files;
     private final String zipFile;
+    private final int level;
+    private final int bufferSize;
+    private Statistics statistics = new Statistics();
 
     public ZipHelper(String[] files, String zipFile) {
+        this(files, zipFile, Deflater.DEFAULT_COMPRESSION, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param level the deflate level, see {@link Deflater}
+     * @param bufferSize how much of each file is read and compressed at a time
+     */
+    public ZipHelper(String[] files, String zipFile, int level, int bufferSize) {
         this.files = files;
         this.zipFile = zipFile;
+        this.level = level;
+        this.bufferSize = Math.max(512, bufferSize);
     }
 
+    /**
+     * Creates or updates the zip file. Entries in the existing zip are reused where their file hasn't changed.
+     */
     public void zipFiles() {
+        File zip = new File(zipFile);
+        File temp = new File(zipFile + ".tmp");
+        boolean written = false;
+
         try {
-            BufferedInputStream origin;
-            FileOutputStream dest = new FileOutputStream(zipFile);
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                writeTo(out, zip);
+            } finally {
+                out.close();
+            }
+            written = true;
 
-            ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(dest));
+            //Renaming over the old zip leaves it in place if anything goes wrong, only remove it first if that fails
+            if (!temp.renameTo(zip) && !(zip.delete() && temp.renameTo(zip))) {
+                throw new IOException("Could not replace " + zip.getName());
+            }
+        } catch (Exception e) {
+            LOG.error("Could not create zip file", e);
+            //If the old zip is already gone, a finished new one is all that's left of it
+            if (!written || zip.exists()) {
+                temp.delete();
+            }
+        }
+    }
 
-            byte data[] = new byte[BUFFER];
+    /**
+     * Streams the zip to the given output, without writing it to a file first.
+     *
+     * @param previousZip an earlier zip of these files whose unchanged entries can be copied, or null
+     */
+    public void writeTo(OutputStream outputStream, File previousZip) throws IOException {
+        statistics = new Statistics();
+        long start = System.nanoTime();
 
-            for (String f : files) {
-                FileInputStream fi = new FileInputStream(f);
-                origin = new BufferedInputStream(fi, BUFFER);
-                ZipEntry entry = new ZipEntry(f.substring(f.lastIndexOf("/") + 1));
-                out.putNextEntry(entry);
-                int count;
-                while ((count = origin.read(data, 0, BUFFER)) != -1) {
-                    out.write(data, 0, count);
+        Map<String, Entry> previousEntries = readEntries(previousZip);
+        RandomAccessFile previous = previousEntries.isEmpty() ? null : new RandomAccessFile(previousZip, "r");
+
+        CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(outputStream, bufferSize));
+        List<Entry> written = new ArrayList<>();
+        byte[] buffer = new byte[bufferSize];
+
+        try {
+            for (String path : files) {
+                File file = new File(path);
+                Entry entry = new Entry(file.getName(), file.lastModified(), file.length());
+                Entry reusable = previousEntries.get(entry.name);
+
+                entry.offset = out.count;
+                if (reusable != null && reusable.modified == entry.modified && reusable.size == entry.size
+                        && crcOf(file, buffer) == reusable.crc) {
+                    entry.crc = reusable.crc;
+                    entry.compressedSize = reusable.compressedSize;
+                    writeLocalHeader(out, entry);
+                    copyRaw(previous, reusable, out, buffer);
+                    statistics.entriesReused++;
+                } else {
+                    entry.flags = FLAG_DATA_DESCRIPTOR;
+                    writeLocalHeader(out, entry);
+                    long compressStart = System.nanoTime();
+                    compress(file, entry, out, buffer);
+                    statistics.compressNanos += System.nanoTime() - compressStart;
+                    statistics.bytesCompressed += entry.size;
+                    statistics.entriesCompressed++;
+                    writeDataDescriptor(out, entry);
                 }
-                out.closeEntry();
-                origin.close();
+                statistics.bytesIn += entry.size;
+                written.add(entry);
             }
 
-            out.close();
+            writeCentralDirectory(out, written);
+            out.flush();
+        } finally {
+            if (previous != null) {
+                previous.close();
+            }
+        }
+
+        statistics.bytesOut = out.count;
+        statistics.totalNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * How the last zip went, for seeing how much was reused and how fast compression ran
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    private void compress(File file, Entry entry, CountingOutputStream out, byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(level, true);
+        long dataStart = out.count;
+        long size = 0;
+
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            DeflaterOutputStream deflating = new DeflaterOutputStream(new NonClosingOutputStream(out), deflater, bufferSize);
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                deflating.write(buffer, 0, read);
+                size += read;
+            }
+            deflating.finish();
+        } finally {
+            inputStream.close();
+            deflater.end();
+        }
+
+        //Write whatever was actually read, the file may have grown since it was listed
+        entry.size = size;
+        entry.crc = crc.getValue();
+        entry.compressedSize = out.count - dataStart;
+    }
+
+    private static long crcOf(File file, byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return crc.getValue();
+    }
+
+    private static void copyRaw(RandomAccessFile previous, Entry entry, OutputStream out, byte[] buffer) throws IOException {
+        previous.seek(entry.offset + 26);
+        int nameLength = readShort(previous);
+        int extraLength = readShort(previous);
+        previous.seek(entry.offset + 30 + nameLength + extraLength);
+
+        long remaining = entry.compressedSize;
+        while (remaining > 0) {
+            int read = previous.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new EOFException("Previous zip is shorter than its directory says");
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static void writeLocalHeader(OutputStream out, Entry entry) throws IOException {
+        byte[] name = entry.name.getBytes("UTF-8");
+        boolean sizesFollow = (entry.flags & FLAG_DATA_DESCRIPTOR) != 0;
+
+        ByteBuffer header = littleEndian(30 + name.length);
+        header.putInt(LOCAL_HEADER);
+        header.putShort((short) VERSION);
+        header.putShort((short) (entry.flags | FLAG_UTF8));
+        header.putShort((short) METHOD_DEFLATED);
+        header.putInt(toDosTime(entry.modified));
+        header.putInt(sizesFollow ? 0 : (int) entry.crc);
+        header.putInt(sizesFollow ? 0 : (int) entry.compressedSize);
+        header.putInt(sizesFollow ? 0 : (int) entry.size);
+        header.putShort((short) name.length);
+        header.putShort((short) 0);
+        header.put(name);
+        out.write(header.array());
+    }
+
+    private static void writeDataDescriptor(OutputStream out, Entry entry) throws IOException {
+        ByteBuffer descriptor = littleEndian(16);
+        descriptor.putInt(DATA_DESCRIPTOR);
+        descriptor.putInt((int) entry.crc);
+        descriptor.putInt((int) entry.compressedSize);
+        descriptor.putInt((int) entry.size);
+        out.write(descriptor.array());
+    }
+
+    private static void writeCentralDirectory(CountingOutputStream out, List<Entry> entries) throws IOException {
+        long start = out.count;
+
+        for (Entry entry : entries) {
+            byte[] name = entry.name.getBytes("UTF-8");
+            ByteBuffer header = littleEndian(46 + name.length + 12);
+            header.putInt(CENTRAL_HEADER);
+            header.putShort((short) VERSION);
+            header.putShort((short) VERSION);
+            //Same flags as the local header, which zip readers check against each other
+            header.putShort((short) (entry.flags | FLAG_UTF8));
+            header.putShort((short) METHOD_DEFLATED);
+            header.putInt(toDosTime(entry.modified));
+            header.putInt((int) entry.crc);
+            header.putInt((int) entry.compressedSize);
+            header.putInt((int) entry.size);
+            header.putShort((short) name.length);
+            header.putShort((short) 12);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt(0);
+            header.putInt((int) entry.offset);
+            header.put(name);
+            header.putShort((short) EXTRA_MODIFIED_TIME);
+            header.putShort((short) 8);
+            header.putLong(entry.modified);
+            out.write(header.array());
+        }
+
+        ByteBuffer end = littleEndian(22);
+        end.putInt(END_OF_CENTRAL_DIRECTORY);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) entries.size());
+        end.putShort((short) entries.size());
+        end.putInt((int) (out.count - start));
+        end.putInt((int) start);
+        end.putShort((short) 0);
+        out.write(end.array());
+    }
+
+    /**
+     * Reads the central directory of a zip written by this class. Anything else gives no entries to reuse.
+     */
+    private static Map<String, Entry> readEntries(File zip) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (zip == null || !zip.exists() || zip.length() < 22) {
+            return entries;
+        }
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(zip, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer end = littleEndian(22);
+                channel.read(end, zip.length() - 22);
+                end.flip();
+                if (end.getInt(0) != END_OF_CENTRAL_DIRECTORY) {
+                    return entries;
+                }
+
+                int directorySize = end.getInt(12);
+                long directoryStart = end.getInt(16) & 0xFFFFFFFFL;
+                ByteBuffer directory = littleEndian(directorySize);
+                while (directory.hasRemaining() && channel.read(directory, directoryStart + directory.position()) > 0) {
+                    //Keep reading
+                }
+                directory.flip();
+
+                while (directory.remaining() >= 46 && directory.getInt(directory.position()) == CENTRAL_HEADER) {
+                    int position = directory.position();
+                    long crc = directory.getInt(position + 16) & 0xFFFFFFFFL;
+                    long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+                    long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+                    int nameLength = directory.getShort(position + 28) & 0xFFFF;
+                    int extraLength = directory.getShort(position + 30) & 0xFFFF;
+                    int commentLength = directory.getShort(position + 32) & 0xFFFF;
+                    long offset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+                    byte[] name = new byte[nameLength];
+                    directory.position(position + 46);
+                    directory.get(name);
+
+                    long modified = -1;
+                    int extraEnd = directory.position() + extraLength;
+                    while (directory.position() + 4 <= extraEnd) {
+                        int id = directory.getShort() & 0xFFFF;
+                        int length = directory.getShort() & 0xFFFF;
+                        if (id == EXTRA_MODIFIED_TIME && length == 8) {
+                            modified = directory.getLong();
+                        } else {
+                            directory.position(directory.position() + length);
+                        }
+                    }
+                    directory.position(extraEnd + commentLength);
+
+                    if (modified >= 0) {
+                        Entry entry = new Entry(new String(name, "UTF-8"), modified, size);
+                        entry.crc = crc;
+                        entry.compressedSize = compressedSize;
+                        entry.offset = offset;
+                        entries.put(entry.name, entry);
+                    }
+                }
+            } finally {
+                raf.close();
+            }
         } catch (Exception e) {
-            LOG.error("Could not create zip file", e);
+            LOG.warn("Could not read previous zip " + zip.getName() + ", all files will be compressed again", e);
+            entries.clear();
         }
 
+        return entries;
+    }
+
+    private static int readShort(RandomAccessFile raf) throws IOException {
+        return raf.read() | (raf.read() << 8);
     }
 
+    private static ByteBuffer littleEndian(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int toDosTime(long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static class Entry {
+        final String name;
+        final long modified;
+        long size;
+        long crc;
+        long compressedSize;
+        long offset;
+        int flags;
+
+        Entry(String name, long modified, long size) {
+            this.name = name;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Counts and throughput of the last zip
+     */
+    public static class Statistics {
+        private int entriesCompressed;
+        private int entriesReused;
+        private long bytesIn;
+        private long bytesCompressed;
+        private long bytesOut;
+        private long compressNanos;
+        private long totalNanos;
+
+        public int getEntriesCompressed() {
+            return entriesCompressed;
+        }
+
+        public int getEntriesReused() {
+            return entriesReused;
+        }
+
+        /**
+         * Total size of the files zipped, reused or not
+         */
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        /**
+         * Size of the files that had to be compressed, per second spent compressing them
+         */
+        public double getCompressionBytesPerSecond() {
+            return compressNanos == 0 ? 0 : bytesCompressed * 1e9 / compressNanos;
+        }
+
+        public long getTotalMillis() {
+            return totalNanos / 1000000;
+        }
+
+        @Override
+        public String toString() {
+            return "Zipped " + (entriesCompressed + entriesReused) + " files, " + entriesReused + " reused, "
+                    + bytesIn + " bytes to " + bytesOut + " in " + getTotalMillis() + "ms, compressing at "
+                    + Math.round(getCompressionBytesPerSecond() / 1024) + "KB/s";
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
 }
@@ -31,6 +31,7 @@ import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.events.UploadEvents;
 import com.mendhak.gpslogger.common.slf4j.Logs;
 import com.mendhak.gpslogger.senders.FileSender;
+import com.mendhak.gpslogger.senders.UploadLedger;
 import com.path.android.jobqueue.CancelResult;
 import com.path.android.jobqueue.JobManager;
 import com.path.android.jobqueue.TagConstraint;
@@ -189,6 +190,18 @@ public class DropBoxManager extends FileSender {
         return true;
     }
 
+    @Override
+    public String getDestination() {
+        return destinationFor(getPreferenceHelper().getDropBoxAccessKeyName());
+    }
+
+    /**
+     * Names the linked account by its token, so that files aren't skipped after linking another one
+     */
+    static String destinationFor(String accessToken) {
+        return "dropbox:" + UploadLedger.fingerprint(accessToken);
+    }
+
     private PreferenceHelper getPreferenceHelper() {
         return preferenceHelper;
     }
@@ -28,6 +28,9 @@ import com.dropbox.core.v2.files.WriteMode;
 import com.mendhak.gpslogger.common.PreferenceHelper;
 import com.mendhak.gpslogger.common.events.UploadEvents;
 import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.common.network.BandwidthLimiter;
+import com.mendhak.gpslogger.senders.UploadConcurrency;
+import com.mendhak.gpslogger.senders.UploadLedger;
 import com.path.android.jobqueue.Job;
 import com.path.android.jobqueue.Params;
 import de.greenrobot.event.EventBus;
@@ -46,7 +49,7 @@ public class DropboxJob extends Job {
     private String fileName;
 
     protected DropboxJob(String fileName) {
-        super(new Params(1).requireNetwork().persist().addTags(getJobTag(fileName)));
+        super(new Params(1).requireNetwork().persist().groupBy(UploadConcurrency.groupFor(UploadConcurrency.DROPBOX)).addTags(getJobTag(fileName)));
 
         this.setFileName(fileName);
     }
@@ -75,9 +78,11 @@ public class DropboxJob extends Job {
 
         try {
             getLOG().debug("Beginning upload to dropbox...");
-            InputStream inputStream = new FileInputStream(gpxFile);
+            UploadLedger.Snapshot snapshot = UploadLedger.snapshot(gpxFile);
+            InputStream inputStream = BandwidthLimiter.getInstance().throttle(new FileInputStream(gpxFile));
             DbxClientV2 mDbxClient = getDbxClientV2();
             mDbxClient.files().uploadBuilder("/" + getFileName()).withMode(WriteMode.OVERWRITE).uploadAndFinish(inputStream);
+            UploadLedger.getInstance().recordUploaded(DropBoxManager.destinationFor(getPreferenceHelper().getDropBoxAccessKeyName()), snapshot);
             EventBus.getDefault().post(new UploadEvents.Dropbox().succeeded());
         } catch (Exception e) {
             getLOG().error("Could not upload to Dropbox" , e);
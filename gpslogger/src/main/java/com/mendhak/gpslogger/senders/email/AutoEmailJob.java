@@ -19,15 +19,16 @@
 
 package com.mendhak.gpslogger.senders.email;
 
-import android.util.Base64;
 import com.mendhak.gpslogger.common.AppSettings;
 import com.mendhak.gpslogger.common.network.Networks;
 import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.events.UploadEvents;
 import com.mendhak.gpslogger.common.slf4j.Logs;
 import com.mendhak.gpslogger.loggers.Files;
-import com.mendhak.gpslogger.loggers.Streams;
 import com.mendhak.gpslogger.common.network.LocalX509TrustManager;
+import com.mendhak.gpslogger.common.network.BandwidthLimiter;
+import com.mendhak.gpslogger.senders.UploadConcurrency;
+import com.mendhak.gpslogger.senders.UploadLedger;
 import com.path.android.jobqueue.Job;
 import com.path.android.jobqueue.Params;
 import de.greenrobot.event.EventBus;
@@ -39,6 +40,7 @@ import org.slf4j.Logger;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 
@@ -64,7 +66,7 @@ public class AutoEmailJob extends Job {
                            String smtpPort, String smtpUsername, String smtpPassword,
                            boolean smtpUseSsl, String csvEmailTargets, String fromAddress,
                             String subject, String body, File[] files) {
-        super(new Params(1).requireNetwork().persist().addTags(getJobTag(files)));
+        super(new Params(1).requireNetwork().persist().groupBy(UploadConcurrency.groupFor(UploadConcurrency.EMAIL)).addTags(getJobTag(files)));
         this.setSmtpServer(smtpServer);
         this.setSmtpPort(smtpPort);
         this.setSmtpPassword(smtpPassword);
@@ -127,6 +129,13 @@ public class AutoEmailJob extends Job {
             setFromAddress(getSmtpUsername());
         }
 
+        List<UploadLedger.Snapshot> snapshots = new ArrayList<>();
+        if (getFiles() != null) {
+            for (File f : getFiles()) {
+                snapshots.add(UploadLedger.snapshot(f));
+            }
+        }
+
         AuthenticatingSMTPClient client = new AuthenticatingSMTPClient();
 
         try {
@@ -207,6 +216,9 @@ public class AutoEmailJob extends Job {
                     smtpFailureEvent = new UploadEvents.AutoEmail().failed("Failure to send the email");
                 }
                 else {
+                    for (UploadLedger.Snapshot snapshot : snapshots) {
+                        UploadLedger.getInstance().recordUploaded(AutoEmailManager.destinationFor(getCsvEmailTargets()), snapshot);
+                    }
                     EventBus.getDefault().post(new UploadEvents.AutoEmail().succeeded());
                 }
             }
@@ -242,21 +254,32 @@ public class AutoEmailJob extends Job {
 
     /**
      * Append the given attachments to the message which is being written by the given writer.
+     * Each file is read through a fixed buffer and base64 encoded on the way into the writer,
+     * so memory use doesn't grow with the size of the attachments.
      *
      * @param boundary separates each file attachment
      */
     private static void attachFilesToWriter(Writer writer, String boundary, File[] files) throws IOException {
-        for (File f : files) {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) f.length());
-            FileInputStream inputStream = new FileInputStream(f);
-            Streams.copyIntoStream(inputStream, outputStream);
+        byte[] buffer = new byte[8192];
 
+        for (File f : files) {
             writer.write("--" + boundary + "\n");
             writer.write("Content-Type: application/" + Files.getMimeType(f.getName()) + "; name=\"" + f.getName() + "\"\n");
             writer.write("Content-Disposition: attachment; filename=\"" + f.getName() + "\"\n");
             writer.write("Content-Transfer-Encoding: base64\n\n");
-            String encodedFile = Base64.encodeToString(outputStream.toByteArray(), Base64.DEFAULT);
-            writer.write(encodedFile);
+
+            InputStream inputStream = BandwidthLimiter.getInstance().throttle(new FileInputStream(f));
+            try {
+                Base64MimeOutputStream encoder = new Base64MimeOutputStream(writer);
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    encoder.write(buffer, 0, read);
+                }
+                encoder.close();
+            } finally {
+                inputStream.close();
+            }
+
             writer.write("\n");
         }
     }
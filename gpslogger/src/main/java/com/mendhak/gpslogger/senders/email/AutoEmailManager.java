@@ -30,6 +30,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.zip.Deflater;
 
 public class AutoEmailManager extends FileSender {
 
@@ -97,6 +98,24 @@ public class AutoEmailManager extends FileSender {
         return true;
     }
 
+    @Override
+    public String getDestination() {
+        return destinationFor(getPreferenceHelper().getAutoEmailTargets());
+    }
+
+    /**
+     * Names the recipients, so that files aren't skipped when they change
+     */
+    static String destinationFor(String csvEmailTargets) {
+        return "mailto:" + csvEmailTargets;
+    }
+
+    @Override
+    public int getZipCompressionLevel() {
+        //Attachments grow by a third when encoded and mail servers cap message sizes
+        return Deflater.BEST_COMPRESSION;
+    }
+
     public boolean isValid(String server, String port, String username, String password, String target) {
         return !Strings.isNullOrEmpty(server) && !Strings.isNullOrEmpty(port) && !Strings.isNullOrEmpty(username) && !Strings.isNullOrEmpty(target);
 
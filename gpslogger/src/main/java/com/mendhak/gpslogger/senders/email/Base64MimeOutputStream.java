@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.senders.email;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Base64 encodes the bytes written to it straight into a Writer, wrapped at 76 characters per line.
+ * The output is the same as Base64.encodeToString(bytes, Base64.DEFAULT) but only a small fixed buffer is held,
+ * so an attachment can be piped into the SMTP message without reading the whole file into memory.
+ * {@link #close()} writes the final padded group but leaves the underlying writer open.
+ */
+class Base64MimeOutputStream extends OutputStream {
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    //76 characters per line, as required by RFC 2045
+    private static final int GROUPS_PER_LINE = 19;
+
+    private final Writer writer;
+    private final char[] buffer = new char[4096];
+    private int bufferLength;
+
+    //Up to two bytes waiting for a third to complete a group
+    private int leftover;
+    private int leftoverCount;
+    private int groupsOnLine;
+    private boolean closed;
+
+    Base64MimeOutputStream(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        leftover = (leftover << 8) | (b & 0xFF);
+        if (++leftoverCount == 3) {
+            appendGroup(leftover);
+            leftover = 0;
+            leftoverCount = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        int end = offset + length;
+
+        while (leftoverCount > 0 && offset < end) {
+            write(bytes[offset++]);
+        }
+
+        while (end - offset >= 3) {
+            appendGroup(((bytes[offset] & 0xFF) << 16) | ((bytes[offset + 1] & 0xFF) << 8) | (bytes[offset + 2] & 0xFF));
+            offset += 3;
+        }
+
+        while (offset < end) {
+            write(bytes[offset++]);
+        }
+    }
+
+    private void appendGroup(int group) throws IOException {
+        ensureRoom();
+        buffer[bufferLength++] = ALPHABET[(group >> 18) & 0x3F];
+        buffer[bufferLength++] = ALPHABET[(group >> 12) & 0x3F];
+        buffer[bufferLength++] = ALPHABET[(group >> 6) & 0x3F];
+        buffer[bufferLength++] = ALPHABET[group & 0x3F];
+        endGroup();
+    }
+
+    private void endGroup() {
+        if (++groupsOnLine == GROUPS_PER_LINE) {
+            buffer[bufferLength++] = '\n';
+            groupsOnLine = 0;
+        }
+    }
+
+    private void ensureRoom() throws IOException {
+        //A group and its line break
+        if (bufferLength + 5 > buffer.length) {
+            writer.write(buffer, 0, bufferLength);
+            bufferLength = 0;
+        }
+    }
+
+    /**
+     * Sends everything encoded so far to the writer. Bytes that don't yet make up a full group are held back.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (bufferLength > 0) {
+            writer.write(buffer, 0, bufferLength);
+            bufferLength = 0;
+        }
+        writer.flush();
+    }
+
+    /**
+     * Pads and writes any remaining bytes and ends the last line. The underlying writer is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (leftoverCount > 0) {
+            ensureRoom();
+            int group = leftover << (leftoverCount == 1 ? 16 : 8);
+            buffer[bufferLength++] = ALPHABET[(group >> 18) & 0x3F];
+            buffer[bufferLength++] = ALPHABET[(group >> 12) & 0x3F];
+            buffer[bufferLength++] = leftoverCount == 2 ? ALPHABET[(group >> 6) & 0x3F] : '=';
+            buffer[bufferLength++] = '=';
+            endGroup();
+            leftoverCount = 0;
+        }
+
+        if (groupsOnLine > 0) {
+            ensureRoom();
+            buffer[bufferLength++] = '\n';
+            groupsOnLine = 0;
+        }
+
+        flush();
+    }
+}
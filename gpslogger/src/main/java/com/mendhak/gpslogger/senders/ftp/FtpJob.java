@@ -26,6 +26,10 @@ import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.events.UploadEvents;
 import com.mendhak.gpslogger.common.slf4j.LoggingOutputStream;
 import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.common.network.BandwidthLimiter;
+import com.mendhak.gpslogger.senders.DeltaSync;
+import com.mendhak.gpslogger.senders.UploadConcurrency;
+import com.mendhak.gpslogger.senders.UploadLedger;
 import com.path.android.jobqueue.Job;
 import com.path.android.jobqueue.Params;
 import de.greenrobot.event.EventBus;
@@ -33,15 +37,20 @@ import org.apache.commons.net.PrintCommandListener;
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
 import org.apache.commons.net.ftp.FTPSClient;
 import org.slf4j.Logger;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 
 
@@ -63,10 +72,12 @@ public class FtpJob extends Job {
     static UploadEvents.Ftp jobResult;
     static ArrayList<String> ftpServerResponses;
 
+    private static final FtpSessionPool SESSIONS = new FtpSessionPool(FtpSessionPool.DEFAULT_IDLE_MILLIS);
+
     protected FtpJob(String server, int port, String username,
                      String password, String directory, boolean useFtps, String protocol, boolean implicit,
                      File gpxFile, String fileName) {
-        super(new Params(1).requireNetwork().persist().addTags(getJobTag(gpxFile)));
+        super(new Params(1).requireNetwork().persist().groupBy(UploadConcurrency.groupFor(UploadConcurrency.FTP)).addTags(getJobTag(gpxFile)));
 
         this.setServer(server);
         this.setPort(port);
@@ -84,9 +95,128 @@ public class FtpJob extends Job {
 
     }
 
+    /**
+     * How long a connection is kept open after an upload, so that the next file to the same server can reuse it
+     */
+    public static void setSessionIdleSeconds(int seconds) {
+        SESSIONS.setIdleMillis(seconds * 1000L);
+    }
+
     public synchronized static boolean upload(String server, String username, String password, String directory, int port,
                                               boolean useFtps, String protocol, boolean implicit,
                                               File gpxFile, String fileName) {
+
+        String sessionKey = (useFtps ? "ftps-" + protocol + (implicit ? "-implicit://" : "://") : "ftp://")
+                + username + "@" + server + ":" + port + "#" + hashCredentials(username, password);
+
+        FtpSessionPool.Session session = SESSIONS.acquire(sessionKey);
+        if (session != null && !isAlive(session.getClient())) {
+            getLOG().debug("Pooled FTP connection to " + server + " has closed");
+            SESSIONS.discard(session);
+            session = null;
+        }
+
+        boolean reused = session != null;
+        if (!reused) {
+            session = openSession(sessionKey, server, username, password, port, useFtps, protocol, implicit);
+            if (session == null) {
+                return false;
+            }
+        }
+
+        FTPClient client = session.getClient();
+        boolean keepOpen = false;
+
+        try {
+            if (reused) {
+                getLOG().debug("Reusing FTP connection to " + server);
+                client.changeWorkingDirectory(session.getHomeDirectory());
+                logServerReply(client);
+            }
+
+            getLOG().debug("Uploading file to FTP server " + server);
+            changeToDirectory(session, directory);
+            client.setFileType(FTP.BINARY_FILE_TYPE);
+
+            String remoteKey = "ftp://" + username + "@" + server + ":" + port + "/" + directory + "/" + fileName;
+            DeltaSync.Delta delta = DeltaSync.getInstance().plan(remoteKey, gpxFile);
+            if (!delta.isFullUpload() && !delta.remoteMatches(getRemoteSize(client, fileName))) {
+                getLOG().debug("Remote file " + fileName + " is not as last uploaded, sending it in full");
+                delta = delta.fullUpload();
+            }
+
+            boolean result = true;
+            if (delta.isUpToDate()) {
+                getLOG().debug("Remote file " + fileName + " is already up to date");
+            } else {
+                InputStream inputStream = BandwidthLimiter.getInstance().throttle(delta.openStream());
+                try {
+                    if (delta.isFullUpload()) {
+                        result = client.storeFile(fileName, inputStream);
+                    } else if (delta.isAppend()) {
+                        getLOG().debug("Appending from byte " + delta.getOffset() + " of " + fileName);
+                        result = client.appendFile(fileName, inputStream);
+                    } else {
+                        getLOG().debug("Rewriting from byte " + delta.getOffset() + " of " + fileName);
+                        client.setRestartOffset(delta.getOffset());
+                        result = client.storeFile(fileName, inputStream);
+                    }
+                } finally {
+                    inputStream.close();
+                }
+                logServerReply(client);
+
+                if (result) {
+                    DeltaSync.getInstance().commit(delta);
+                }
+            }
+
+            //A refused upload still leaves the connection usable
+            keepOpen = session.getHomeDirectory() != null;
+
+            if (result) {
+                getLOG().debug("Successfully FTPd file " + fileName);
+            } else {
+                jobResult = new UploadEvents.Ftp().failed( "Failed to FTP file " + fileName , null);
+                getLOG().debug("Failed to FTP file " + fileName);
+                return false;
+            }
+
+        } catch (Exception e) {
+            logServerReply(client);
+            jobResult = new UploadEvents.Ftp().failed( "Could not connect or upload to FTP server.", e);
+            getLOG().error("Could not connect or upload to FTP server.", e);
+            return false;
+        } finally {
+            if (keepOpen) {
+                SESSIONS.release(session);
+            } else {
+                SESSIONS.discard(session);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Identifies the login in a session key, so that a changed password gets a new session,
+     * without keeping the password itself in the key
+     */
+    private static String hashCredentials(String username, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((username + "\n" + password).getBytes("UTF-8"));
+            return new BigInteger(1, hash).toString(16);
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return String.valueOf((username + "\n" + password).hashCode());
+        }
+    }
+
+    /**
+     * Connects and logs in, returns null with the job result set if that fails
+     */
+    private static FtpSessionPool.Session openSession(String sessionKey, String server, String username, String password, int port,
+                                                      boolean useFtps, String protocol, boolean implicit) {
         FTPClient client;
 
         try {
@@ -107,9 +237,10 @@ public class FtpJob extends Job {
         } catch (Exception e) {
             jobResult = new UploadEvents.Ftp().failed( "Could not create FTP Client" , e);
             getLOG().error("Could not create FTP Client", e);
-            return false;
+            return null;
         }
 
+        FtpSessionPool.Session session = null;
 
         try {
 
@@ -135,64 +266,95 @@ public class FtpJob extends Job {
                 client.enterLocalPassiveMode();
                 logServerReply(client);
 
-                getLOG().debug("Uploading file to FTP server " + server);
-                getLOG().debug("Checking for FTP directory " + directory);
-                FTPFile[] existingDirectory = client.listFiles(directory);
-                logServerReply(client);
-
-                if (existingDirectory.length <= 0) {
-                    getLOG().debug("Attempting to create FTP directory " + directory);
-                    ftpCreateDirectoryTree(client, directory);
-                    logServerReply(client);
-                }
-
-                FileInputStream inputStream = new FileInputStream(gpxFile);
-                client.changeWorkingDirectory(directory);
-                client.setFileType(FTP.BINARY_FILE_TYPE);
-                boolean result = client.storeFile(fileName, inputStream);
-                inputStream.close();
+                session = new FtpSessionPool.Session(sessionKey, client, client.printWorkingDirectory());
                 logServerReply(client);
-                if (result) {
-                    getLOG().debug("Successfully FTPd file " + fileName);
-                } else {
-                    jobResult = new UploadEvents.Ftp().failed( "Failed to FTP file " + fileName , null);
-                    getLOG().debug("Failed to FTP file " + fileName);
-                    return false;
-                }
 
             } else {
                 logServerReply(client);
                 jobResult = new UploadEvents.Ftp().failed( "Could not log in to FTP server" , null);
                 getLOG().debug("Could not log in to FTP server");
-                return false;
             }
 
         } catch (Exception e) {
             logServerReply(client);
             jobResult = new UploadEvents.Ftp().failed( "Could not connect or upload to FTP server.", e);
             getLOG().error("Could not connect or upload to FTP server.", e);
-            return false;
         } finally {
-            try {
-                client.logout();
-                logServerReply(client);
-
-                client.disconnect();
-                logServerReply(client);
-            } catch (Exception e) {
-                if(jobResult == null){
-                    jobResult = new UploadEvents.Ftp().failed( "Could not logout or disconnect", e);
+            if (session == null) {
+                try {
+                    client.disconnect();
+                } catch (Exception e) {
+                    getLOG().error("Could not logout or disconnect", e);
                 }
+            }
+        }
 
-                getLOG().error("Could not logout or disconnect", e);
-                return false;
+        return session;
+    }
+
+    private static boolean isAlive(FTPClient client) {
+        try {
+            return client.isConnected() && client.sendNoOp();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Changes into the upload directory, creating it if it doesn't exist.
+     * Directories already seen on this connection are changed into without being listed again.
+     */
+    private static void changeToDirectory(FtpSessionPool.Session session, String directory) throws IOException {
+        FTPClient client = session.getClient();
+
+        if (session.isKnownDirectory(directory)) {
+            boolean changed = client.changeWorkingDirectory(directory);
+            logServerReply(client);
+            if (changed) {
+                return;
             }
+            session.forgetDirectory(directory);
         }
 
-        return true;
+        getLOG().debug("Checking for FTP directory " + directory);
+        FTPFile[] existingDirectory = client.listFiles(directory);
+        logServerReply(client);
+
+        if (existingDirectory.length <= 0) {
+            getLOG().debug("Attempting to create FTP directory " + directory);
+            ftpCreateDirectoryTree(client, directory);
+            logServerReply(client);
+
+            if (session.getHomeDirectory() != null) {
+                client.changeWorkingDirectory(session.getHomeDirectory());
+                logServerReply(client);
+            }
+        }
+
+        if (client.changeWorkingDirectory(directory)) {
+            session.addKnownDirectory(directory);
+        }
+        logServerReply(client);
     }
 
 
+    /**
+     * Asks the server for the size of a file in the working directory, returns -1 if it doesn't exist or SIZE isn't supported
+     */
+    private static long getRemoteSize(FTPClient client, String fileName) throws IOException {
+        int reply = client.sendCommand("SIZE", fileName);
+        logServerReply(client);
+
+        if (FTPReply.isPositiveCompletion(reply)) {
+            try {
+                return Long.parseLong(client.getReplyString().substring(4).trim());
+            } catch (RuntimeException e) {
+                getLOG().warn("Unexpected SIZE reply " + client.getReplyString());
+            }
+        }
+        return -1;
+    }
+
     private static void ftpCreateDirectoryTree(FTPClient client, String dirTree) throws IOException {
 
         boolean dirExists = true;
@@ -243,7 +405,9 @@ public class FtpJob extends Job {
 
     @Override
     public void onRun() throws Throwable {
+        UploadLedger.Snapshot snapshot = UploadLedger.snapshot(getGpxFile());
         if (upload(getServer(), getUsername(), getPassword(), getDirectory(), getPort(), isUseFtps(), getProtocol(), isImplicit(), getGpxFile(), getFileName())) {
+            UploadLedger.getInstance().recordUploaded(FtpManager.destinationFor(getServer(), getPort(), getUsername(), getDirectory()), snapshot);
             EventBus.getDefault().post(new UploadEvents.Ftp().succeeded());
         } else {
             jobResult.ftpMessages = ftpServerResponses;
@@ -99,6 +99,8 @@ public class FtpManager extends FileSender {
 
     public void uploadFile(final File f) {
 
+        FtpJob.setSessionIdleSeconds(getPreferenceHelper().getFtpKeepAliveSeconds());
+
         final JobManager jobManager = AppSettings.getJobManager();
         jobManager.cancelJobsInBackground(new CancelResult.AsyncCancelCallback() {
             @Override
@@ -117,6 +119,19 @@ public class FtpManager extends FileSender {
         return true;
     }
 
+    @Override
+    public String getDestination() {
+        return destinationFor(getPreferenceHelper().getFtpServerName(), getPreferenceHelper().getFtpPort(),
+                getPreferenceHelper().getFtpUsername(), getPreferenceHelper().getFtpDirectory());
+    }
+
+    /**
+     * Names the server, account and directory files go to, so that a new one doesn't count as already having them
+     */
+    static String destinationFor(String server, int port, String username, String directory) {
+        return "ftp://" + username + "@" + server + ":" + port + "/" + directory;
+    }
+
 
     public boolean validSettings(String servername, Integer port, boolean useFtps,
                                  String sslTls) {
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.senders.ftp;
+
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import org.apache.commons.net.ftp.FTPClient;
+import org.slf4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps logged in FTP connections open for a while after an upload, so that several files going to the same server,
+ * such as the GPX, KML and CSV files of one auto-send, share one connection, TLS handshake and login.
+ * A connection left idle for longer than the idle window is logged out and closed.
+ */
+class FtpSessionPool {
+
+    private static final Logger LOG = Logs.of(FtpSessionPool.class);
+
+    static final long DEFAULT_IDLE_MILLIS = 60 * 1000;
+
+    private final static ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FtpSessionPool");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Map<String, Session> idleSessions = new HashMap<>();
+    private volatile long idleMillis;
+
+    private final Runnable closeExpired = new Runnable() {
+        @Override
+        public void run() {
+            closeExpired();
+        }
+    };
+
+    FtpSessionPool(long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * How long a connection is kept open after its last upload
+     */
+    void setIdleMillis(long idleMillis) {
+        this.idleMillis = Math.max(0, idleMillis);
+        closeExpired();
+    }
+
+    /**
+     * Takes the idle session for this server and account, or returns null if there isn't one.
+     * The caller should check the connection is still alive before using it.
+     */
+    synchronized Session acquire(String key) {
+        Session session = idleSessions.remove(key);
+        if (session != null && isExpired(session, System.currentTimeMillis())) {
+            close(session);
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Returns a session to the pool after a successful upload, to be reused or closed once the idle window passes
+     */
+    void release(Session session) {
+        Session replaced;
+        synchronized (this) {
+            session.releasedAt = System.currentTimeMillis();
+            replaced = idleSessions.put(session.key, session);
+        }
+
+        if (replaced != null && replaced != session) {
+            close(replaced);
+        }
+
+        TIMER.schedule(closeExpired, idleMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes a session that failed or shouldn't be reused
+     */
+    void discard(Session session) {
+        close(session);
+    }
+
+    private void closeExpired() {
+        List<Session> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            Iterator<Session> iterator = idleSessions.values().iterator();
+            while (iterator.hasNext()) {
+                Session session = iterator.next();
+                if (isExpired(session, now)) {
+                    iterator.remove();
+                    expired.add(session);
+                }
+            }
+        }
+
+        for (Session session : expired) {
+            close(session);
+        }
+    }
+
+    private boolean isExpired(Session session, long now) {
+        return now - session.releasedAt >= idleMillis;
+    }
+
+    private static void close(Session session) {
+        FTPClient client = session.getClient();
+        if (!client.isConnected()) {
+            return;
+        }
+
+        try {
+            client.logout();
+        } catch (Exception e) {
+            //Usual for a connection that has sat idle until the server dropped it
+            LOG.debug("Could not logout from FTP server", e);
+        } finally {
+            try {
+                client.disconnect();
+            } catch (Exception e) {
+                LOG.warn("Could not disconnect from FTP server", e);
+            }
+        }
+    }
+
+    /**
+     * A logged in connection, along with the directories it has already found or created
+     */
+    static class Session {
+        private final String key;
+        private final FTPClient client;
+        private final String homeDirectory;
+        private final Set<String> knownDirectories = new HashSet<>();
+        private long releasedAt;
+
+        Session(String key, FTPClient client, String homeDirectory) {
+            this.key = key;
+            this.client = client;
+            this.homeDirectory = homeDirectory;
+        }
+
+        FTPClient getClient() {
+            return client;
+        }
+
+        /**
+         * The working directory right after login, relative directories are resolved from here
+         */
+        String getHomeDirectory() {
+            return homeDirectory;
+        }
+
+        boolean isKnownDirectory(String directory) {
+            return knownDirectories.contains(directory);
+        }
+
+        void addKnownDirectory(String directory) {
+            knownDirectories.add(directory);
+        }
+
+        void forgetDirectory(String directory) {
+            knownDirectories.remove(directory);
+        }
+    }
+}
@@ -24,6 +24,8 @@ import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.events.UploadEvents;
 import com.mendhak.gpslogger.common.slf4j.Logs;
 import com.mendhak.gpslogger.loggers.Streams;
+import com.mendhak.gpslogger.senders.UploadConcurrency;
+import com.mendhak.gpslogger.senders.UploadLedger;
 import com.path.android.jobqueue.Job;
 import com.path.android.jobqueue.Params;
 import de.greenrobot.event.EventBus;
@@ -32,7 +34,6 @@ import org.slf4j.Logger;
 
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
@@ -42,9 +43,11 @@ public class GoogleDriveJob extends Job {
     private String token;
     private File gpxFile;
     private String googleDriveFolderName;
+    //The upload in progress, kept with the job so that a retry resumes it rather than starting over
+    private ResumableUpload upload;
 
     protected GoogleDriveJob(File gpxFile, String googleDriveFolderName) {
-        super(new Params(1).requireNetwork().persist().addTags(getJobTag(gpxFile)));
+        super(new Params(1).requireNetwork().persist().groupBy(UploadConcurrency.groupFor(UploadConcurrency.GOOGLE_DRIVE)).addTags(getJobTag(gpxFile)));
         this.setGpxFile(gpxFile);
         this.setGoogleDriveFolderName(googleDriveFolderName);
 
@@ -54,6 +57,11 @@ public class GoogleDriveJob extends Job {
         return "GOOGLEDRIVE" + gpxFile.getName();
     }
 
+    @Override
+    protected int getRetryLimit() {
+        return 5;
+    }
+
     private static Logger getLOG() {
         return LOG;
     }
@@ -68,8 +76,8 @@ public class GoogleDriveJob extends Job {
 
         GoogleDriveManager manager = new GoogleDriveManager(PreferenceHelper.getInstance());
         setToken(manager.getToken());
+        UploadLedger.Snapshot snapshot = UploadLedger.snapshot(getGpxFile());
 
-        FileInputStream fis = new FileInputStream(getGpxFile());
         String fileName = getGpxFile().getName();
 
         String gpsLoggerFolderId = PreferenceHelper.getInstance().getGoogleDriveFolderId();
@@ -107,59 +115,25 @@ public class GoogleDriveJob extends Job {
 
         if (!Strings.isNullOrEmpty(gpxFileId)) {
             //Set file's contents
-            updateFileContents(getToken(), gpxFileId, Streams.getByteArrayFromInputStream(fis), fileName);
+            updateFileContents(getToken(), gpxFileId, fileName);
         }
+        UploadLedger.getInstance().recordUploaded(GoogleDriveManager.destinationFor(
+                PreferenceHelper.getInstance().getGoogleDriveAccountName(), getGoogleDriveFolderName()), snapshot);
         EventBus.getDefault().post(new UploadEvents.GDrive().succeeded());
     }
 
-    private HttpURLConnection connConfigWhenUpdatingFileContents(HttpURLConnection conn, byte[] fileContents, String fileName, String fileUpdateUrl, String authToken)
-    {
-        try {
-        setCommonConnProperty(conn, fileUpdateUrl, authToken);
-        conn.setRequestMethod("PUT");
-        conn.setRequestProperty("Content-Type", getMimeTypeFromFileName(fileName));
-        conn.setRequestProperty("Content-Length", String.valueOf(fileContents.length));
-
-        conn.setUseCaches(false);
-        conn.setDoInput(true);
-        conn.setDoOutput(true);
-        } catch (Exception e) {
-            getLOG().error("Could not update contents", e);
+    private void updateFileContents(String authToken, String gpxFileId, String fileName) throws Exception {
+        if (upload == null || !upload.isFor(getGpxFile(), gpxFileId)) {
+            String fileUpdateUrl = "https://www.googleapis.com/upload/drive/v2/files/" + gpxFileId + "?uploadType=resumable";
+            upload = ResumableUpload.start(fileUpdateUrl, gpxFileId, authToken, getGpxFile(),
+                    getMimeTypeFromFileName(fileName), ResumableUpload.CHUNK_SIZE);
         }
 
-        return conn;
-    }
-
-    private String updateFileContents(String authToken, String gpxFileId, byte[] fileContents, String fileName) {
-        HttpURLConnection conn = null;
-        String fileId = null;
-
-        String fileUpdateUrl = "https://www.googleapis.com/upload/drive/v2/files/" + gpxFileId + "?uploadType=media";
+        String fileMetadata = upload.upload(authToken, getGpxFile());
+        upload = null;
 
-        try {
-            conn = connConfigWhenUpdatingFileContents(conn, fileContents, fileName, fileUpdateUrl, authToken);
-
-            DataOutputStream wr = new DataOutputStream(
-                    conn.getOutputStream());
-            wr.write(fileContents);
-            wr.flush();
-            wr.close();
-
-            String fileMetadata = Streams.getStringFromInputStream(conn.getInputStream());
-
-            JSONObject fileMetadataJson = new JSONObject(fileMetadata);
-            fileId = fileMetadataJson.getString("id");
-            getLOG().debug("File updated : " + fileId);
-
-        } catch (Exception e) {
-            getLOG().error("Could not update contents", e);
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
-            }
-        }
-
-        return fileId;
+        JSONObject fileMetadataJson = new JSONObject(fileMetadata);
+        getLOG().debug("File updated : " + fileMetadataJson.getString("id"));
     }
 
     private void setCommonConnProperty(HttpURLConnection conn, String createFileUrl, String authToken)
@@ -345,11 +319,18 @@ public class GoogleDriveJob extends Job {
 
     @Override
     protected void onCancel() {
-
+        if (upload != null) {
+            EventBus.getDefault().post(new UploadEvents.GDrive().failed("Could not upload to Google Drive"));
+        }
     }
 
     @Override
     protected boolean shouldReRunOnThrowable(Throwable throwable) {
+        if (upload != null && upload.canResume(getGpxFile())) {
+            getLOG().warn("Google Drive upload interrupted after " + upload.getOffset() + " bytes, will resume", throwable);
+            return true;
+        }
+
         getLOG().error("Could not upload to Google Drive", throwable);
         EventBus.getDefault().post(new UploadEvents.GDrive().failed("Could not upload to Google Drive", throwable));
         return false;
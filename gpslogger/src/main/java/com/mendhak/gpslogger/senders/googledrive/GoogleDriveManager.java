@@ -110,18 +110,8 @@ public class GoogleDriveManager extends FileSender {
 
             getLOG().debug("Submitting Google Docs job");
 
-            String uploadFolderName = googleDriveFolderName;
-
-            if(Strings.isNullOrEmpty(googleDriveFolderName)){
-                uploadFolderName = getPreferenceHelper().getGoogleDriveFolderName();
-            }
-
-            if(Strings.isNullOrEmpty(uploadFolderName)){
-                uploadFolderName = "GPSLogger for Android";
-            }
-
             final JobManager jobManager = AppSettings.getJobManager();
-            final String finalUploadFolderName = uploadFolderName;
+            final String finalUploadFolderName = getUploadFolderName(googleDriveFolderName);
             jobManager.cancelJobsInBackground(new CancelResult.AsyncCancelCallback() {
                 @Override
                 public void onCancelled(CancelResult cancelResult) {
@@ -141,6 +131,32 @@ public class GoogleDriveManager extends FileSender {
         return true;
     }
 
+    private String getUploadFolderName(@Nullable String googleDriveFolderName) {
+        String uploadFolderName = googleDriveFolderName;
+
+        if(Strings.isNullOrEmpty(googleDriveFolderName)){
+            uploadFolderName = getPreferenceHelper().getGoogleDriveFolderName();
+        }
+
+        if(Strings.isNullOrEmpty(uploadFolderName)){
+            uploadFolderName = "GPSLogger for Android";
+        }
+
+        return uploadFolderName;
+    }
+
+    @Override
+    public String getDestination() {
+        return destinationFor(getPreferenceHelper().getGoogleDriveAccountName(), getUploadFolderName(null));
+    }
+
+    /**
+     * Names the account and folder files go to, so that a new one doesn't count as already having them
+     */
+    static String destinationFor(String accountName, String folderName) {
+        return "gdrive:" + accountName + "/" + folderName;
+    }
+
     public String getToken() throws GoogleAuthException, IOException {
         String token = GoogleAuthUtil.getTokenWithNotification(AppSettings.getInstance(), getPreferenceHelper().getGoogleDriveAccountName(), getOauth2Scope(), new Bundle());
         getLOG().debug("GDrive token: " + token);
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2016 mendhak
+ *
+ * This file is part of GPSLogger for Android.
+ *
+ * GPSLogger for Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GPSLogger for Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GPSLogger for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mendhak.gpslogger.senders.googledrive;
+
+import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.common.network.BandwidthLimiter;
+import com.mendhak.gpslogger.loggers.Streams;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Uploads a file's contents with Google Drive's resumable upload protocol.
+ * The file is read from a FileChannel a chunk at a time and streamed out, rather than loaded into memory whole.
+ * Each chunk the server acknowledges moves the offset forward, and the session is Serializable so that the job
+ * holding it can be retried and carry on from the last acknowledged offset rather than starting from zero.
+ */
+class ResumableUpload implements Serializable {
+
+    private static final Logger LOG = Logs.of(ResumableUpload.class);
+
+    //Drive wants every chunk but the last to be a multiple of 256 KB
+    static final int CHUNK_SIZE = 4 * 256 * 1024;
+
+    private static final int HTTP_RESUME_INCOMPLETE = 308;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_STALLED_REQUESTS = 4;
+
+    private final String sessionUrl;
+    private final String mimeType;
+    private final String fileId;
+    private final long length;
+    private final long lastModified;
+    private final int chunkSize;
+    private long offset;
+    private boolean started;
+    private boolean expired;
+
+    private ResumableUpload(String sessionUrl, String fileId, File file, String mimeType, int chunkSize) {
+        this.sessionUrl = sessionUrl;
+        this.fileId = fileId;
+        this.mimeType = mimeType;
+        this.length = file.length();
+        this.lastModified = file.lastModified();
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Opens an upload session for the file's current contents
+     * @param uploadUrl The resumable upload URL, eg https://www.googleapis.com/upload/drive/v2/files/ID?uploadType=resumable
+     */
+    static ResumableUpload start(String uploadUrl, String fileId, String authToken, File file, String mimeType, int chunkSize)
+            throws IOException {
+        HttpURLConnection conn = openConnection(uploadUrl, authToken);
+
+        try {
+            conn.setRequestMethod("PUT");
+            conn.setRequestProperty("X-Upload-Content-Type", mimeType);
+            conn.setRequestProperty("X-Upload-Content-Length", String.valueOf(file.length()));
+            conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            conn.setFixedLengthStreamingMode(0);
+            conn.setDoOutput(true);
+            conn.getOutputStream().close();
+
+            int responseCode = conn.getResponseCode();
+            String sessionUrl = conn.getHeaderField("Location");
+
+            if (responseCode != HttpURLConnection.HTTP_OK || sessionUrl == null) {
+                throw new IOException("Could not start upload session, response code " + responseCode);
+            }
+
+            LOG.debug("Started upload session for " + file.getName() + ", " + file.length() + " bytes");
+            return new ResumableUpload(sessionUrl, fileId, file, mimeType, chunkSize);
+
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Whether this session can carry on uploading the given file. A file that has changed since the session began
+     * needs a new session, as does one the server has forgotten.
+     */
+    boolean isFor(File file, String fileId) {
+        return this.fileId.equals(fileId) && canResume(file);
+    }
+
+    boolean canResume(File file) {
+        return !expired && file.length() == length && file.lastModified() == lastModified;
+    }
+
+    /**
+     * Bytes the server has acknowledged so far
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Sends the rest of the file, chunk by chunk
+     * @return The file metadata the server responds with once the last chunk is received
+     */
+    String upload(String authToken, File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        try {
+            if (started) {
+                //An earlier attempt was interrupted, the server may have received more than it acknowledged
+                String metadata = queryOffset(authToken);
+                if (metadata != null) {
+                    return metadata;
+                }
+                LOG.debug("Resuming upload of " + file.getName() + " from " + offset + " of " + length + " bytes");
+            }
+
+            started = true;
+
+            //Every chunk plus a few requests that don't get anywhere, so a misbehaving server can't keep us here
+            long requestsLeft = 2 * ((length - offset) / chunkSize + 1) + MAX_STALLED_REQUESTS;
+            int stalled = 0;
+            boolean requery = false;
+
+            while (true) {
+                if (requestsLeft-- <= 0) {
+                    expired = true;
+                    throw new IOException("Upload of " + file.getName() + " gave up at " + offset + " bytes after too many requests");
+                }
+
+                long previousOffset = offset;
+
+                //Once the server has every byte there is no chunk left to send, only its answer to ask for
+                String metadata = (requery || offset >= length) ? queryOffset(authToken) : sendChunk(authToken, channel, buffer);
+                if (metadata != null) {
+                    return metadata;
+                }
+
+                if (offset > previousOffset) {
+                    stalled = 0;
+                    requery = false;
+                } else {
+                    if (++stalled >= MAX_STALLED_REQUESTS) {
+                        //Start over with a new session next time rather than trusting this one
+                        expired = true;
+                        throw new IOException("Upload of " + file.getName() + " is not progressing, server is stuck at " + offset + " bytes");
+                    }
+                    //Check what the server really holds before sending the same chunk again
+                    requery = !requery;
+                }
+            }
+
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Sends the chunk at the current offset, returning the file metadata if it was the last one
+     */
+    private String sendChunk(String authToken, FileChannel channel, ByteBuffer buffer) throws IOException {
+        int chunkLength = (int) Math.min(chunkSize, length - offset);
+        HttpURLConnection conn = openConnection(sessionUrl, authToken);
+
+        try {
+            conn.setRequestMethod("PUT");
+            conn.setRequestProperty("Content-Type", mimeType);
+            conn.setRequestProperty("Content-Range", "bytes " + offset + "-" + (offset + chunkLength - 1) + "/" + length);
+            conn.setFixedLengthStreamingMode(chunkLength);
+            conn.setDoOutput(true);
+
+            OutputStream out = conn.getOutputStream();
+            copy(channel, offset, chunkLength, buffer, out);
+            out.close();
+
+            return handleResponse(conn);
+
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Asks the server how much it has received, returning the file metadata if it already has everything
+     */
+    private String queryOffset(String authToken) throws IOException {
+        HttpURLConnection conn = openConnection(sessionUrl, authToken);
+
+        try {
+            conn.setRequestMethod("PUT");
+            conn.setRequestProperty("Content-Range", "bytes */" + length);
+            conn.setFixedLengthStreamingMode(0);
+            conn.setDoOutput(true);
+            conn.getOutputStream().close();
+
+            return handleResponse(conn);
+
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Moves the offset on to what the server has acknowledged.
+     * Returns the response body if the upload is complete, or null if more is needed.
+     */
+    private String handleResponse(HttpURLConnection conn) throws IOException {
+        int responseCode = conn.getResponseCode();
+
+        if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_CREATED) {
+            offset = length;
+            return Streams.getStringFromInputStream(conn.getInputStream());
+        }
+
+        if (responseCode == HTTP_RESUME_INCOMPLETE) {
+            //Range: bytes=0-N, absent when nothing has been received yet
+            String range = conn.getHeaderField("Range");
+            offset = (range == null) ? 0 : Long.parseLong(range.substring(range.lastIndexOf('-') + 1)) + 1;
+            return null;
+        }
+
+        if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_GONE) {
+            expired = true;
+        }
+
+        throw new IOException("Upload interrupted at " + offset + " bytes, response code " + responseCode);
+    }
+
+    private static void copy(FileChannel channel, long position, int count, ByteBuffer buffer, OutputStream out)
+            throws IOException {
+        long end = position + count;
+
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("File ended before the expected length");
+            }
+
+            BandwidthLimiter.getInstance().acquire(read);
+            out.write(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    private static HttpURLConnection openConnection(String url, String authToken) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestProperty("User-Agent", "GPSLogger for Android");
+        conn.setRequestProperty("Authorization", "Bearer " + authToken);
+        conn.setConnectTimeout(10000);
+        conn.setReadTimeout(30000);
+        conn.setUseCaches(false);
+        //Drive answers unfinished chunks with 308, which is not a redirect here
+        conn.setInstanceFollowRedirects(false);
+        return conn;
+    }
+}
@@ -20,18 +20,18 @@
 package com.mendhak.gpslogger.senders.opengts;
 
 import com.mendhak.gpslogger.common.*;
-import com.mendhak.gpslogger.common.events.UploadEvents;
 import com.mendhak.gpslogger.common.slf4j.Logs;
-import com.mendhak.gpslogger.loggers.customurl.CustomUrlJob;
-import com.mendhak.gpslogger.loggers.customurl.CustomUrlRequest;
+import com.mendhak.gpslogger.loggers.opengts.OpenGtsHttpJob;
 import com.mendhak.gpslogger.loggers.opengts.OpenGtsUdpJob;
 import com.mendhak.gpslogger.senders.FileSender;
-import com.mendhak.gpslogger.senders.GpxReader;
+import com.mendhak.gpslogger.senders.GpxTrackPointReader;
 import com.mendhak.gpslogger.senders.SenderSettingsFactory;
+import com.mendhak.gpslogger.senders.UploadLedger;
 import com.path.android.jobqueue.JobManager;
 import org.slf4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.SimpleDateFormat;
@@ -40,6 +40,10 @@ import java.util.*;
 public class OpenGTSManager extends FileSender {
 
     private static final Logger LOG = Logs.of(OpenGTSManager.class);
+    //Points read from a GPX file and queued at a time, so that a long track is never held in memory all at once
+    private static final int UPLOAD_BATCH_SIZE = 1000;
+    //Points sent per HTTP job, each job sends its points over one connection
+    private static final int HTTP_BATCH_SIZE = 100;
     private PreferenceHelper preferenceHelper;
 
     public OpenGTSManager(PreferenceHelper preferenceHelper) {
@@ -51,11 +55,8 @@ public class OpenGTSManager extends FileSender {
         // Use only gpx
         for (File f : files) {
             if (f.getName().endsWith(".gpx")) {
-                List<SerializableLocation> locations = getLocationsFromGPX(f);
-                LOG.debug(locations.size() + " points were read from " + f.getName());
-
-                sendLocations(locations.toArray(new SerializableLocation[locations.size()]));
-
+                int count = sendLocationsFromGPX(f);
+                LOG.debug(count + " points were read from " + f.getName());
             }
         }
     }
@@ -65,6 +66,7 @@ public class OpenGTSManager extends FileSender {
             OpenGTSSettings openGTSSettings = OpenGTSSettingsFactory.getOpenGTSSettings(preferenceHelper);
 
             if(openGTSSettings.getCommunicationMethod().equalsIgnoreCase("udp")){
+                OpenGtsUdpJob.setPacingMillis(preferenceHelper.getOpenGTSUdpPacingMillis());
                 JobManager jobManager = AppSettings.getJobManager();
                 jobManager.addJobInBackground(new OpenGtsUdpJob(openGTSSettings.getServer(),
                                                                 openGTSSettings.getPort(),
@@ -82,12 +84,30 @@ public class OpenGTSManager extends FileSender {
     }
 
     void sendByHttp(OpenGTSSettings openGTSSettings, SerializableLocation[] locations) {
-        for(SerializableLocation loc:locations){
-            String finalUrl = getUrl(openGTSSettings, loc);
+        JobManager jobManager = AppSettings.getJobManager();
+
+        for (String[] urls : getUrlBatches(openGTSSettings, locations, HTTP_BATCH_SIZE)) {
+            jobManager.addJobInBackground(new OpenGtsHttpJob(urls));
+        }
+    }
+
+    /**
+     * The request URLs for the locations, split into batches of at most batchSize
+     */
+    static List<String[]> getUrlBatches(OpenGTSSettings openGTSSettings, SerializableLocation[] locations, int batchSize) {
+        List<String[]> batches = new ArrayList<>();
+
+        for (int start = 0; start < locations.length; start += batchSize) {
+            String[] urls = new String[Math.min(batchSize, locations.length - start)];
 
-            JobManager jobManager = AppSettings.getJobManager();
-            jobManager.addJobInBackground(new CustomUrlJob(new CustomUrlRequest(finalUrl), new UploadEvents.OpenGTS()));
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = getUrl(openGTSSettings, locations[start + i]);
+            }
+
+            batches.add(urls);
         }
+
+        return batches;
     }
 
     /**
@@ -217,18 +237,49 @@ public class OpenGTSManager extends FileSender {
         return preferenceHelper.isOpenGtsAutoSendEnabled();
     }
 
-    private List<SerializableLocation> getLocationsFromGPX(File f) {
-        List<SerializableLocation> locations = Collections.emptyList();
+    private int sendLocationsFromGPX(File f) {
+        int count = 0;
+        GpxTrackPointReader reader = null;
+
         try {
-            locations = GpxReader.getPoints(f);
+            UploadLedger.Snapshot snapshot = UploadLedger.snapshot(f);
+            reader = new GpxTrackPointReader(f);
+            List<SerializableLocation> batch;
+
+            while (!(batch = reader.nextBatch(UPLOAD_BATCH_SIZE)).isEmpty()) {
+                sendLocations(batch.toArray(new SerializableLocation[batch.size()]));
+                count += batch.size();
+            }
+
+            //The points go out in many small jobs which retry by themselves, so the file counts as sent once they're queued
+            UploadLedger.getInstance().recordUploaded(getDestination(), snapshot);
         } catch (Exception e) {
-            LOG.error("OpenGTSManager.getLocationsFromGPX", e);
+            LOG.error("OpenGTSManager.sendLocationsFromGPX", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    LOG.error("OpenGTSManager.sendLocationsFromGPX", e);
+                }
+            }
         }
-        return locations;
+
+        return count;
     }
 
     @Override
     public boolean accept(File dir, String name) {
         return name.toLowerCase().contains(".gpx");
     }
+
+    /**
+     * Names the server, account and device points go to, so that a new one doesn't count as already having them
+     */
+    @Override
+    public String getDestination() {
+        OpenGTSSettings settings = OpenGTSSettingsFactory.getOpenGTSSettings(preferenceHelper);
+        return "opengts:" + settings.getCommunicationMethod() + "://" + settings.getAccountName() + "/" + settings.getDeviceID()
+                + "@" + settings.getServer() + ":" + settings.getPort() + "/" + settings.getServerPath();
+    }
 }
\ No newline at end of file
@@ -23,7 +23,10 @@ import com.mendhak.gpslogger.BuildConfig;
 import com.mendhak.gpslogger.common.PreferenceHelper;
 import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.events.UploadEvents;
+import com.mendhak.gpslogger.common.network.HttpClients;
 import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.senders.UploadConcurrency;
+import com.mendhak.gpslogger.senders.UploadLedger;
 import com.path.android.jobqueue.Job;
 import com.path.android.jobqueue.Params;
 import de.greenrobot.event.EventBus;
@@ -50,7 +53,7 @@ public class OSMJob extends Job {
     String visibility;
 
     protected OSMJob(OAuthConsumer consumer, String gpsTraceUrl, File chosenFile, String description, String tags, String visibility) {
-        super(new Params(1).requireNetwork().persist().addTags(getJobTag(chosenFile)));
+        super(new Params(1).requireNetwork().persist().groupBy(UploadConcurrency.groupFor(UploadConcurrency.OSM)).addTags(getJobTag(chosenFile)));
 
 //        this.consumer = consumer;
         this.gpsTraceUrl = gpsTraceUrl;
@@ -68,12 +71,12 @@ public class OSMJob extends Job {
 
     @Override
     public void onRun() throws Throwable {
-
+        UploadLedger.Snapshot snapshot = UploadLedger.snapshot(chosenFile);
 
         OkHttpOAuthConsumer consumer = new OkHttpOAuthConsumer(BuildConfig.OSM_CONSUMER_KEY, BuildConfig.OSM_CONSUMER_SECRET);
         consumer.setTokenWithSecret(PreferenceHelper.getInstance().getOSMAccessToken(), PreferenceHelper.getInstance().getOSMAccessTokenSecret());
 
-        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new SigningInterceptor(consumer)).build();
+        OkHttpClient client = HttpClients.getClient().newBuilder().addInterceptor(new SigningInterceptor(consumer)).build();
 
         RequestBody requestBody = new MultipartBody.Builder()
                 .setType(MultipartBody.FORM)
@@ -98,6 +101,7 @@ public class OSMJob extends Job {
         if(response.isSuccessful()){
             String message = body.string();
             LOG.debug("OSM Response body: " + message);
+            UploadLedger.getInstance().recordUploaded(OpenStreetMapManager.destinationFor(PreferenceHelper.getInstance().getOSMAccessToken()), snapshot);
             EventBus.getDefault().post(new UploadEvents.OpenStreetMap().succeeded());
         }
         else {
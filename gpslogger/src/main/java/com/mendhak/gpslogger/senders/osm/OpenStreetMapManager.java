@@ -25,6 +25,7 @@ import com.mendhak.gpslogger.common.PreferenceHelper;
 import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.slf4j.Logs;
 import com.mendhak.gpslogger.senders.FileSender;
+import com.mendhak.gpslogger.senders.UploadLedger;
 import com.path.android.jobqueue.CancelResult;
 import com.path.android.jobqueue.JobManager;
 import com.path.android.jobqueue.TagConstraint;
@@ -133,6 +134,18 @@ public class OpenStreetMapManager extends FileSender {
         return name.toLowerCase().contains(".gpx");
     }
 
+    @Override
+    public String getDestination() {
+        return destinationFor(preferenceHelper.getOSMAccessToken());
+    }
+
+    /**
+     * Names the authorized account by its token, so that files aren't skipped after authorizing another one
+     */
+    static String destinationFor(String accessToken) {
+        return "osm:" + UploadLedger.fingerprint(accessToken);
+    }
+
 }
 
 
@@ -25,6 +25,9 @@ import com.mendhak.gpslogger.common.network.LocalX509TrustManager;
 import com.mendhak.gpslogger.common.network.Networks;
 import com.mendhak.gpslogger.common.events.UploadEvents;
 import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.senders.DeltaSync;
+import com.mendhak.gpslogger.senders.UploadConcurrency;
+import com.mendhak.gpslogger.senders.UploadLedger;
 import com.owncloud.android.lib.common.OwnCloudClient;
 import com.owncloud.android.lib.common.OwnCloudClientFactory;
 import com.owncloud.android.lib.common.OwnCloudCredentialsFactory;
@@ -35,6 +38,8 @@ import com.owncloud.android.lib.common.operations.RemoteOperation;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult;
 import com.owncloud.android.lib.resources.files.CreateRemoteFolderOperation;
 import com.owncloud.android.lib.resources.files.FileUtils;
+import com.owncloud.android.lib.resources.files.ReadRemoteFileOperation;
+import com.owncloud.android.lib.resources.files.RemoteFile;
 import com.owncloud.android.lib.resources.files.UploadRemoteFileOperation;
 import com.path.android.jobqueue.Job;
 import com.path.android.jobqueue.Params;
@@ -55,10 +60,12 @@ public class OwnCloudJob extends Job implements OnRemoteOperationListener {
     OwnCloudSettings settings;
     File localFile;
     String remoteFileName;
+    private transient DeltaSync.Delta delta;
+    private transient UploadLedger.Snapshot snapshot;
 
     public OwnCloudJob(OwnCloudSettings settings, File localFile, String remoteFileName)
     {
-        super(new Params(1).requireNetwork().persist().addTags(getJobTag(localFile)));
+        super(new Params(1).requireNetwork().persist().groupBy(UploadConcurrency.groupFor(UploadConcurrency.OWNCLOUD)).addTags(getJobTag(localFile)));
         this.settings= settings;
         this.localFile = localFile;
         this.remoteFileName = remoteFileName;
@@ -103,11 +110,36 @@ public class OwnCloudJob extends Job implements OnRemoteOperationListener {
         createOperation.execute(client);
 
         String remotePath = settings.getDirectory() + FileUtils.PATH_SEPARATOR + localFile.getName();
+
+        //WebDAV has no way to write part of a file, so a changed file is always sent in full; an unchanged one is skipped
+        String remoteKey = settings.getServername() + "|" + settings.getUsername() + "|" + remotePath;
+        snapshot = UploadLedger.snapshot(localFile);
+        delta = DeltaSync.getInstance().plan(remoteKey, localFile);
+        if (delta.isUpToDate() && delta.remoteMatches(getRemoteLength(client, remotePath))) {
+            LOG.debug("ownCloud Job: '" + localFile.getName() + "' is already up to date");
+            delta = null;
+            UploadLedger.getInstance().recordUploaded(OwnCloudManager.destinationFor(settings), snapshot);
+            EventBus.getDefault().post(new UploadEvents.OwnCloud().succeeded());
+            return;
+        }
+        delta = delta.fullUpload();
+
         String mimeType = "application/octet-stream"; //unused
         UploadRemoteFileOperation uploadOperation = new UploadRemoteFileOperation(localFile.getAbsolutePath(), remotePath, mimeType);
         uploadOperation.execute(client,this,null);
     }
 
+    /**
+     * Length of the remote file, or -1 if it can't be read
+     */
+    private static long getRemoteLength(OwnCloudClient client, String remotePath) {
+        RemoteOperationResult result = new ReadRemoteFileOperation(remotePath).execute(client);
+        if (result.isSuccess() && result.getData() != null && !result.getData().isEmpty()) {
+            return ((RemoteFile) result.getData().get(0)).getLength();
+        }
+        return -1;
+    }
+
     @Override
     protected void onCancel() {
         LOG.debug("ownCloud Job: onCancel");
@@ -126,6 +158,10 @@ public class OwnCloudJob extends Job implements OnRemoteOperationListener {
             LOG.error(result.getLogMessage(), result.getException());
             EventBus.getDefault().post(new UploadEvents.OwnCloud().failed(result.getLogMessage(), result.getException()));
         } else  {
+            if (delta != null) {
+                DeltaSync.getInstance().commit(delta);
+            }
+            UploadLedger.getInstance().recordUploaded(OwnCloudManager.destinationFor(settings), snapshot);
             EventBus.getDefault().post(new UploadEvents.OwnCloud().succeeded());
         }
 
@@ -93,5 +93,17 @@ public class OwnCloudManager extends FileSender
         return true;
     }
 
+    @Override
+    public String getDestination() {
+        return destinationFor(OwnCloudSettingsFactory.getOwnCloudSettings(preferenceHelper));
+    }
+
+    /**
+     * Names the server, account and directory files go to, so that a new one doesn't count as already having them
+     */
+    static String destinationFor(OwnCloudSettings settings) {
+        return "owncloud:" + settings.getUsername() + "@" + settings.getServername() + "/" + settings.getDirectory();
+    }
+
 
 }
\ No newline at end of file
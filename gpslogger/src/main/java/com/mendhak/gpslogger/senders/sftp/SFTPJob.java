@@ -6,6 +6,10 @@ import com.jcraft.jsch.*;
 import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.common.events.UploadEvents;
 import com.mendhak.gpslogger.common.slf4j.Logs;
+import com.mendhak.gpslogger.common.network.BandwidthLimiter;
+import com.mendhak.gpslogger.senders.DeltaSync;
+import com.mendhak.gpslogger.senders.UploadConcurrency;
+import com.mendhak.gpslogger.senders.UploadLedger;
 import com.path.android.jobqueue.Job;
 import com.path.android.jobqueue.Params;
 import de.greenrobot.event.EventBus;
@@ -19,7 +23,7 @@ public class SFTPJob extends Job {
     private final SFTPSettings settings;
 
     public SFTPJob(File localFile, SFTPSettings settings){
-        super(new Params(1).requireNetwork().persist().addTags(getJobTag(localFile)));
+        super(new Params(1).requireNetwork().persist().groupBy(UploadConcurrency.groupFor(UploadConcurrency.SFTP)).addTags(getJobTag(localFile)));
         this.localFile = localFile;
         this.settings = settings;
     }
@@ -34,7 +38,7 @@ public class SFTPJob extends Job {
         LOG.debug("SFTP Job onRun");
         com.jcraft.jsch.Session session = null;
         final JSch jsch = new JSch();
-        FileInputStream fis = null;
+        InputStream fis = null;
 
         try {
             String keystring = this.settings.getKnownHostKey();
@@ -66,14 +70,50 @@ public class SFTPJob extends Job {
                 ChannelSftp channelSftp = (ChannelSftp) channel;
                 LOG.debug("Changing directory to " + this.settings.getRemoteServerPath());
                 channelSftp.cd(this.settings.getRemoteServerPath());
-                LOG.debug("Uploading " + this.localFile.getName() + " to remote server");
-                channelSftp.put(new FileInputStream(this.localFile), this.localFile.getName(), ChannelSftp.OVERWRITE);
+                String fileName = this.localFile.getName();
+                String remoteKey = "sftp://" + this.settings.getUser() + "@" + this.settings.getHost() + ":"
+                        + this.settings.getPort() + "/" + this.settings.getRemoteServerPath() + "/" + fileName;
+                UploadLedger.Snapshot snapshot = UploadLedger.snapshot(this.localFile);
+                DeltaSync.Delta delta = DeltaSync.getInstance().plan(remoteKey, this.localFile);
+                if (!delta.isFullUpload() && !delta.remoteMatches(getRemoteSize(channelSftp, fileName))) {
+                    LOG.debug("Remote file " + fileName + " is not as last uploaded, sending it in full");
+                    delta = delta.fullUpload();
+                }
+
+                if (delta.isUpToDate()) {
+                    LOG.debug("Remote file " + fileName + " is already up to date");
+                } else {
+                    fis = BandwidthLimiter.getInstance().throttle(delta.openStream());
+                    if (delta.isFullUpload()) {
+                        LOG.debug("Uploading " + fileName + " to remote server");
+                        channelSftp.put(fis, fileName, ChannelSftp.OVERWRITE);
+                    } else if (delta.isAppend()) {
+                        LOG.debug("Appending from byte " + delta.getOffset() + " of " + fileName);
+                        channelSftp.put(fis, fileName, ChannelSftp.APPEND);
+                    } else {
+                        //RESUME opens the remote file without truncating it, and positions writes relative to its current size
+                        LOG.debug("Rewriting from byte " + delta.getOffset() + " of " + fileName);
+                        OutputStream remote = channelSftp.put(fileName, null, ChannelSftp.RESUME,
+                                delta.getOffset() - delta.getRemoteLength());
+                        try {
+                            byte[] buffer = new byte[32 * 1024];
+                            int read;
+                            while ((read = fis.read(buffer)) != -1) {
+                                remote.write(buffer, 0, read);
+                            }
+                        } finally {
+                            remote.close();
+                        }
+                    }
+                    DeltaSync.getInstance().commit(delta);
+                }
 
                 LOG.debug("Disconnecting");
                 channelSftp.disconnect();
                 channel.disconnect();
                 session.disconnect();
 
+                UploadLedger.getInstance().recordUploaded(SFTPManager.destinationFor(this.settings), snapshot);
                 EventBus.getDefault().post(new UploadEvents.SFTP().succeeded());
             } else {
                 EventBus.getDefault().post(new UploadEvents.SFTP().failed("Could not connect, unknown reasons", null));
@@ -104,6 +144,17 @@ public class SFTPJob extends Job {
         }
     }
 
+    /**
+     * Size of a file in the current remote directory, or -1 if it doesn't exist
+     */
+    private static long getRemoteSize(ChannelSftp channelSftp, String fileName) {
+        try {
+            return channelSftp.stat(fileName).getSize();
+        } catch (SftpException e) {
+            return -1;
+        }
+    }
+
     @Override
     protected void onCancel() {
 
@@ -53,4 +53,16 @@ public class SFTPManager extends FileSender {
     public boolean accept(File file, String s) {
         return true;
     }
+
+    @Override
+    public String getDestination() {
+        return destinationFor(SFTPSettingsFactory.getSFTPSettings(preferenceHelper));
+    }
+
+    /**
+     * Names the server, account and directory files go to, so that a new one doesn't count as already having them
+     */
+    static String destinationFor(SFTPSettings settings) {
+        return "sftp://" + settings.getUser() + "@" + settings.getHost() + ":" + settings.getPort() + "/" + settings.getRemoteServerPath();
+    }
 }
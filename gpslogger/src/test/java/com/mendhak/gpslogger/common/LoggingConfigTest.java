@@ -0,0 +1,72 @@
+package com.mendhak.gpslogger.common;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class LoggingConfigTest {
+
+    private PreferenceHelper withListeners(String... listeners) {
+        PreferenceHelper ph = mock(PreferenceHelper.class);
+        when(ph.getChosenListeners()).thenReturn(new HashSet<>(Arrays.asList(listeners)));
+        return ph;
+    }
+
+    @Test
+    public void Constructor_Preferences_ReadIntoFields() {
+        PreferenceHelper ph = withListeners("gps");
+        when(ph.getMinimumLoggingInterval()).thenReturn(60);
+        when(ph.getMinimumAccuracy()).thenReturn(40);
+        when(ph.getMinimumDistanceInterval()).thenReturn(15);
+        when(ph.getLoggingRetryPeriod()).thenReturn(30);
+        when(ph.shouldLogToNmea()).thenReturn(true);
+
+        LoggingConfig config = new LoggingConfig(ph);
+
+        assertThat("Interval in milliseconds", config.minimumLoggingIntervalMillis, is(60000L));
+        assertThat("Accuracy", config.minimumAccuracy, is(40));
+        assertThat("Distance", config.minimumDistanceInterval, is(15));
+        assertThat("Retry period in milliseconds", config.loggingRetryPeriodMillis, is(30000L));
+        assertThat("NMEA logging", config.logToNmea, is(true));
+        assertThat("Listening to GPS", config.listensToGps, is(true));
+        assertThat("Not listening to network", config.listensToNetwork, is(false));
+    }
+
+    @Test
+    public void AcceptsProvider_GpsOnly_OnlyGpsAccepted() {
+        LoggingConfig config = new LoggingConfig(withListeners("gps", "passive"));
+
+        assertThat("GPS accepted", config.acceptsProvider("gps"), is(true));
+        assertThat("Network rejected", config.acceptsProvider("network"), is(false));
+    }
+
+    @Test
+    public void AcceptsProvider_NetworkOnly_GpsRejected() {
+        LoggingConfig config = new LoggingConfig(withListeners("network"));
+
+        assertThat("GPS rejected", config.acceptsProvider("gps"), is(false));
+        assertThat("Network accepted", config.acceptsProvider("network"), is(true));
+    }
+
+    @Test
+    public void AcceptsProvider_PassiveOnlyOrBoth_AllAccepted() {
+        LoggingConfig passiveOnly = new LoggingConfig(withListeners("passive"));
+        assertThat("Passive only accepts GPS", passiveOnly.acceptsProvider("gps"), is(true));
+        assertThat("Passive only accepts network", passiveOnly.acceptsProvider("network"), is(true));
+
+        LoggingConfig both = new LoggingConfig(withListeners("gps", "network"));
+        assertThat("Both accepts GPS", both.acceptsProvider("gps"), is(true));
+        assertThat("Both accepts network", both.acceptsProvider("network"), is(true));
+    }
+}
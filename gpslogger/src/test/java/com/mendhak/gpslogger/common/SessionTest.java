@@ -0,0 +1,105 @@
+package com.mendhak.gpslogger.common;
+
+import android.content.SharedPreferences;
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class SessionTest {
+
+    private SharedPreferences prefs;
+    private SharedPreferences.Editor editor;
+
+    @Before
+    public void setUp() {
+        prefs = mock(SharedPreferences.class);
+        editor = mock(SharedPreferences.Editor.class);
+        when(prefs.edit()).thenReturn(editor);
+        when(editor.putString(anyString(), anyString())).thenReturn(editor);
+        when(prefs.getString(anyString(), anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                return (String) invocation.getArguments()[1];
+            }
+        });
+    }
+
+    @Test
+    public void Constructor_SavedSession_ValuesLoaded() {
+        when(prefs.getString("SESSION_LOGGING_STARTED", "false")).thenReturn("true");
+        when(prefs.getString("SESSION_totalTravelled", "0")).thenReturn("1234.5");
+        when(prefs.getString("SESSION_currentFileName", "")).thenReturn("20170101");
+
+        Session session = new Session(prefs);
+
+        assertThat("Logging started", session.isStarted(), is(true));
+        assertThat("Distance travelled", session.getTotalTravelled(), is(1234.5));
+        assertThat("File name", session.getCurrentFileName(), is("20170101"));
+    }
+
+    @Test
+    public void SetLatestTimeStamp_PerFix_NotWrittenStraightAway() {
+        Session session = new Session(prefs);
+
+        for (int i = 1; i <= 100; i++) {
+            session.setLatestTimeStamp(i);
+        }
+
+        assertThat("Value available in memory", session.getLatestTimeStamp(), is(100L));
+        verify(prefs, never()).edit();
+    }
+
+    @Test
+    public void Persist_AfterChanges_WrittenOnce() {
+        Session session = new Session(prefs);
+        session.setLatestTimeStamp(123);
+        session.setTotalTravelled(10);
+
+        session.persist();
+        session.persist();
+
+        verify(prefs, times(1)).edit();
+        verify(editor).putString("SESSION_latestTimeStamp", "123");
+        verify(editor).putString("SESSION_totalTravelled", "10.0");
+        verify(editor, times(1)).apply();
+    }
+
+    @Test
+    public void Persist_NothingChanged_NothingWritten() {
+        Session session = new Session(prefs);
+
+        session.persist();
+
+        verify(prefs, never()).edit();
+    }
+
+    @Test
+    public void SetStarted_WrittenStraightAway() {
+        Session session = new Session(prefs);
+
+        session.setStarted(true);
+
+        verify(editor).putString("SESSION_LOGGING_STARTED", "true");
+        verify(editor).apply();
+    }
+
+    @Test
+    public void SetCurrentFileName_Null_EmptyString() {
+        Session session = new Session(prefs);
+
+        session.setCurrentFileName(null);
+
+        assertThat("Null treated as no file name", session.getCurrentFileName(), is(""));
+    }
+}
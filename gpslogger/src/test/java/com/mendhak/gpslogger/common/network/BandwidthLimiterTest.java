@@ -0,0 +1,70 @@
+package com.mendhak.gpslogger.common.network;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class BandwidthLimiterTest {
+
+    private static long timeToRead(BandwidthLimiter limiter, int bytes) throws Exception {
+        InputStream inputStream = limiter.throttle(new ByteArrayInputStream(new byte[bytes]));
+        byte[] buffer = new byte[4096];
+        long start = System.nanoTime();
+        while (inputStream.read(buffer) != -1) {
+            //Just reading
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    @Test
+    public void Throttle_NoLimit_ReadsImmediately() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setKilobytesPerSecond(0);
+
+        assertThat("No waiting without a limit", timeToRead(limiter, 1024 * 1024) < 200, is(true));
+    }
+
+    @Test
+    public void Throttle_Limited_ReadsAtConfiguredRate() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setKilobytesPerSecond(100);
+
+        long millis = timeToRead(limiter, 50 * 1024);
+
+        assertThat("50KB at 100KB/s takes about half a second, took " + millis, millis >= 450 && millis < 1500, is(true));
+    }
+
+    @Test
+    public void Acquire_SharedBetweenStreams_CombinedRateLimited() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setKilobytesPerSecond(100);
+
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    timeToRead(limiter, 25 * 1024);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        long start = System.nanoTime();
+        other.start();
+        timeToRead(limiter, 25 * 1024);
+        other.join();
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        assertThat("Two 25KB uploads share 100KB/s, took " + millis, millis >= 450, is(true));
+    }
+}
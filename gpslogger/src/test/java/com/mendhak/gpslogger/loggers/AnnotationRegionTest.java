@@ -0,0 +1,84 @@
+package com.mendhak.gpslogger.loggers;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class AnnotationRegionTest {
+
+    private static final String HEADER = "<gpx>";
+
+    private String read(File file) throws Exception {
+        return new String(Streams.getByteArrayFromInputStream(new FileInputStream(file)));
+    }
+
+    @Test
+    public void Write_ReservedSpace_AnnotationsWrittenInPlace() throws Exception {
+        File file = File.createTempFile("region", ".gpx");
+        file.deleteOnExit();
+
+        FileSink sink = FileSink.open(file);
+        sink.append((HEADER + AnnotationRegion.getPadding() + "<trk></trk></gpx>").getBytes());
+
+        AnnotationRegion region = AnnotationRegion.find(sink, HEADER.length(), "<trk>");
+        region.write(sink, "<wpt1/>".getBytes());
+        region.write(sink, "<wpt2/>".getBytes());
+        long sizeBefore = sink.size();
+        sink.close();
+
+        String actual = read(file);
+        assertThat("File length is unchanged", file.length(), is(sizeBefore));
+        assertThat("Annotations follow the header in order", actual.startsWith(HEADER + "<wpt1/><wpt2/>   "), is(true));
+        assertThat("Track is untouched", actual.endsWith("   <trk></trk></gpx>"), is(true));
+    }
+
+    @Test
+    public void Find_PartlyUsedRegion_ContinuesAfterLastAnnotation() throws Exception {
+        File file = File.createTempFile("region", ".gpx");
+        file.deleteOnExit();
+
+        FileSink sink = FileSink.open(file);
+        sink.append((HEADER + "<wpt1/>    <trk></trk></gpx>").getBytes());
+
+        AnnotationRegion region = AnnotationRegion.find(sink, HEADER.length(), "<trk>");
+
+        assertThat("Fits in the remaining space", region.fits(4), is(true));
+        assertThat("Does not fit beyond the remaining space", region.fits(5), is(false));
+
+        region.write(sink, "<w/>".getBytes());
+        sink.close();
+
+        assertThat("Written after the existing annotation", read(file), is(HEADER + "<wpt1/><w/><trk></trk></gpx>"));
+    }
+
+    @Test
+    public void RewriteWithRoom_RegionFull_AnnotationAddedWithMoreSpace() throws Exception {
+        File file = File.createTempFile("region", ".gpx");
+        file.deleteOnExit();
+
+        FileSink sink = FileSink.open(file);
+        sink.append((HEADER + "<wpt1/><trk></trk></gpx>").getBytes());
+        AnnotationRegion region = AnnotationRegion.find(sink, HEADER.length(), "<trk>");
+        sink.close();
+
+        assertThat("Full region has no space", region.fits(1), is(false));
+
+        region.rewriteWithRoom("<wpt2/>".getBytes());
+
+        String actual = read(file);
+        assertThat("New annotation follows the old one", actual.startsWith(HEADER + "<wpt1/><wpt2/> "), is(true));
+        assertThat("Reserved space added", actual.length(),
+                is((HEADER + "<wpt1/><wpt2/><trk></trk></gpx>").length() + AnnotationRegion.RESERVED_LENGTH));
+        assertThat("Track is untouched", actual.endsWith(" <trk></trk></gpx>"), is(true));
+    }
+}
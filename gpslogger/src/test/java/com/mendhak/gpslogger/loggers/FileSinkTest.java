@@ -0,0 +1,86 @@
+package com.mendhak.gpslogger.loggers;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class FileSinkTest {
+
+    @Test
+    public void WriteBeforeTrailer_MultiplePoints_TrailerOverwrittenEachTime() throws Exception {
+        File file = File.createTempFile("filesink", ".gpx");
+        file.deleteOnExit();
+
+        FileSink sink = FileSink.open(file);
+        sink.append("<gpx><trk></trk></gpx>".getBytes());
+        sink.writeBeforeTrailer("</trk></gpx>".length(), "<trkseg><trkpt/></trkseg></trk></gpx>".getBytes());
+        sink.writeBeforeTrailer("</trkseg></trk></gpx>".length(), "<trkpt/></trkseg></trk></gpx>".getBytes());
+        sink.close();
+
+        String actual = new String(Streams.getByteArrayFromInputStream(new java.io.FileInputStream(file)));
+
+        assertThat("Trailer is replaced in place", actual, is("<gpx><trk><trkseg><trkpt/><trkpt/></trkseg></trk></gpx>"));
+        assertThat("Tracked size matches file length", sink.size(), is(file.length()));
+    }
+
+    @Test
+    public void Open_ExistingFile_SizeIsFileLength() throws Exception {
+        File file = File.createTempFile("filesink", ".gpx");
+        file.deleteOnExit();
+
+        FileSink first = FileSink.open(file);
+        first.append("<gpx></gpx>".getBytes());
+        first.close();
+
+        FileSink second = FileSink.open(file);
+        assertThat("Reopened sink continues from the end", second.size(), is(11L));
+        assertThat("Sink recognises its file", second.isFor(new File(file.getAbsolutePath())), is(true));
+        second.close();
+    }
+
+    @Test
+    public void Flush_BatchOfPoints_WrittenOnlyOnFlush() throws Exception {
+        File file = File.createTempFile("filesink", ".gpx");
+        file.deleteOnExit();
+
+        FileSink sink = FileSink.open(file);
+        sink.append("<gpx></gpx>".getBytes());
+        sink.writeBeforeTrailer("</gpx>".length(), "<wpt/></gpx>".getBytes());
+        sink.writeBeforeTrailer("</gpx>".length(), "<wpt/></gpx>".getBytes());
+
+        assertThat("Nothing reaches the file before flush", file.length(), is(0L));
+        assertThat("Pending writes are counted", sink.getPendingWrites(), is(3));
+
+        sink.flush();
+
+        String actual = new String(Streams.getByteArrayFromInputStream(new java.io.FileInputStream(file)));
+        assertThat("Batch is committed", actual, is("<gpx><wpt/><wpt/></gpx>"));
+        assertThat("Pending writes reset", sink.getPendingWrites(), is(0));
+        sink.close();
+    }
+
+    @Test
+    public void Flush_TrailerShrinks_FileTruncated() throws Exception {
+        File file = File.createTempFile("filesink", ".kml");
+        file.deleteOnExit();
+
+        FileSink sink = FileSink.open(file);
+        sink.append("<kml><long-trailer/></kml>".getBytes());
+        sink.flush();
+        sink.writeBeforeTrailer("<long-trailer/></kml>".length(), "</kml>".getBytes());
+        sink.flush();
+        sink.close();
+
+        String actual = new String(Streams.getByteArrayFromInputStream(new java.io.FileInputStream(file)));
+        assertThat("Stale bytes past the new end are removed", actual, is("<kml></kml>"));
+    }
+}
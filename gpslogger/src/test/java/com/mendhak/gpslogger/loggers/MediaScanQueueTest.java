@@ -0,0 +1,109 @@
+package com.mendhak.gpslogger.loggers;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class MediaScanQueueTest {
+
+    private final List<List<String>> scans = new ArrayList<>();
+    private MediaScanQueue queue;
+
+    @Before
+    public void setUp() {
+        scans.clear();
+        queue = new MediaScanQueue(new MediaScanQueue.Scanner() {
+            @Override
+            public void scan(String[] paths, String[] mimeTypes) {
+                synchronized (scans) {
+                    scans.add(Arrays.asList(paths));
+                }
+            }
+        }, 60000);
+    }
+
+    @Test
+    public void Request_SameFileRepeatedly_ScannedOnce() {
+        File gpx = new File("/sdcard/GPSLogger/20170101.gpx");
+        for (int i = 0; i < 10; i++) {
+            queue.request(gpx, "text/plain");
+        }
+
+        assertThat("Nothing scanned until flushed", scans.size(), is(0));
+
+        queue.flush();
+
+        assertThat("One scan", scans.size(), is(1));
+        assertThat("Of the file", scans.get(0), is(Arrays.asList(gpx.getPath())));
+        assertThat("Nine scans avoided", queue.getScansAvoided(), is(9L));
+        assertThat("One scan requested", queue.getScansRequested(), is(1L));
+    }
+
+    @Test
+    public void Flush_SeveralFormats_ScannedTogether() {
+        queue.request(new File("/sdcard/GPSLogger/20170101.gpx"), "text/plain");
+        queue.request(new File("/sdcard/GPSLogger/20170101.kml"), "text/xml");
+        queue.request(new File("/sdcard/GPSLogger/20170101.csv"), "text/csv");
+
+        queue.flush();
+        queue.flush();
+
+        assertThat("One call for all the files", scans.size(), is(1));
+        assertThat("All three files", scans.get(0).size(), is(3));
+    }
+
+    @Test
+    public void Request_NewFileSameExtension_OldFileScannedStraightAway() {
+        queue.request(new File("/sdcard/GPSLogger/20170101.gpx"), "text/plain");
+        queue.request(new File("/sdcard/GPSLogger/20170101.kml"), "text/xml");
+
+        queue.request(new File("/sdcard/GPSLogger/20170102.gpx"), "text/plain");
+
+        assertThat("Rolled over file scanned", scans.size(), is(1));
+        assertThat("Only the old GPX file", scans.get(0), is(Arrays.asList("/sdcard/GPSLogger/20170101.gpx")));
+
+        queue.flush();
+
+        assertThat("The rest on flush", scans.get(1),
+                is(Arrays.asList("/sdcard/GPSLogger/20170101.kml", "/sdcard/GPSLogger/20170102.gpx")));
+    }
+
+    @Test
+    public void Request_DelayPassed_ScannedByTimer() throws Exception {
+        queue = new MediaScanQueue(new MediaScanQueue.Scanner() {
+            @Override
+            public void scan(String[] paths, String[] mimeTypes) {
+                synchronized (scans) {
+                    scans.add(Arrays.asList(paths));
+                }
+            }
+        }, 50);
+
+        queue.request(new File("/sdcard/GPSLogger/20170101.csv"), "text/csv");
+
+        for (int i = 0; i < 100; i++) {
+            synchronized (scans) {
+                if (!scans.isEmpty()) {
+                    break;
+                }
+            }
+            Thread.sleep(20);
+        }
+
+        synchronized (scans) {
+            assertThat("Scanned without being flushed", scans.size(), is(1));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.mendhak.gpslogger.loggers;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class PointEncoderTest {
+
+    @Test
+    public void AppendFixed_Coordinates_SameAsStringFormat() {
+        double[] values = {12.193, -0.0014, 51.4778, 0.0000005, -1.0000005, 9.9999995, 179.99999999, 1.0E-7, 0.0};
+
+        for (double value : values) {
+            StringBuilder sb = new StringBuilder();
+            PointEncoder.appendFixed(sb, value, 6);
+            assertThat("Fixed decimals for " + value, sb.toString(), is(String.format(Locale.US, "%f", value)));
+        }
+    }
+
+    @Test
+    public void AppendFixed_RoundsUpIntoNewDigit_CarryApplied() {
+        StringBuilder sb = new StringBuilder("lat=");
+        PointEncoder.appendFixed(sb, 99.9999996, 6);
+        assertThat("Carry reaches the integer part", sb.toString(), is("lat=100.000000"));
+    }
+
+    @Test
+    public void GetBuilder_CalledAgain_ReturnsEmptyBuilder() {
+        PointEncoder.getBuilder().append("<trkpt/>");
+        assertThat("Builder is cleared for the next point", PointEncoder.getBuilder().length(), is(0));
+    }
+}
@@ -0,0 +1,65 @@
+package com.mendhak.gpslogger.loggers;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.Serializable;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class SpillQueueTest {
+
+    static class NamedHandler implements Runnable, Serializable {
+        String name;
+
+        NamedHandler(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    @Test
+    public void Poll_SeveralPushed_ReturnedInOrder() throws Exception {
+        File file = File.createTempFile("spill", ".bin");
+        file.deleteOnExit();
+
+        SpillQueue queue = new SpillQueue(file);
+        queue.push(new NamedHandler("first"));
+        queue.push(new NamedHandler("second"));
+        queue.push(new NamedHandler("third"));
+
+        assertThat("All handlers are counted", queue.size(), is(3));
+        assertThat("Oldest comes out first", ((NamedHandler) queue.poll()).name, is("first"));
+        assertThat("Then the next", ((NamedHandler) queue.poll()).name, is("second"));
+
+        queue.push(new NamedHandler("fourth"));
+
+        assertThat("Pushing while draining keeps the order", ((NamedHandler) queue.poll()).name, is("third"));
+        assertThat("Newest comes out last", ((NamedHandler) queue.poll()).name, is("fourth"));
+        assertThat("Queue is drained", queue.isEmpty(), is(true));
+    }
+
+    @Test
+    public void Poll_Drained_FileEmptied() throws Exception {
+        File file = File.createTempFile("spill", ".bin");
+        file.deleteOnExit();
+
+        SpillQueue queue = new SpillQueue(file);
+        queue.push(new NamedHandler("only"));
+        queue.poll();
+
+        assertThat("Nothing left to poll", queue.poll(), is(nullValue()));
+        assertThat("Spill file no longer takes up space", file.length(), is(0L));
+    }
+}
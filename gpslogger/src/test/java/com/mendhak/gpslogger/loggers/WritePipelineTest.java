@@ -0,0 +1,206 @@
+package com.mendhak.gpslogger.loggers;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class WritePipelineTest {
+
+    private static final String POINT = "<trkpt/>";
+
+    @After
+    public void tearDown() {
+        WritePipeline.close();
+        WritePipeline.flushAndWait();
+        WritePipeline.setFlushPolicy(1, 0);
+    }
+
+    private File createFile() throws IOException {
+        File file = File.createTempFile("writepipeline", ".gpx");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private void write(final String loggerName, final File file) {
+        WritePipeline.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    WritePipeline.getSink(loggerName, file).append(POINT);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * The length of the file in storage once everything queued so far has run, without asking for a flush
+     */
+    private long lengthOnDiskAfterQueue(final File file) throws InterruptedException {
+        final AtomicLong length = new AtomicLong(-1);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        WritePipeline.execute(new Runnable() {
+            @Override
+            public void run() {
+                length.set(file.length());
+                done.countDown();
+            }
+        });
+
+        assertThat("Pipeline ran the probe", done.await(5, TimeUnit.SECONDS), is(true));
+        return length.get();
+    }
+
+    @Test
+    public void Execute_FewerPointsThanBatch_NotCommitted() throws Exception {
+        WritePipeline.setFlushPolicy(3, 0);
+        File file = createFile();
+
+        write("below", file);
+        write("below", file);
+
+        assertThat("Points held in memory", lengthOnDiskAfterQueue(file), is(0L));
+    }
+
+    @Test
+    public void Execute_BatchSizeReached_Committed() throws Exception {
+        WritePipeline.setFlushPolicy(3, 0);
+        File file = createFile();
+
+        write("batch", file);
+        write("batch", file);
+        write("batch", file);
+
+        assertThat("Batch written together", lengthOnDiskAfterQueue(file), is((long) POINT.length() * 3));
+    }
+
+    @Test
+    public void Execute_IntervalPassed_CommittedByTimer() throws Exception {
+        WritePipeline.setFlushPolicy(100, 50);
+        File file = createFile();
+
+        write("interval", file);
+        assertThat("Not written straight away", lengthOnDiskAfterQueue(file), is(0L));
+
+        for (int i = 0; i < 100 && file.length() == 0; i++) {
+            Thread.sleep(20);
+        }
+
+        assertThat("Written once the oldest point is old enough", file.length(), is((long) POINT.length()));
+    }
+
+    @Test
+    public void FlushAndWait_AfterQueuedPoints_AllCommittedOnReturn() throws Exception {
+        WritePipeline.setFlushPolicy(100, 0);
+        File file = createFile();
+
+        for (int i = 0; i < 10; i++) {
+            write("ordering", file);
+        }
+        WritePipeline.flushAndWait();
+
+        assertThat("Points queued before the flush are in the file", file.length(), is((long) POINT.length() * 10));
+    }
+
+    @Test
+    public void Close_PendingPoints_CommittedAndFileReleased() throws Exception {
+        WritePipeline.setFlushPolicy(100, 0);
+        final File file = createFile();
+        final AtomicReference<FileSink> before = new AtomicReference<>();
+        final AtomicReference<FileSink> after = new AtomicReference<>();
+
+        write("close", file);
+        WritePipeline.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    before.set(WritePipeline.getSink("close", file));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        WritePipeline.close();
+        WritePipeline.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    after.set(WritePipeline.getSink("close", file));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        WritePipeline.flushAndWait();
+
+        assertThat("Pending point written on close", file.length(), is((long) POINT.length()));
+        assertThat("File reopened after close", after.get(), not(before.get()));
+    }
+
+    @Test
+    public void FlushAndWait_QueueFull_CountedAsCommandNotPoint() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        WritePipeline.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertThat("Pipeline busy", started.await(5, TimeUnit.SECONDS), is(true));
+
+        //Fill the in-memory queue, the handler that doesn't fit can't be spilled either and is dropped
+        long queued;
+        do {
+            queued = WritePipeline.getQueuedCount();
+            WritePipeline.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+        } while (WritePipeline.getQueuedCount() > queued);
+
+        long droppedPoints = WritePipeline.getDroppedCount();
+        long droppedCommands = WritePipeline.getDroppedCommandCount();
+
+        //The flush can't be spilled as it only lives in memory, so it is dropped and the caller gives up waiting
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WritePipeline.flushAndWait();
+            }
+        });
+        waiter.setDaemon(true);
+        waiter.start();
+
+        for (int i = 0; i < 100 && WritePipeline.getDroppedCommandCount() == droppedCommands; i++) {
+            Thread.sleep(20);
+        }
+        release.countDown();
+
+        assertThat("Flush counted as a dropped command", WritePipeline.getDroppedCommandCount(), is(droppedCommands + 1));
+        assertThat("Not counted as a lost point", WritePipeline.getDroppedCount(), is(droppedPoints));
+    }
+}
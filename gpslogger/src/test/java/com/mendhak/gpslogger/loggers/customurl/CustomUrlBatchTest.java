@@ -0,0 +1,185 @@
+package com.mendhak.gpslogger.loggers.customurl;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class CustomUrlBatchTest {
+
+    private final List<CustomUrlRequest> sent = new ArrayList<>();
+    private final List<Integer> sentPoints = new ArrayList<>();
+    private final CustomUrlBatch.Sender sender = new CustomUrlBatch.Sender() {
+        @Override
+        public void send(CustomUrlRequest request, int points) {
+            sent.add(request);
+            sentPoints.add(points);
+        }
+    };
+    private CustomUrlBatch batch;
+
+    @Before
+    public void setUp() {
+        sent.clear();
+        sentPoints.clear();
+        batch = new CustomUrlBatch(sender);
+    }
+
+    private File createPendingFile() throws IOException {
+        File file = File.createTempFile("customurl", ".pending");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void Add_BatchFull_SentAsJsonArray() {
+        batch.setPolicy(CustomUrlBatch.FORMAT_JSON, 3, 0);
+
+        batch.add("http://example.com/log?aid=1", "POST", "{\"lat\":1}", "");
+        batch.add("http://example.com/log?aid=2", "POST", "{\"lat\":2}", "");
+        assertThat("Nothing sent until the batch is full", sent.size(), is(0));
+
+        batch.add("http://example.com/log?aid=3", "POST", "{\"lat\":3}", "");
+
+        assertThat("One request for three points", sent.size(), is(1));
+        assertThat("Bodies joined into an array", sent.get(0).getHttpBody(), is("[{\"lat\":1},{\"lat\":2},{\"lat\":3}]"));
+        assertThat("URL of the first point", sent.get(0).getLogURL(), is("http://example.com/log?aid=1"));
+        assertThat("Sent as JSON", sent.get(0).getHttpHeaders().get("Content-Type"), is("application/json"));
+        assertThat("Batch is emptied", batch.getPendingCount(), is(0));
+        assertThat("Point count passed on", sentPoints.get(0), is(3));
+    }
+
+    @Test
+    public void Add_LinesFormat_OnePointPerLine() {
+        batch.setPolicy(CustomUrlBatch.FORMAT_LINES, 2, 0);
+
+        batch.add("http://example.com/log", "PUT", "lat=1", "");
+        batch.add("http://example.com/log", "PUT", "lat=2", "");
+
+        assertThat("Bodies one per line", sent.get(0).getHttpBody(), is("lat=1\nlat=2\n"));
+        assertThat("Method kept", sent.get(0).getHttpMethod(), is("PUT"));
+    }
+
+    @Test
+    public void Add_GetMethod_SentAsPost() {
+        batch.setPolicy(CustomUrlBatch.FORMAT_JSON, 1, 0);
+
+        batch.add("http://example.com/log", "GET", "{}", "");
+
+        assertThat("A batch needs a body", sent.get(0).getHttpMethod(), is("POST"));
+    }
+
+    @Test
+    public void Flush_PartialBatch_SentOnce() {
+        batch.setPolicy(CustomUrlBatch.FORMAT_JSON, 10, 0);
+        batch.add("http://example.com/log", "POST", "{\"lat\":1}", "");
+
+        batch.flush();
+        batch.flush();
+
+        assertThat("Partial batch sent once", sent.size(), is(1));
+        assertThat("Contains the point", sent.get(0).getHttpBody(), is("[{\"lat\":1}]"));
+    }
+
+    @Test
+    public void Add_TwoBatches_DifferentIdempotencyKeys() {
+        batch.setPolicy(CustomUrlBatch.FORMAT_JSON, 1, 0);
+
+        batch.add("http://example.com/log", "POST", "{}", "");
+        batch.add("http://example.com/log", "POST", "{}", "");
+
+        assertThat("Each batch has its own key", sent.get(0).getHttpHeaders().get("Idempotency-Key"),
+                not(sent.get(1).getHttpHeaders().get("Idempotency-Key")));
+    }
+
+    @Test
+    public void Add_IntervalPassed_SentByTimer() throws Exception {
+        batch.setPolicy(CustomUrlBatch.FORMAT_JSON, 100, 100);
+        batch.add("http://example.com/log", "POST", "{}", "");
+
+        for (int i = 0; i < 50 && sent.isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+
+        assertThat("Sent once the oldest point has waited long enough", sent.size(), is(1));
+    }
+
+    @Test
+    public void New_PendingFileFromBefore_PointsSentAgain() throws Exception {
+        File file = createPendingFile();
+        CustomUrlBatch before = new CustomUrlBatch(sender, file);
+        before.setPolicy(CustomUrlBatch.FORMAT_LINES, 10, 0);
+        before.add("http://example.com/log", "PUT", "lat=1", "X-Device: 1");
+        before.add("http://example.com/log", "PUT", "lat=2", "X-Device: 1");
+
+        CustomUrlBatch after = new CustomUrlBatch(sender, file);
+        assertThat("Points read back", after.getPendingCount(), is(2));
+
+        after.flush();
+
+        assertThat("Sent in the format they were collected in", sent.get(0).getHttpBody(), is("lat=1\nlat=2\n"));
+        assertThat("URL kept", sent.get(0).getLogURL(), is("http://example.com/log"));
+        assertThat("Method kept", sent.get(0).getHttpMethod(), is("PUT"));
+        assertThat("Headers kept", sent.get(0).getHttpHeaders().get("X-Device"), is("1"));
+    }
+
+    @Test
+    public void New_LastPointCutShort_EarlierPointsKept() throws Exception {
+        File file = createPendingFile();
+        CustomUrlBatch before = new CustomUrlBatch(sender, file);
+        before.setPolicy(CustomUrlBatch.FORMAT_JSON, 10, 0);
+        before.add("http://example.com/log", "POST", "{\"lat\":1}", "");
+        before.add("http://example.com/log", "POST", "{\"lat\":2}", "");
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        CustomUrlBatch after = new CustomUrlBatch(sender, file);
+
+        assertThat("Only the whole point read back", after.getPendingCount(), is(1));
+    }
+
+    @Test
+    public void Flush_WithPendingFile_FileRemoved() throws Exception {
+        File file = createPendingFile();
+        CustomUrlBatch first = new CustomUrlBatch(sender, file);
+        first.setPolicy(CustomUrlBatch.FORMAT_JSON, 10, 0);
+        first.add("http://example.com/log", "POST", "{}", "");
+
+        first.flush();
+
+        assertThat("Sent points not kept", file.exists(), is(false));
+        assertThat("Nothing read back", new CustomUrlBatch(sender, file).getPendingCount(), is(0));
+    }
+
+    @Test
+    public void Add_AfterFlush_PendingFileStartsOver() throws Exception {
+        File file = createPendingFile();
+        CustomUrlBatch first = new CustomUrlBatch(sender, file);
+        first.setPolicy(CustomUrlBatch.FORMAT_JSON, 2, 0);
+        first.add("http://example.com/one", "POST", "{}", "");
+        first.add("http://example.com/one", "POST", "{}", "");
+        first.add("http://example.com/two", "POST", "{\"lat\":3}", "");
+
+        CustomUrlBatch after = new CustomUrlBatch(sender, file);
+        after.flush();
+
+        assertThat("Only the unsent point read back", sent.get(1).getHttpBody(), is("[{\"lat\":3}]"));
+        assertThat("URL of the new batch", sent.get(1).getLogURL(), is("http://example.com/two"));
+    }
+}
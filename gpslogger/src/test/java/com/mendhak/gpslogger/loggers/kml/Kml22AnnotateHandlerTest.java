@@ -3,11 +3,14 @@ package com.mendhak.gpslogger.loggers.kml;
 
 import android.location.Location;
 import android.test.suitebuilder.annotation.SmallTest;
+import com.mendhak.gpslogger.common.Strings;
 import com.mendhak.gpslogger.loggers.MockLocations;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Date;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -20,7 +23,7 @@ public class Kml22AnnotateHandlerTest {
     @Test
     public void GetPlacemarkXml_BasicLocation_BasicPlacemarkNodeReturned() {
 
-        Kml22AnnotateHandler kmlHandler = new Kml22AnnotateHandler(null, null, null);
+        Kml22AnnotateHandler kmlHandler = new Kml22AnnotateHandler(null, null, null, 0);
         Location loc = MockLocations.builder("MOCK", 12.193, 19.111)
                 .withAltitude(9001d)
                 .withBearing(91.88f)
@@ -33,4 +36,15 @@ public class Kml22AnnotateHandlerTest {
         assertThat("Basic Placemark XML", actual, is(expected));
     }
 
+    @Test
+    public void GetBeginningXml_DifferentTimes_SameLength() {
+        Kml22WriteHandler writer = new Kml22WriteHandler(null, null, true);
+
+        String firstPoint = writer.getBeginningXml(Strings.getIsoDateTime(new Date(1316285133000L)));
+        String annotation = writer.getBeginningXml(Strings.getIsoDateTime(new Date(1483228799999L)));
+
+        assertThat("Annotation offset matches the header written for the first point", annotation.length(), is(firstPoint.length()));
+        assertThat("Annotations go after the name", firstPoint.endsWith("</name>\n"), is(true));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.mendhak.gpslogger.loggers.nmea;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class NmeaFileLoggerTest {
+
+    private static final String GPGGA = "$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47";
+    private static final String GPRMC = "$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A";
+
+    private File folder;
+    private File currentFile;
+
+    private class TestNmeaFileLogger extends NmeaFileLogger {
+        TestNmeaFileLogger(int bufferSize) {
+            super(bufferSize);
+        }
+
+        @Override
+        File getCurrentFile() {
+            return currentFile;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        folder = File.createTempFile("nmea", "");
+        folder.delete();
+        folder.mkdirs();
+        currentFile = new File(folder, "20160101.nmea");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    private String read(File file) throws IOException {
+        if (!file.exists()) {
+            return "";
+        }
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream fis = new FileInputStream(file);
+        int read = 0;
+        while (read < data.length) {
+            read += fis.read(data, read, data.length - read);
+        }
+        fis.close();
+        return new String(data, "US-ASCII");
+    }
+
+    @Test
+    public void Write_BeforeFlush_NothingOnDisk() throws IOException {
+        NmeaFileLogger logger = new TestNmeaFileLogger(1024);
+        logger.write(0, GPGGA);
+
+        assertThat("Sentence held in memory", read(currentFile), is(""));
+
+        logger.close();
+    }
+
+    @Test
+    public void Flush_SentencesBuffered_WrittenOnePerLine() throws IOException {
+        NmeaFileLogger logger = new TestNmeaFileLogger(1024);
+        logger.write(0, GPGGA);
+        logger.write(0, GPRMC);
+
+        logger.flush();
+
+        assertThat("Sentences one per line", read(currentFile), is(GPGGA + "\n" + GPRMC + "\n"));
+
+        logger.close();
+    }
+
+    @Test
+    public void Write_BufferFull_FlushedToDisk() throws IOException {
+        NmeaFileLogger logger = new TestNmeaFileLogger(GPGGA.length() * 2 + 2);
+        logger.write(0, GPGGA);
+        logger.write(0, GPGGA);
+        logger.write(0, GPRMC);
+
+        assertThat("Full buffer written out", read(currentFile), is(GPGGA + "\n" + GPGGA + "\n"));
+
+        logger.close();
+
+        assertThat("Remainder written on close", read(currentFile), is(GPGGA + "\n" + GPGGA + "\n" + GPRMC + "\n"));
+    }
+
+    @Test
+    public void Flush_FileNameChanged_RollsOverToNewFile() throws IOException {
+        NmeaFileLogger logger = new TestNmeaFileLogger(1024);
+        File firstFile = currentFile;
+        logger.write(0, GPGGA);
+        logger.flush();
+
+        currentFile = new File(folder, "20160102.nmea");
+        logger.write(0, GPRMC);
+        logger.close();
+
+        assertThat("Old file keeps its sentence", read(firstFile), is(GPGGA + "\n"));
+        assertThat("New file gets later sentences", read(currentFile), is(GPRMC + "\n"));
+    }
+
+    @Test
+    public void Write_AfterTimerInterval_FlushedWithoutBeingAsked() throws Exception {
+        NmeaFileLogger logger = new TestNmeaFileLogger(1024);
+        logger.write(0, GPGGA);
+
+        for (int i = 0; i < 100 && read(currentFile).isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+
+        assertThat("Written by the timer", read(currentFile), is(GPGGA + "\n"));
+
+        logger.close();
+    }
+}
@@ -0,0 +1,116 @@
+package com.mendhak.gpslogger.loggers.nmea;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class NmeaParserTest {
+
+    private final NmeaParser parser = new NmeaParser();
+
+    @Test
+    public void Parse_GPGGA_ReadValidValues() {
+        assertThat("Valid sentence", parser.parse("$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,0027*42"), is(true));
+        assertThat("GGA sentence", parser.getType(), is(NmeaParser.TYPE_GGA));
+        assertThat("GPS talker", parser.getTalker(), is(NmeaParser.TALKER_GPS));
+        assertThat("GPGGA - read HDOP", parser.getHdop(), is(0.9));
+        assertThat("GPGGA - read GeoIdHeight", parser.getGeoIdHeight(), is(46.9));
+        assertThat("GPGGA - no age of DGPS data", Double.isNaN(parser.getAgeOfDgpsData()), is(true));
+        assertThat("GPGGA - read dgps station id", parser.getDgpsId(), is(27));
+        assertThat("GPGGA - no PDOP", Double.isNaN(parser.getPdop()), is(true));
+    }
+
+    @Test
+    public void Parse_GNGGA_ReadValidValues() {
+        assertThat("Valid sentence", parser.parse("$GNGGA,092725.00,4717.11399,N,00833.91590,E,2,08,1.01,499.6,M,48.0,M,1.5,0136*68"), is(true));
+        assertThat("Combined GNSS talker", parser.getTalker(), is(NmeaParser.TALKER_GNSS));
+        assertThat("GNGGA - read HDOP", parser.getHdop(), is(1.01));
+        assertThat("GNGGA - read GeoIdHeight", parser.getGeoIdHeight(), is(48.0));
+        assertThat("GNGGA - read age of DGPS data", parser.getAgeOfDgpsData(), is(1.5));
+        assertThat("GNGGA - read dgps station id", parser.getDgpsId(), is(136));
+    }
+
+    @Test
+    public void Parse_GNGSA_ReadDops() {
+        assertThat("Valid sentence", parser.parse("$GNGSA,A,3,80,71,73,79,69,,,,,,,,1.83,1.09,1.47,2*09"), is(true));
+        assertThat("GSA sentence", parser.isLocationSentence(), is(true));
+        assertThat("GNGSA - read PDOP", parser.getPdop(), is(1.83));
+        assertThat("GNGSA - read HDOP", parser.getHdop(), is(1.09));
+        assertThat("GNGSA - read VDOP before system ID", parser.getVdop(), is(1.47));
+    }
+
+    @Test
+    public void Parse_OtherConstellations_Recognized() {
+        parser.parse("$GAGSA,A,3,26,12,,,,,,,,,,,2.5,1.3,2.1,3*3D");
+        assertThat("Galileo talker", parser.getTalker(), is(NmeaParser.TALKER_GALILEO));
+        assertThat("Galileo PDOP", parser.getPdop(), is(2.5));
+
+        parser.parse("$GBGGA,1,2,3,4,5,6,7,0.7,,,-12.25,M,,*17");
+        assertThat("BeiDou talker", parser.getTalker(), is(NmeaParser.TALKER_BEIDOU));
+        assertThat("Negative geoid height", parser.getGeoIdHeight(), is(-12.25));
+        assertThat("No DGPS station", parser.getDgpsId(), is(-1));
+
+        parser.parse("$GLGSV,3,1,10,65,58,104,30,66,41,168,,71,21,295,29,72,64,338,32*6A");
+        assertThat("GLONASS talker", parser.getTalker(), is(NmeaParser.TALKER_GLONASS));
+        assertThat("GSV has no location values", parser.isLocationSentence(), is(false));
+    }
+
+    @Test
+    public void Parse_BadChecksum_Rejected() {
+        assertThat("Checksum doesn't match", parser.parse("$GPGSA,A,3,04,05,,09,12,,,24,,,,,2.5,1.3,2.1*38"), is(false));
+        assertThat("No values from a rejected sentence", Double.isNaN(parser.getPdop()), is(true));
+
+        assertThat("Lowercase checksum accepted", parser.parse("$GAGSA,A,3,26,12,,,,,,,,,,,2.5,1.3,2.1,3*3d"), is(true));
+    }
+
+    @Test
+    public void Parse_Incomplete_Rejected() {
+        assertThat("Truncated sentence", parser.parse("$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545"), is(false));
+        assertThat("Truncated checksum", parser.parse("$GPGSA,A,3,04,05,,09,12,,,24,,,,,2.5,1.3,2.1*3"), is(false));
+        assertThat("Null sentence", parser.parse(null), is(false));
+        assertThat("Empty sentence", parser.parse(""), is(false));
+        assertThat("Not NMEA", parser.parse("blahasdfasdf"), is(false));
+        assertThat("Not a location sentence", parser.isLocationSentence(), is(false));
+    }
+
+    @Test
+    public void Parse_ProprietarySentence_NotLocation() {
+        assertThat("Valid sentence", parser.parse("$PGRME,15.0,M,45.0,M,25.0,M*1C\r\n"), is(true));
+        assertThat("Unknown talker", parser.getTalker(), is(NmeaParser.TALKER_OTHER));
+        assertThat("Not a location sentence", parser.isLocationSentence(), is(false));
+    }
+
+    @Test
+    public void Parse_GPGGA_TextAsSent() {
+        parser.parse("$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.90,545.4,M,46.0,M,12,0027*78");
+        assertThat("Trailing zero kept", parser.getHdopText(), is("0.90"));
+        assertThat("Decimal kept", parser.getGeoIdHeightText(), is("46.0"));
+        assertThat("Whole number kept", parser.getAgeOfDgpsDataText(), is("12"));
+        assertThat("Leading zeros kept", parser.getDgpsIdText(), is("0027"));
+        assertThat("No PDOP", parser.getPdopText(), is((String) null));
+    }
+
+    @Test
+    public void Parse_GPGSA_TextAsSent() {
+        parser.parse("$GPGSA,A,3,04,05,,09,12,,,24,,,,,2.50,1.3,12*27");
+        assertThat("PDOP as sent", parser.getPdopText(), is("2.50"));
+        assertThat("HDOP as sent", parser.getHdopText(), is("1.3"));
+        assertThat("VDOP as sent", parser.getVdopText(), is("12"));
+        assertThat("No DGPS station id", parser.getDgpsIdText(), is((String) null));
+    }
+
+    @Test
+    public void Parse_NotANumber_NoText() {
+        parser.parse("$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9x,545.4,M,46.9,M,,02a7*6B");
+        assertThat("HDOP that isn't a number", parser.getHdopText(), is((String) null));
+        assertThat("DGPS station id that isn't a number", parser.getDgpsIdText(), is((String) null));
+        assertThat("Empty field", parser.getAgeOfDgpsDataText(), is((String) null));
+    }
+}
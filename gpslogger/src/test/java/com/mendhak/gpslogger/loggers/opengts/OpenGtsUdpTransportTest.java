@@ -0,0 +1,154 @@
+package com.mendhak.gpslogger.loggers.opengts;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class OpenGtsUdpTransportTest {
+
+    private static final String RECORD = "account/device/$GPRMC,193353,A,5121.457779,N,00011.738474,W,36.933045,0.000000,050316,,*05";
+
+    private DatagramSocket server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        server.setSoTimeout(2000);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private String receive() throws Exception {
+        DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+        server.receive(packet);
+        return new String(packet.getData(), 0, packet.getLength(), "US-ASCII");
+    }
+
+    @Test
+    public void Send_NotPacked_OneRecordPerDatagram() throws Exception {
+        OpenGtsUdpTransport transport = new OpenGtsUdpTransport("127.0.0.1", server.getLocalPort(),
+                OpenGtsUdpTransport.DEFAULT_MAX_DATAGRAM_SIZE, false, 0);
+        transport.send(RECORD);
+        transport.send(RECORD);
+        transport.send(RECORD);
+        transport.flush();
+        transport.close();
+
+        assertThat("A datagram per record", transport.getDatagramsSent(), is(3));
+        assertThat("First record alone", receive(), is(RECORD));
+        assertThat("Second record alone", receive(), is(RECORD));
+        assertThat("Third record alone", receive(), is(RECORD));
+    }
+
+    @Test
+    public void ForServer_Default_OneRecordPerDatagram() throws Exception {
+        OpenGtsUdpTransport transport = OpenGtsUdpTransport.forServer("127.0.0.1", server.getLocalPort());
+        transport.send(RECORD);
+        transport.send(RECORD);
+        transport.flush();
+
+        assertThat("Shared transports don't pack", receive(), is(RECORD));
+        assertThat("Second record in its own datagram", receive(), is(RECORD));
+
+        OpenGtsUdpTransport.discard("127.0.0.1", server.getLocalPort());
+    }
+
+    @Test
+    public void Send_FewRecords_PackedIntoOneDatagram() throws Exception {
+        OpenGtsUdpTransport transport = new OpenGtsUdpTransport("127.0.0.1", server.getLocalPort(),
+                OpenGtsUdpTransport.DEFAULT_MAX_DATAGRAM_SIZE, true, 0);
+        transport.send(RECORD);
+        transport.send(RECORD);
+        transport.send(RECORD);
+        transport.flush();
+        transport.close();
+
+        assertThat("One datagram for all three", transport.getDatagramsSent(), is(1));
+        assertThat("Records one per line", receive(), is(RECORD + "\n" + RECORD + "\n" + RECORD));
+    }
+
+    @Test
+    public void Send_MoreThanFits_SplitAcrossDatagrams() throws Exception {
+        int size = RECORD.length() * 2 + 1;
+        OpenGtsUdpTransport transport = new OpenGtsUdpTransport("127.0.0.1", server.getLocalPort(), size, true, 0);
+        for (int i = 0; i < 5; i++) {
+            transport.send(RECORD);
+        }
+        transport.flush();
+        transport.close();
+
+        assertThat("Two records per datagram", transport.getDatagramsSent(), is(3));
+        assertThat("First datagram full", receive(), is(RECORD + "\n" + RECORD));
+        assertThat("Second datagram full", receive(), is(RECORD + "\n" + RECORD));
+        assertThat("Remainder flushed", receive(), is(RECORD));
+    }
+
+    @Test
+    public void Send_RecordLargerThanDatagram_SentAlone() throws Exception {
+        OpenGtsUdpTransport transport = new OpenGtsUdpTransport("127.0.0.1", server.getLocalPort(), 10, true, 0);
+        transport.send(RECORD);
+        transport.flush();
+        transport.close();
+
+        assertThat("Oversized record still sent", transport.getDatagramsSent(), is(1));
+        assertThat("Record intact", receive(), is(RECORD));
+    }
+
+    @Test
+    public void Flush_NothingQueued_NothingSent() throws Exception {
+        OpenGtsUdpTransport transport = new OpenGtsUdpTransport("127.0.0.1", server.getLocalPort(),
+                OpenGtsUdpTransport.DEFAULT_MAX_DATAGRAM_SIZE, true, 0);
+        transport.flush();
+        transport.close();
+
+        assertThat("No empty datagrams", transport.getDatagramsSent(), is(0));
+    }
+
+    @Test
+    public void ForServer_SameServerAndPort_TransportShared() throws Exception {
+        OpenGtsUdpTransport first = OpenGtsUdpTransport.forServer("127.0.0.1", server.getLocalPort());
+        OpenGtsUdpTransport second = OpenGtsUdpTransport.forServer("127.0.0.1", server.getLocalPort());
+
+        first.send(RECORD);
+        first.flush();
+        second.send(RECORD);
+        second.flush();
+
+        assertThat("One transport per server and port", second == first, is(true));
+        assertThat("Sends from both callers counted together", first.getDatagramsSent(), is(2));
+        assertThat("First send arrives", receive(), is(RECORD));
+        assertThat("Second send arrives on the same channel", receive(), is(RECORD));
+
+        OpenGtsUdpTransport.discard("127.0.0.1", server.getLocalPort());
+    }
+
+    @Test
+    public void Discard_AfterFailure_NewTransportNextTime() throws Exception {
+        OpenGtsUdpTransport first = OpenGtsUdpTransport.forServer("127.0.0.1", server.getLocalPort());
+        OpenGtsUdpTransport.discard("127.0.0.1", server.getLocalPort());
+        OpenGtsUdpTransport second = OpenGtsUdpTransport.forServer("127.0.0.1", server.getLocalPort());
+
+        second.send(RECORD);
+        second.flush();
+
+        assertThat("Discarded transport replaced", second == first, is(false));
+        assertThat("Replacement sends", receive(), is(RECORD));
+
+        OpenGtsUdpTransport.discard("127.0.0.1", server.getLocalPort());
+    }
+}
@@ -0,0 +1,132 @@
+package com.mendhak.gpslogger.senders;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class DeltaSyncTest {
+
+    private File ledgerFile;
+    private File logFile;
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerFile = File.createTempFile("deltasync", ".ledger");
+        ledgerFile.delete();
+        ledgerFile.deleteOnExit();
+        logFile = File.createTempFile("deltasync", ".csv");
+        logFile.deleteOnExit();
+    }
+
+    private void append(int count, byte value) throws Exception {
+        FileOutputStream outputStream = new FileOutputStream(logFile, true);
+        byte[] bytes = new byte[count];
+        java.util.Arrays.fill(bytes, value);
+        outputStream.write(bytes);
+        outputStream.close();
+    }
+
+    private void overwrite(long position, byte value) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(logFile, "rw");
+        raf.seek(position);
+        raf.write(value);
+        raf.close();
+    }
+
+    @Test
+    public void Plan_NeverUploaded_FullUpload() throws Exception {
+        append(1000, (byte) 'a');
+
+        DeltaSync.Delta delta = new DeltaSync(new UploadLedger(ledgerFile)).plan("ftp://server/log.csv", logFile);
+
+        assertThat("Starts at the beginning", delta.isFullUpload(), is(true));
+        assertThat("Nothing known about the remote file", delta.getRemoteLength(), is(-1L));
+        assertThat("Whole file is sent", delta.getLength(), is(1000L));
+    }
+
+    @Test
+    public void Plan_PointsAppended_SendsOnlyNewTail() throws Exception {
+        append(DeltaSync.BLOCK_SIZE + 100, (byte) 'a');
+        DeltaSync sync = new DeltaSync(new UploadLedger(ledgerFile));
+        sync.commit(sync.plan("ftp://server/log.csv", logFile));
+
+        append(50, (byte) 'b');
+        DeltaSync.Delta delta = new DeltaSync(new UploadLedger(ledgerFile)).plan("ftp://server/log.csv", logFile);
+
+        assertThat("Resumes after what was uploaded", delta.getOffset(), is(DeltaSync.BLOCK_SIZE + 100L));
+        assertThat("Plain append", delta.isAppend(), is(true));
+        assertThat("Remote file length is remembered", delta.remoteMatches(DeltaSync.BLOCK_SIZE + 100L), is(true));
+
+        InputStream tail = delta.openStream();
+        int count = 0;
+        int b;
+        while ((b = tail.read()) != -1) {
+            assertThat("Only new bytes are read", b, is((int) 'b'));
+            count++;
+        }
+        tail.close();
+        assertThat("Whole tail is read", count, is(50));
+    }
+
+    @Test
+    public void Plan_TrailerRewritten_ResumesFromChangedBlock() throws Exception {
+        append(DeltaSync.BLOCK_SIZE * 2 + 10, (byte) 'a');
+        DeltaSync sync = new DeltaSync(new UploadLedger(ledgerFile));
+        sync.commit(sync.plan("sftp://server/log.gpx", logFile));
+
+        overwrite(DeltaSync.BLOCK_SIZE * 2 + 5, (byte) '<');
+        append(20, (byte) 'b');
+        DeltaSync.Delta delta = sync.plan("sftp://server/log.gpx", logFile);
+
+        assertThat("Resumes at the start of the block that changed", delta.getOffset(), is(DeltaSync.BLOCK_SIZE * 2L));
+        assertThat("Not an append", delta.isAppend(), is(false));
+    }
+
+    @Test
+    public void Plan_StartOfFileChanged_FullUpload() throws Exception {
+        append(DeltaSync.BLOCK_SIZE * 3, (byte) 'a');
+        DeltaSync sync = new DeltaSync(new UploadLedger(ledgerFile));
+        sync.commit(sync.plan("ftp://server/log.gpx", logFile));
+
+        overwrite(10, (byte) 'c');
+
+        assertThat("Starts from the beginning", sync.plan("ftp://server/log.gpx", logFile).isFullUpload(), is(true));
+    }
+
+    @Test
+    public void Plan_Unchanged_UpToDate() throws Exception {
+        append(300, (byte) 'a');
+        DeltaSync sync = new DeltaSync(new UploadLedger(ledgerFile));
+        sync.commit(sync.plan("ftp://server/log.csv", logFile));
+
+        DeltaSync.Delta delta = sync.plan("ftp://server/log.csv", logFile);
+
+        assertThat("Nothing to send", delta.isUpToDate(), is(true));
+        assertThat("Other remote files are separate", sync.plan("ftp://other/log.csv", logFile).isFullUpload(), is(true));
+    }
+
+    @Test
+    public void Load_LocalFileDeleted_EntryDropped() throws Exception {
+        append(300, (byte) 'a');
+        DeltaSync sync = new DeltaSync(new UploadLedger(ledgerFile));
+        sync.commit(sync.plan("ftp://server/log.csv", logFile));
+
+        logFile.delete();
+        DeltaSync reloaded = new DeltaSync(new UploadLedger(ledgerFile));
+        append(300, (byte) 'a');
+
+        assertThat("Forgotten once the file is gone", reloaded.plan("ftp://server/log.csv", logFile).isFullUpload(), is(true));
+    }
+}
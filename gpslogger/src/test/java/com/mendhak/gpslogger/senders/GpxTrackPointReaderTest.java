@@ -0,0 +1,93 @@
+package com.mendhak.gpslogger.senders;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import com.mendhak.gpslogger.common.SerializableLocation;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class GpxTrackPointReaderTest {
+
+    private static final String GPX = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>" +
+            "<gpx version=\"1.0\" xmlns=\"http://www.topografix.com/GPX/1/0\"><time>2017-07-14T02:40:00.000Z</time>" +
+            "<wpt lat=\"1.0\" lon=\"1.0\"><name>not a track point</name></wpt>" +
+            "<trk><trkseg>" +
+            "<trkpt lat=\"12.193\" lon=\"19.111\"><ele>9001.0</ele><time>2017-07-14T02:40:00.000Z</time>" +
+            "<course>91.88</course><speed>188.44</speed><src>gps</src><hdop>1.5</hdop></trkpt>\n" +
+            "<trkpt lat=\"12.194\" lon=\"19.112\"><time>2017-07-14T02:40:01.000Z</time><src>gps</src></trkpt>\n" +
+            "</trkseg><trkseg>" +
+            "<trkpt lat=\"-12.195\" lon=\"-19.113\"><ele>9003.5</ele><time>2017-07-14T02:40:02.000Z</time></trkpt>\n" +
+            "</trkseg></trk></gpx>";
+
+    private File writeGpx() throws Exception {
+        File file = File.createTempFile("gpxreader", ".gpx");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(GPX.getBytes("UTF-8"));
+        fos.close();
+        return file;
+    }
+
+    @Test
+    public void Next_TrackPointWithValues_ValuesRead() throws Exception {
+        GpxTrackPointReader reader = new GpxTrackPointReader(writeGpx());
+        SerializableLocation point = reader.next();
+        reader.close();
+
+        assertThat("Latitude", point.getLatitude(), is(12.193));
+        assertThat("Longitude", point.getLongitude(), is(19.111));
+        assertThat("Altitude", point.getAltitude(), is(9001.0));
+        assertThat("Bearing", point.getBearing(), is(91.88f));
+        assertThat("Speed", point.getSpeed(), is(188.44f));
+        assertThat("Accuracy derived from HDOP", point.getAccuracy(), is(7.5));
+        assertThat("Time", point.getTime(), is(1500000000000L));
+        assertThat("Altitude marked present", point.hasAltitude(), is(true));
+    }
+
+    @Test
+    public void Next_TrackPointWithoutValues_NotMarkedPresent() throws Exception {
+        GpxTrackPointReader reader = new GpxTrackPointReader(writeGpx());
+        reader.next();
+        SerializableLocation point = reader.next();
+        reader.close();
+
+        assertThat("Latitude", point.getLatitude(), is(12.194));
+        assertThat("No altitude", point.hasAltitude(), is(false));
+        assertThat("No speed", point.hasSpeed(), is(false));
+    }
+
+    @Test
+    public void NextBatch_MorePointsThanBatch_ReturnsBoundedBatches() throws Exception {
+        GpxTrackPointReader reader = new GpxTrackPointReader(writeGpx());
+
+        List<SerializableLocation> first = reader.nextBatch(2);
+        List<SerializableLocation> second = reader.nextBatch(2);
+        List<SerializableLocation> third = reader.nextBatch(2);
+        SerializableLocation afterEnd = reader.next();
+        reader.close();
+
+        assertThat("First batch is full", first.size(), is(2));
+        assertThat("Remaining point across segments", second.size(), is(1));
+        assertThat("Point from the second segment", second.get(0).getLatitude(), is(-12.195));
+        assertThat("Nothing left", third.size(), is(0));
+        assertThat("Nothing after the end", afterEnd, is(nullValue()));
+    }
+
+    @Test
+    public void GetPoints_WholeFile_AllTrackPointsInOrder() throws Exception {
+        List<SerializableLocation> points = GpxReader.getPoints(writeGpx());
+
+        assertThat("Waypoints are not track points", points.size(), is(3));
+        assertThat("Last point", points.get(2).getAltitude(), is(9003.5));
+    }
+}
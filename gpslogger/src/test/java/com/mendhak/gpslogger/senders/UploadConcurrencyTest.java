@@ -0,0 +1,42 @@
+package com.mendhak.gpslogger.senders;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class UploadConcurrencyTest {
+
+    @Test
+    public void GroupFor_SingleUploadDestination_AlwaysSameGroup() {
+        assertThat("Email", UploadConcurrency.groupFor(UploadConcurrency.EMAIL), is("EMAIL-0"));
+        assertThat("Email again", UploadConcurrency.groupFor(UploadConcurrency.EMAIL), is("EMAIL-0"));
+    }
+
+    @Test
+    public void GroupFor_DestinationWithLimit_SpreadOverThatManyGroups() {
+        UploadConcurrency.setLimit("TESTDESTINATION", 3);
+
+        Set<String> groups = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            groups.add(UploadConcurrency.groupFor("TESTDESTINATION"));
+        }
+
+        assertThat("Three groups used", groups.size(), is(3));
+        assertThat("Named after the destination", groups.contains("TESTDESTINATION-2"), is(true));
+    }
+
+    @Test
+    public void GroupFor_DifferentDestinations_DifferentGroups() {
+        assertThat("FTP and SFTP can run side by side",
+                UploadConcurrency.groupFor(UploadConcurrency.FTP).equals(UploadConcurrency.groupFor(UploadConcurrency.SFTP)), is(false));
+    }
+}
@@ -0,0 +1,123 @@
+package com.mendhak.gpslogger.senders;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class UploadLedgerTest {
+
+    private File ledgerFile;
+    private File logFile;
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerFile = File.createTempFile("uploadledger", ".ledger");
+        ledgerFile.delete();
+        ledgerFile.deleteOnExit();
+        logFile = File.createTempFile("uploadledger", ".gpx");
+        logFile.deleteOnExit();
+        write("<gpx></gpx>", false);
+    }
+
+    private void write(String contents, boolean append) throws Exception {
+        FileOutputStream outputStream = new FileOutputStream(logFile, append);
+        outputStream.write(contents.getBytes("UTF-8"));
+        outputStream.close();
+    }
+
+    @Test
+    public void IsUploaded_NeverSent_False() {
+        UploadLedger ledger = new UploadLedger(ledgerFile);
+
+        assertThat("New files need sending", ledger.isUploaded(UploadConcurrency.DROPBOX, logFile), is(false));
+    }
+
+    @Test
+    public void IsUploaded_SentAndUnchanged_True() throws Exception {
+        UploadLedger ledger = new UploadLedger(ledgerFile);
+        ledger.recordUploaded(UploadConcurrency.DROPBOX, UploadLedger.snapshot(logFile));
+
+        assertThat("Unchanged file is skipped", ledger.isUploaded(UploadConcurrency.DROPBOX, logFile), is(true));
+        assertThat("Other destinations still need it", ledger.isUploaded(UploadConcurrency.FTP, logFile), is(false));
+    }
+
+    @Test
+    public void IsUploaded_AfterReload_StillKnown() throws Exception {
+        new UploadLedger(ledgerFile).recordUploaded(UploadConcurrency.EMAIL, logFile);
+
+        assertThat("Ledger survives a restart", new UploadLedger(ledgerFile).isUploaded(UploadConcurrency.EMAIL, logFile), is(true));
+    }
+
+    @Test
+    public void IsUploaded_ChangedSinceSnapshot_False() throws Exception {
+        UploadLedger ledger = new UploadLedger(ledgerFile);
+        UploadLedger.Snapshot snapshot = UploadLedger.snapshot(logFile);
+
+        write("<trkpt/>", true);
+        ledger.recordUploaded(UploadConcurrency.OSM, snapshot);
+
+        assertThat("Points logged during the upload still need sending", ledger.isUploaded(UploadConcurrency.OSM, logFile), is(false));
+    }
+
+    @Test
+    public void IsUploaded_TouchedButSameContents_True() throws Exception {
+        UploadLedger ledger = new UploadLedger(ledgerFile);
+        ledger.recordUploaded(UploadConcurrency.GOOGLE_DRIVE, logFile);
+
+        write("<gpx></gpx>", false);
+        logFile.setLastModified(logFile.lastModified() + 10000);
+
+        assertThat("Same contents with a new time is skipped", ledger.isUploaded(UploadConcurrency.GOOGLE_DRIVE, logFile), is(true));
+    }
+
+    @Test
+    public void GetNotUploaded_MixedFiles_OnlyChangedReturned() throws Exception {
+        File csvFile = File.createTempFile("uploadledger", ".csv");
+        csvFile.deleteOnExit();
+
+        UploadLedger ledger = new UploadLedger(ledgerFile);
+        ledger.recordUploaded(UploadConcurrency.SFTP, logFile);
+
+        List<File> notUploaded = ledger.getNotUploaded(UploadConcurrency.SFTP, Arrays.asList(logFile, csvFile));
+
+        assertThat("Only the new file is left", notUploaded.size(), is(1));
+        assertThat("Only the new file is left", notUploaded.get(0), is(csvFile));
+    }
+
+    @Test
+    public void Load_LocalFileDeleted_EntryDropped() throws Exception {
+        new UploadLedger(ledgerFile).recordUploaded(UploadConcurrency.EMAIL, logFile);
+
+        logFile.delete();
+        UploadLedger reloaded = new UploadLedger(ledgerFile);
+        write("<gpx></gpx>", false);
+
+        assertThat("Forgotten once the file is gone", reloaded.isUploaded(UploadConcurrency.EMAIL, logFile), is(false));
+    }
+
+    @Test
+    public void DeltaSync_SharesLedger_KeptApart() throws Exception {
+        UploadLedger ledger = new UploadLedger(ledgerFile);
+        DeltaSync sync = new DeltaSync(ledger);
+        sync.commit(sync.plan(UploadConcurrency.FTP, logFile));
+
+        assertThat("Block hashes don't count as sent", ledger.isUploaded(UploadConcurrency.FTP, logFile), is(false));
+
+        ledger.recordUploaded(UploadConcurrency.FTP, logFile);
+        DeltaSync reloaded = new DeltaSync(new UploadLedger(ledgerFile));
+
+        assertThat("Both kinds of entry survive a restart", reloaded.plan(UploadConcurrency.FTP, logFile).isUpToDate(), is(true));
+    }
+}
@@ -0,0 +1,162 @@
+package com.mendhak.gpslogger.senders;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.*;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class ZipHelperTest {
+
+    private File gpxFile;
+    private File csvFile;
+    private File zipFile;
+
+    @Before
+    public void setUp() throws Exception {
+        gpxFile = File.createTempFile("20161018", ".gpx");
+        gpxFile.deleteOnExit();
+        csvFile = File.createTempFile("20161018", ".csv");
+        csvFile.deleteOnExit();
+        zipFile = File.createTempFile("20161018", ".zip");
+        zipFile.delete();
+        zipFile.deleteOnExit();
+
+        write(gpxFile, "<gpx><trk><trkseg><trkpt lat=\"51.5\" lon=\"-0.1\"/></trkseg></trk></gpx>", false);
+        write(csvFile, "time,lat,lon\n2016-10-18T10:00:00Z,51.5,-0.1\n", false);
+    }
+
+    private static void write(File file, String contents, boolean append) throws Exception {
+        FileOutputStream outputStream = new FileOutputStream(file, append);
+        outputStream.write(contents.getBytes("UTF-8"));
+        outputStream.close();
+    }
+
+    private static String read(ZipFile zip, String name) throws Exception {
+        InputStream inputStream = zip.getInputStream(zip.getEntry(name));
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            contents.write(buffer, 0, read);
+        }
+        inputStream.close();
+        return contents.toString("UTF-8");
+    }
+
+    private ZipHelper zipHelper() {
+        return new ZipHelper(new String[]{gpxFile.getAbsolutePath(), csvFile.getAbsolutePath()}, zipFile.getAbsolutePath());
+    }
+
+    @Test
+    public void ZipFiles_NewZip_ReadableByZipFile() throws Exception {
+        ZipHelper zh = zipHelper();
+        zh.zipFiles();
+
+        ZipFile zip = new ZipFile(zipFile);
+        assertThat("Both files zipped", zip.size(), is(2));
+        assertThat("GPX contents", read(zip, gpxFile.getName()), is("<gpx><trk><trkseg><trkpt lat=\"51.5\" lon=\"-0.1\"/></trkseg></trk></gpx>"));
+        assertThat("CSV contents", read(zip, csvFile.getName()), is("time,lat,lon\n2016-10-18T10:00:00Z,51.5,-0.1\n"));
+        zip.close();
+
+        assertThat("Everything compressed", zh.getStatistics().getEntriesCompressed(), is(2));
+        assertThat("Nothing to reuse", zh.getStatistics().getEntriesReused(), is(0));
+        assertThat("Output size counted", zh.getStatistics().getBytesOut(), is(zipFile.length()));
+    }
+
+    @Test
+    public void ZipFiles_OneFileChanged_OthersReused() throws Exception {
+        zipHelper().zipFiles();
+
+        write(csvFile, "2016-10-18T10:01:00Z,51.6,-0.2\n", true);
+        csvFile.setLastModified(csvFile.lastModified() + 5000);
+
+        ZipHelper zh = zipHelper();
+        zh.zipFiles();
+
+        ZipFile zip = new ZipFile(zipFile);
+        assertThat("Unchanged file copied intact", read(zip, gpxFile.getName()), is("<gpx><trk><trkseg><trkpt lat=\"51.5\" lon=\"-0.1\"/></trkseg></trk></gpx>"));
+        assertThat("Changed file has new contents", read(zip, csvFile.getName()),
+                is("time,lat,lon\n2016-10-18T10:00:00Z,51.5,-0.1\n2016-10-18T10:01:00Z,51.6,-0.2\n"));
+        zip.close();
+
+        assertThat("Unchanged file reused", zh.getStatistics().getEntriesReused(), is(1));
+        assertThat("Changed file compressed", zh.getStatistics().getEntriesCompressed(), is(1));
+    }
+
+    @Test
+    public void WriteTo_Stream_ReadableWithoutFile() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new ZipHelper(new String[]{csvFile.getAbsolutePath()}, null, Deflater.BEST_COMPRESSION, 512).writeTo(outputStream, null);
+
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        ZipEntry entry = zis.getNextEntry();
+
+        assertThat("Entry named after file", entry.getName(), is(csvFile.getName()));
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        byte[] buffer = new byte[100];
+        int read;
+        while ((read = zis.read(buffer)) != -1) {
+            contents.write(buffer, 0, read);
+        }
+        assertThat("Contents streamed", contents.toString("UTF-8"), is("time,lat,lon\n2016-10-18T10:00:00Z,51.5,-0.1\n"));
+        zis.close();
+    }
+
+    @Test
+    public void ZipFiles_ChangedInPlaceSameTime_CompressedAgain() throws Exception {
+        long modified = gpxFile.lastModified();
+        zipHelper().zipFiles();
+
+        //An annotation written over the reserved space, in the same second as the last zip
+        RandomAccessFile raf = new RandomAccessFile(gpxFile, "rw");
+        raf.seek(5);
+        raf.write("<TRK>".getBytes("UTF-8"));
+        raf.close();
+        gpxFile.setLastModified(modified);
+
+        ZipHelper zh = zipHelper();
+        zh.zipFiles();
+
+        ZipFile zip = new ZipFile(zipFile);
+        assertThat("Changed contents zipped", read(zip, gpxFile.getName()), is("<gpx><TRK><trkseg><trkpt lat=\"51.5\" lon=\"-0.1\"/></trkseg></trk></gpx>"));
+        zip.close();
+
+        assertThat("Only the unchanged file reused", zh.getStatistics().getEntriesReused(), is(1));
+    }
+
+    @Test
+    public void ZipFiles_CompressedEntry_CentralFlagsMatchLocalFlags() throws Exception {
+        zipHelper().zipFiles();
+
+        RandomAccessFile raf = new RandomAccessFile(zipFile, "r");
+        byte[] bytes = new byte[(int) raf.length()];
+        raf.readFully(bytes);
+        raf.close();
+
+        int localFlags = -1;
+        int centralFlags = -1;
+        for (int i = 0; i + 8 < bytes.length; i++) {
+            int signature = (bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF) << 16 | (bytes[i + 3] & 0xFF) << 24;
+            if (signature == 0x04034b50 && localFlags < 0) {
+                localFlags = (bytes[i + 6] & 0xFF) | (bytes[i + 7] & 0xFF) << 8;
+            } else if (signature == 0x02014b50 && centralFlags < 0) {
+                centralFlags = (bytes[i + 8] & 0xFF) | (bytes[i + 9] & 0xFF) << 8;
+            }
+        }
+
+        assertThat("Data descriptor flag set locally", localFlags & 0x0008, is(0x0008));
+        assertThat("Same flags in the central directory", centralFlags, is(localFlags));
+    }
+}
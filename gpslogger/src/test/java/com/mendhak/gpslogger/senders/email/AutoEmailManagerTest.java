@@ -80,4 +80,15 @@ public class AutoEmailManagerTest {
         assertThat("Any file type", aem.accept(new File("/"), "abc.xyz"), is(true));
     }
 
+    @Test
+    public void GetDestination_RecipientChanged_DifferentDestination() {
+        PreferenceHelper pm = mock(PreferenceHelper.class);
+        when(pm.getAutoEmailTargets()).thenReturn("a@example.com");
+
+        AutoEmailManager aem = new AutoEmailManager(pm);
+        String before = aem.getDestination();
+        when(pm.getAutoEmailTargets()).thenReturn("b@example.com");
+
+        assertThat("Another recipient is another destination", aem.getDestination().equals(before), is(false));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.mendhak.gpslogger.senders.email;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class Base64MimeOutputStreamTest {
+
+    private static String encode(byte[] bytes, int chunkSize) throws Exception {
+        StringWriter writer = new StringWriter();
+        Base64MimeOutputStream encoder = new Base64MimeOutputStream(writer);
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            encoder.write(bytes, i, Math.min(chunkSize, bytes.length - i));
+        }
+        encoder.close();
+        return writer.toString();
+    }
+
+    @Test
+    public void Close_PartialGroup_Padded() throws Exception {
+        assertThat("Full group", encode("Man".getBytes("UTF-8"), 3), is("TWFu\n"));
+        assertThat("Two leftover bytes", encode("Ma".getBytes("UTF-8"), 3), is("TWE=\n"));
+        assertThat("One leftover byte", encode("M".getBytes("UTF-8"), 3), is("TQ==\n"));
+        assertThat("Nothing written", encode(new byte[0], 3), is(""));
+    }
+
+    @Test
+    public void Write_LongInput_WrappedAt76Characters() throws Exception {
+        byte[] bytes = new byte[57 * 2 + 1];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+
+        String[] lines = encode(bytes, bytes.length).split("\n", -1);
+
+        assertThat("Two full lines, a partial line and the final newline", lines.length, is(4));
+        assertThat("First line length", lines[0].length(), is(76));
+        assertThat("Second line length", lines[1].length(), is(76));
+        assertThat("Last group padded", lines[2], is("cg=="));
+        assertThat("Ends with a newline", lines[3], is(""));
+    }
+
+    @Test
+    public void Write_UnevenChunks_SameAsSingleWrite() throws Exception {
+        byte[] bytes = new byte[20000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 31 + 7);
+        }
+
+        String expected = encode(bytes, bytes.length);
+
+        assertThat("Byte at a time", encode(bytes, 1), is(expected));
+        assertThat("Chunks that split groups", encode(bytes, 7), is(expected));
+        assertThat("Larger than the internal buffer", encode(bytes, 8192), is(expected));
+    }
+}
@@ -113,6 +113,22 @@ public class FtpManagerTest {
         assertThat("Any file type", aem.accept(new File("/"), "abc.xyz"), is(true));
     }
 
+    @Test
+    public void GetDestination_DirectoryChanged_DifferentDestination() {
+        PreferenceHelper pm = mock(PreferenceHelper.class);
+        when(pm.getFtpServerName()).thenReturn("example.com");
+        when(pm.getFtpUsername()).thenReturn("aaa");
+        when(pm.getFtpPort()).thenReturn(21);
+        when(pm.getFtpDirectory()).thenReturn("/logs");
+
+        FtpManager manager = new FtpManager(pm);
+        String before = manager.getDestination();
+        when(pm.getFtpDirectory()).thenReturn("/other");
+
+        assertThat("Another directory is another destination", manager.getDestination().equals(before), is(false));
+        assertThat("Jobs record under the same name", FtpManager.destinationFor("example.com", 21, "aaa", "/other"), is(manager.getDestination()));
+    }
+
 
 
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.mendhak.gpslogger.senders.ftp;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.*;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class FtpSessionPoolTest {
+
+    @Test
+    public void Acquire_AfterRelease_SameSessionReused() {
+        FtpSessionPool pool = new FtpSessionPool(60000);
+        FtpSessionPool.Session session = new FtpSessionPool.Session("ftp://user@example.com:21", new FTPClient(), "/");
+        session.addKnownDirectory("/gpslogger");
+
+        pool.release(session);
+        FtpSessionPool.Session reused = pool.acquire("ftp://user@example.com:21");
+
+        assertThat("Released session is handed out again", reused == session, is(true));
+        assertThat("Known directories are kept", reused.isKnownDirectory("/gpslogger"), is(true));
+        assertThat("A session is only handed out once", pool.acquire("ftp://user@example.com:21"), nullValue());
+    }
+
+    @Test
+    public void Acquire_DifferentServer_NoSession() {
+        FtpSessionPool pool = new FtpSessionPool(60000);
+        pool.release(new FtpSessionPool.Session("ftp://user@example.com:21", new FTPClient(), "/"));
+
+        assertThat("Other servers don't share sessions", pool.acquire("ftp://user@example.org:21"), nullValue());
+        assertThat("Other accounts don't share sessions", pool.acquire("ftp://other@example.com:21"), nullValue());
+    }
+
+    @Test
+    public void Acquire_IdleWindowPassed_SessionClosed() {
+        FtpSessionPool pool = new FtpSessionPool(0);
+        pool.release(new FtpSessionPool.Session("ftp://user@example.com:21", new FTPClient(), "/"));
+
+        assertThat("Expired sessions aren't reused", pool.acquire("ftp://user@example.com:21"), nullValue());
+    }
+
+    @Test
+    public void Discard_StaleConnection_StillDisconnected() throws Exception {
+        FTPClient client = mock(FTPClient.class);
+        when(client.isConnected()).thenReturn(true);
+        when(client.logout()).thenThrow(new IOException("Connection closed without indication"));
+
+        new FtpSessionPool(60000).discard(new FtpSessionPool.Session("ftp://user@example.com:21", client, "/"));
+
+        verify(client).disconnect();
+    }
+}
@@ -0,0 +1,219 @@
+package com.mendhak.gpslogger.senders.googledrive;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SmallTest
+@RunWith(MockitoJUnitRunner.class)
+public class ResumableUploadTest {
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private HttpServer server;
+    private FakeDrive drive;
+    private String uploadUrl;
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        uploadUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/upload";
+        drive = new FakeDrive("http://127.0.0.1:" + server.getAddress().getPort() + "/session");
+        server.createContext("/", drive);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void Upload_LargerThanChunk_SentInChunks() throws Exception {
+        File file = createFile(600000);
+
+        ResumableUpload upload = ResumableUpload.start(uploadUrl, "abc", "token", file, "application/gpx+xml", CHUNK_SIZE);
+        String metadata = upload.upload("token", file);
+
+        assertThat("Server returns metadata once complete", metadata, containsString("\"id\""));
+        assertThat("Three chunks for 600000 bytes", drive.chunks, is(3));
+        assertThat("Server has the whole file", Arrays.equals(drive.received.toByteArray(), readFile(file)), is(true));
+    }
+
+    @Test
+    public void Upload_ChunkFails_RetryResumesFromAcknowledgedOffset() throws Exception {
+        File file = createFile(600000);
+        drive.failChunk = 2;
+
+        ResumableUpload upload = ResumableUpload.start(uploadUrl, "abc", "token", file, "application/gpx+xml", CHUNK_SIZE);
+
+        try {
+            upload.upload("token", file);
+        } catch (IOException expected) {
+        }
+
+        assertThat("First chunk acknowledged before the failure", upload.getOffset(), is((long) CHUNK_SIZE));
+        assertThat("Session can carry on", upload.canResume(file), is(true));
+
+        upload.upload("token", file);
+
+        assertThat("Nothing sent twice", drive.received.size(), is(600000));
+        assertThat("Server has the whole file", Arrays.equals(drive.received.toByteArray(), readFile(file)), is(true));
+    }
+
+    @Test
+    public void Upload_ServerNeverAcknowledges_GivesUp() throws Exception {
+        File file = createFile(600000);
+        drive.ignoreChunks = true;
+
+        ResumableUpload upload = ResumableUpload.start(uploadUrl, "abc", "token", file, "application/gpx+xml", CHUNK_SIZE);
+
+        try {
+            upload.upload("token", file);
+            throw new AssertionError("Upload should not succeed");
+        } catch (IOException expected) {
+        }
+
+        assertThat("Stopped after a few requests", drive.requests < 10, is(true));
+        assertThat("Session is not resumed", upload.canResume(file), is(false));
+    }
+
+    @Test
+    public void Upload_ServerHasAllButNeverFinishes_NoEmptyChunkSent() throws Exception {
+        File file = createFile(1000);
+        drive.neverFinish = true;
+
+        ResumableUpload upload = ResumableUpload.start(uploadUrl, "abc", "token", file, "application/gpx+xml", CHUNK_SIZE);
+
+        try {
+            upload.upload("token", file);
+            throw new AssertionError("Upload should not succeed");
+        } catch (IOException expected) {
+        }
+
+        assertThat("The data was only sent once", drive.chunks, is(1));
+        assertThat("Stopped after a few requests", drive.requests < 10, is(true));
+    }
+
+    @Test
+    public void IsFor_FileChanged_NeedsNewSession() throws Exception {
+        File file = createFile(1000);
+        ResumableUpload upload = ResumableUpload.start(uploadUrl, "abc", "token", file, "application/gpx+xml", CHUNK_SIZE);
+
+        FileOutputStream fos = new FileOutputStream(file, true);
+        fos.write(new byte[10]);
+        fos.close();
+
+        assertThat("Session is for the original length", upload.isFor(file, "abc"), is(false));
+    }
+
+    private File createFile(int length) throws IOException {
+        byte[] contents = new byte[length];
+        new Random(length).nextBytes(contents);
+
+        File file = File.createTempFile("resumable", ".gpx");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(contents);
+        fos.close();
+        return file;
+    }
+
+    private byte[] readFile(File file) throws IOException {
+        return com.mendhak.gpslogger.loggers.Streams.getByteArrayFromInputStream(new java.io.FileInputStream(file));
+    }
+
+    /**
+     * Just enough of the resumable upload protocol: a session URL from /upload, then chunks with Content-Range
+     */
+    private static class FakeDrive implements HttpHandler {
+
+        final String sessionUrl;
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        int chunks;
+        int requests;
+        int failChunk = -1;
+        boolean ignoreChunks;
+        boolean neverFinish;
+
+        FakeDrive(String sessionUrl) {
+            this.sessionUrl = sessionUrl;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] body = readBody(exchange.getRequestBody());
+
+            if (exchange.getRequestURI().getPath().equals("/upload")) {
+                exchange.getResponseHeaders().add("Location", sessionUrl);
+                respond(exchange, 200, "");
+                return;
+            }
+
+            requests++;
+            String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+            long total = Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1));
+
+            if (!contentRange.startsWith("bytes */")) {
+                chunks++;
+                if (chunks == failChunk) {
+                    respond(exchange, 503, "");
+                    return;
+                }
+                if (!ignoreChunks) {
+                    received.write(body);
+                }
+            }
+
+            if (received.size() == total && !neverFinish) {
+                respond(exchange, 200, "{\"id\": \"abc\"}");
+                return;
+            }
+
+            if (received.size() > 0) {
+                exchange.getResponseHeaders().add("Range", "bytes=0-" + (received.size() - 1));
+            }
+            respond(exchange, 308, "");
+        }
+
+        private static byte[] readBody(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+
+        private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+            byte[] bytes = body.getBytes("UTF-8");
+            exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            if (bytes.length > 0) {
+                out.write(bytes);
+            }
+            out.close();
+        }
+    }
+}
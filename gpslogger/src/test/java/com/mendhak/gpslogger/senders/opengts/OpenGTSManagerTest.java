@@ -11,6 +11,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.File;
 import java.net.URL;
+import java.util.List;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
@@ -214,6 +215,28 @@ public class OpenGTSManagerTest {
         assertThat("Uses id if account name is missing",  OpenGTSManager.getUrl(settings, sloc).toString() , is(url.toString()));
     }
 
+    @Test
+    public void getUrlBatches_MorePointsThanBatchSize_SplitIntoBatches() {
+
+        Location loc = MockLocations.builder("GPS", 51.3579941, -0.1952438).withTime(1457205869949l).withAccuracy(20).build();
+        SerializableLocation sloc = new SerializableLocation(loc);
+        SerializableLocation[] locations = {sloc, sloc, sloc, sloc, sloc};
+
+        OpenGTSSettings settings = new OpenGTSSettings();
+        settings.setDeviceID("99");
+        settings.setCommunicationMethod("http");
+        settings.setServerPath("");
+        settings.setServer("example.com");
+        settings.setPort(9001);
+
+        List<String[]> batches = OpenGTSManager.getUrlBatches(settings, locations, 2);
+
+        assertThat("Five points in batches of two", batches.size(), is(3));
+        assertThat("Full batch", batches.get(0).length, is(2));
+        assertThat("Remainder in the last batch", batches.get(2).length, is(1));
+        assertThat("Each point gets its own URL", batches.get(2)[0], is(OpenGTSManager.getUrl(settings, sloc)));
+    }
+
     @Test
     public void accept_OnlyGpxAllowed() {
         PreferenceHelper pm = mock(PreferenceHelper.class);
@@ -0,0 +1,118 @@
+package android.location;
+
+import android.os.Bundle;
+
+/**
+ * Plain stand-in for the framework Location so benchmarks run on a desktop JVM.
+ * The mockable android.jar returns zeroes from every getter, and Mockito mocks would dominate the allocation numbers,
+ * so this holds real values. Only the members the loggers and readers use are present.
+ * Benchmark results therefore leave out whatever the real Location costs.
+ */
+public class Location {
+
+    private String provider;
+    private long time;
+    private double latitude;
+    private double longitude;
+    private boolean hasAltitude;
+    private double altitude;
+    private boolean hasSpeed;
+    private float speed;
+    private boolean hasBearing;
+    private float bearing;
+    private boolean hasAccuracy;
+    private float accuracy;
+    private Bundle extras;
+
+    public Location(String provider) {
+        this.provider = provider;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    public boolean hasAltitude() {
+        return hasAltitude;
+    }
+
+    public double getAltitude() {
+        return altitude;
+    }
+
+    public void setAltitude(double altitude) {
+        this.altitude = altitude;
+        this.hasAltitude = true;
+    }
+
+    public boolean hasSpeed() {
+        return hasSpeed;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(float speed) {
+        this.speed = speed;
+        this.hasSpeed = true;
+    }
+
+    public boolean hasBearing() {
+        return hasBearing;
+    }
+
+    public float getBearing() {
+        return bearing;
+    }
+
+    public void setBearing(float bearing) {
+        this.bearing = bearing;
+        this.hasBearing = true;
+    }
+
+    public boolean hasAccuracy() {
+        return hasAccuracy;
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    public void setAccuracy(float accuracy) {
+        this.accuracy = accuracy;
+        this.hasAccuracy = true;
+    }
+
+    public Bundle getExtras() {
+        return extras;
+    }
+
+    public void setExtras(Bundle extras) {
+        this.extras = extras;
+    }
+}
@@ -0,0 +1,43 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plain stand-in for the framework Bundle, see {@link android.location.Location} in this module.
+ */
+public class Bundle {
+
+    private final Map<String, Object> values = new HashMap<>();
+
+    public void putString(String key, String value) {
+        values.put(key, value);
+    }
+
+    public String getString(String key) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = getString(key);
+        return value == null ? defaultValue : value;
+    }
+
+    public void putInt(String key, int value) {
+        values.put(key, value);
+    }
+
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public boolean containsKey(String key) {
+        return values.containsKey(key);
+    }
+}
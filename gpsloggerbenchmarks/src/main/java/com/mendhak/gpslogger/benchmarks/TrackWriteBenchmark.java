@@ -0,0 +1,70 @@
+package com.mendhak.gpslogger.benchmarks;
+
+import android.location.Location;
+import com.mendhak.gpslogger.loggers.WritePipeline;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a synthetic track one point per operation through a logger's write handler, the way the write pipeline
+ * thread would. The handlers are run directly rather than queued so that the numbers are for the encoding and file
+ * writes alone. When the track runs out the file is started again, so the file never grows past one track.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public abstract class TrackWriteBenchmark {
+
+    //Same as the default write_batch_size
+    private static final int FLUSH_EVERY = 10;
+
+    @Param({"10000", "100000", "1000000"})
+    public int points;
+
+    protected Location[] track;
+    protected File file;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void generateTrack() {
+        track = Tracks.generate(points);
+    }
+
+    @Setup(Level.Iteration)
+    public void startFile() throws IOException {
+        file = Tracks.tempFile("benchmark", getExtension());
+        index = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void endFile() {
+        WritePipeline.closeSink(getSinkName());
+        file.delete();
+    }
+
+    /**
+     * The next point of the track, committing the previous batch to the file first
+     */
+    protected Location nextPoint() throws IOException {
+        if (index == track.length) {
+            endFile();
+            startFile();
+        }
+
+        if (index > 0 && index % FLUSH_EVERY == 0) {
+            WritePipeline.getSink(getSinkName(), file).flush();
+        }
+
+        return track[index++];
+    }
+
+    protected abstract String getSinkName();
+
+    protected abstract String getExtension();
+}
@@ -0,0 +1,106 @@
+package com.mendhak.gpslogger.benchmarks;
+
+import android.location.Location;
+import android.os.Bundle;
+import com.mendhak.gpslogger.common.BundleConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Synthetic GPS tracks for the benchmarks, generated from a fixed seed so that runs are comparable.
+ */
+public class Tracks {
+
+    private static final long START_TIME = 1500000000000L;
+
+    /**
+     * A walk of the given number of fixes, one second apart, with the extras a GPS fix usually carries
+     */
+    public static Location[] generate(int points) {
+        Random random = new Random(points);
+        Location[] track = new Location[points];
+
+        double latitude = 51.4778;
+        double longitude = -0.0014;
+        double altitude = 45.3;
+
+        for (int i = 0; i < points; i++) {
+            latitude += (random.nextDouble() - 0.5) * 0.0002;
+            longitude += (random.nextDouble() - 0.5) * 0.0002;
+            altitude += (random.nextDouble() - 0.5) * 2;
+
+            Location loc = new Location("gps");
+            loc.setTime(START_TIME + i * 1000L);
+            loc.setLatitude(latitude);
+            loc.setLongitude(longitude);
+            loc.setAltitude(altitude);
+            loc.setAccuracy(3 + random.nextFloat() * 10);
+            loc.setBearing(random.nextFloat() * 360);
+            loc.setSpeed(random.nextFloat() * 3);
+
+            Bundle extras = new Bundle();
+            extras.putInt(BundleConstants.SATELLITES_FIX, 5 + random.nextInt(12));
+            extras.putString(BundleConstants.HDOP, String.valueOf(0.5 + random.nextInt(20) / 10.0));
+            extras.putString(BundleConstants.VDOP, String.valueOf(0.5 + random.nextInt(20) / 10.0));
+            extras.putString(BundleConstants.PDOP, String.valueOf(0.5 + random.nextInt(20) / 10.0));
+            extras.putString(BundleConstants.GEOIDHEIGHT, "47.0");
+            loc.setExtras(extras);
+
+            track[i] = loc;
+        }
+
+        return track;
+    }
+
+    /**
+     * GGA, GSA and RMC sentences as a GPS chip would report them for each fix in the track
+     */
+    public static String[] generateNmea(Location[] track) {
+        String[] sentences = new String[track.length * 3];
+
+        for (int i = 0; i < track.length; i++) {
+            Location loc = track[i];
+            String time = String.format(Locale.US, "%06d.00", (i / 3600 % 24) * 10000 + (i / 60 % 60) * 100 + i % 60);
+            String lat = toNmeaDegrees(Math.abs(loc.getLatitude()), 2) + (loc.getLatitude() < 0 ? ",S" : ",N");
+            String lon = toNmeaDegrees(Math.abs(loc.getLongitude()), 3) + (loc.getLongitude() < 0 ? ",W" : ",E");
+            Bundle extras = loc.getExtras();
+
+            sentences[i * 3] = withChecksum(String.format(Locale.US, "GPGGA,%s,%s,%s,1,%02d,%s,%.1f,M,47.0,M,,",
+                    time, lat, lon, extras.getInt(BundleConstants.SATELLITES_FIX),
+                    extras.getString(BundleConstants.HDOP), loc.getAltitude()));
+            sentences[i * 3 + 1] = withChecksum(String.format(Locale.US, "GPGSA,A,3,04,05,09,12,,,24,,,,,,%s,%s,%s",
+                    extras.getString(BundleConstants.PDOP), extras.getString(BundleConstants.HDOP),
+                    extras.getString(BundleConstants.VDOP)));
+            sentences[i * 3 + 2] = withChecksum(String.format(Locale.US, "GPRMC,%s,A,%s,%s,%.1f,%.1f,140717,,,A",
+                    time, lat, lon, loc.getSpeed() * 1.94384449, loc.getBearing()));
+        }
+
+        return sentences;
+    }
+
+    /**
+     * A temporary file, removed when the JVM exits
+     */
+    public static File tempFile(String prefix, String suffix) throws IOException {
+        File file = File.createTempFile(prefix, suffix);
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static String toNmeaDegrees(double degrees, int width) {
+        int whole = (int) degrees;
+        return String.format(Locale.US, "%0" + width + "d%07.4f", whole, (degrees - whole) * 60);
+    }
+
+    private static String withChecksum(String body) {
+        int checksum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            checksum ^= body.charAt(i);
+        }
+        return String.format(Locale.US, "$%s*%02X", body, checksum);
+    }
+}
@@ -0,0 +1,41 @@
+package com.mendhak.gpslogger.common;
+
+import android.location.Location;
+import com.mendhak.gpslogger.benchmarks.Tracks;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distance between consecutive points, worked out for every fix to filter by distance and total up the trip
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MathsBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int points;
+
+    private Location[] track;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void generateTrack() {
+        track = Tracks.generate(points);
+    }
+
+    @Benchmark
+    public double calculateDistance() {
+        if (index == track.length - 1) {
+            index = 0;
+        }
+
+        Location from = track[index++];
+        Location to = track[index];
+        return Maths.calculateDistance(from.getLatitude(), from.getLongitude(), to.getLatitude(), to.getLongitude());
+    }
+}
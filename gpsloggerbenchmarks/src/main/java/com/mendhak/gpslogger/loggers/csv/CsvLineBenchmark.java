@@ -0,0 +1,45 @@
+package com.mendhak.gpslogger.loggers.csv;
+
+import android.location.Location;
+import com.mendhak.gpslogger.benchmarks.Tracks;
+import com.mendhak.gpslogger.common.Strings;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats one CSV line per operation, as CSVFileLogger does on the caller's thread before queueing the write
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CsvLineBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int points;
+
+    private Location[] track;
+    private CSVFileLogger logger;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void generateTrack() {
+        track = Tracks.generate(points);
+        logger = new CSVFileLogger(new File("benchmark.csv"), 85);
+    }
+
+    @Benchmark
+    public String getCsvLine() {
+        if (index == track.length) {
+            index = 0;
+        }
+
+        Location loc = track[index++];
+        return logger.getCsvLine(loc, Strings.getIsoDateTime(new Date(loc.getTime())));
+    }
+}
@@ -0,0 +1,24 @@
+package com.mendhak.gpslogger.loggers.geojson;
+
+import com.mendhak.gpslogger.benchmarks.TrackWriteBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+
+public class GeoJSONWriteBenchmark extends TrackWriteBenchmark {
+
+    @Benchmark
+    public void writePoint() throws IOException {
+        new GeoJSONWriterPoints(file, nextPoint(), null).run();
+    }
+
+    @Override
+    protected String getSinkName() {
+        return GeoJSONLogger.NAME;
+    }
+
+    @Override
+    protected String getExtension() {
+        return ".geojson";
+    }
+}
@@ -0,0 +1,28 @@
+package com.mendhak.gpslogger.loggers.gpx;
+
+import android.location.Location;
+import com.mendhak.gpslogger.common.Strings;
+import com.mendhak.gpslogger.loggers.WritePipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Writes a whole track to a GPX file with the logger's own write handler, for benchmarks that read GPX files
+ */
+public class GpxTrackFile {
+
+    public static void write(File gpxFile, Location[] track) throws IOException {
+        for (int i = 0; i < track.length; i++) {
+            String dateTimeString = Strings.getIsoDateTime(new Date(track[i].getTime()));
+            new Gpx10WriteHandler(dateTimeString, gpxFile, track[i], i == 0).run();
+
+            if (i % 1000 == 999) {
+                WritePipeline.getSink(Gpx10FileLogger.NAME, gpxFile).flush();
+            }
+        }
+
+        WritePipeline.closeSink(Gpx10FileLogger.NAME);
+    }
+}
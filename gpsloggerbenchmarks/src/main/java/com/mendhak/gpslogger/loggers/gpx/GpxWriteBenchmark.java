@@ -0,0 +1,37 @@
+package com.mendhak.gpslogger.loggers.gpx;
+
+import android.location.Location;
+import com.mendhak.gpslogger.benchmarks.TrackWriteBenchmark;
+import com.mendhak.gpslogger.common.Strings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.io.IOException;
+import java.util.Date;
+
+public class GpxWriteBenchmark extends TrackWriteBenchmark {
+
+    @Param({"1.0", "1.1"})
+    public String gpxVersion;
+
+    @Benchmark
+    public void writePoint() throws IOException {
+        Location loc = nextPoint();
+        String dateTimeString = Strings.getIsoDateTime(new Date(loc.getTime()));
+
+        Gpx10WriteHandler handler = "1.1".equals(gpxVersion)
+                ? new Gpx11WriteHandler(dateTimeString, file, loc, false)
+                : new Gpx10WriteHandler(dateTimeString, file, loc, false);
+        handler.run();
+    }
+
+    @Override
+    protected String getSinkName() {
+        return Gpx10FileLogger.NAME;
+    }
+
+    @Override
+    protected String getExtension() {
+        return ".gpx";
+    }
+}
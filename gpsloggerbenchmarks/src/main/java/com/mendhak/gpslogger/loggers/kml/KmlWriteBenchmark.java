@@ -0,0 +1,24 @@
+package com.mendhak.gpslogger.loggers.kml;
+
+import com.mendhak.gpslogger.benchmarks.TrackWriteBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+
+public class KmlWriteBenchmark extends TrackWriteBenchmark {
+
+    @Benchmark
+    public void writePoint() throws IOException {
+        new Kml22WriteHandler(nextPoint(), file, false).run();
+    }
+
+    @Override
+    protected String getSinkName() {
+        return Kml22FileLogger.NAME;
+    }
+
+    @Override
+    protected String getExtension() {
+        return ".kml";
+    }
+}
@@ -0,0 +1,66 @@
+package com.mendhak.gpslogger.loggers.nmea;
+
+import com.mendhak.gpslogger.benchmarks.Tracks;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses one sentence per operation and reads the values GeneralLocationListener takes from it,
+ * with the String.split based NmeaSentence and with the reusable NmeaParser
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class NmeaSentenceBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int points;
+
+    private String[] sentences;
+    private int index;
+    private final NmeaParser parser = new NmeaParser();
+
+    @Setup(Level.Trial)
+    public void generateSentences() {
+        sentences = Tracks.generateNmea(Tracks.generate(points));
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        if (index == sentences.length) {
+            index = 0;
+        }
+
+        NmeaSentence nmeaSentence = new NmeaSentence(sentences[index++]);
+
+        if (nmeaSentence.isLocationSentence()) {
+            blackhole.consume(nmeaSentence.getLatestPdop());
+            blackhole.consume(nmeaSentence.getLatestVdop());
+            blackhole.consume(nmeaSentence.getLatestHdop());
+            blackhole.consume(nmeaSentence.getGeoIdHeight());
+            blackhole.consume(nmeaSentence.getAgeOfDgpsData());
+            blackhole.consume(nmeaSentence.getDgpsId());
+        }
+    }
+
+    @Benchmark
+    public void parseWithCursor(Blackhole blackhole) {
+        if (index == sentences.length) {
+            index = 0;
+        }
+
+        if (parser.parse(sentences[index++]) && parser.isLocationSentence()) {
+            blackhole.consume(parser.getPdop());
+            blackhole.consume(parser.getVdop());
+            blackhole.consume(parser.getHdop());
+            blackhole.consume(parser.getGeoIdHeight());
+            blackhole.consume(parser.getAgeOfDgpsData());
+            blackhole.consume(parser.getDgpsId());
+        }
+    }
+}
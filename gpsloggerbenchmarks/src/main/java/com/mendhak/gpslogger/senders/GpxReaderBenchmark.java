@@ -0,0 +1,54 @@
+package com.mendhak.gpslogger.senders;
+
+import com.mendhak.gpslogger.benchmarks.Tracks;
+import com.mendhak.gpslogger.common.SerializableLocation;
+import com.mendhak.gpslogger.loggers.gpx.GpxTrackFile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a whole GPX file per operation, into a list or streamed a point at a time
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class GpxReaderBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int points;
+
+    private File gpxFile;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws Exception {
+        gpxFile = Tracks.tempFile("benchmark", ".gpx");
+        GpxTrackFile.write(gpxFile, Tracks.generate(points));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() {
+        gpxFile.delete();
+    }
+
+    @Benchmark
+    public List<SerializableLocation> getPoints() throws Exception {
+        return GpxReader.getPoints(gpxFile);
+    }
+
+    @Benchmark
+    public void forEachPoint(final Blackhole blackhole) throws Exception {
+        GpxTrackPointReader.forEach(gpxFile, new GpxTrackPointReader.TrackPointCallback() {
+            @Override
+            public void onTrackPoint(SerializableLocation point) {
+                blackhole.consume(point);
+            }
+        });
+    }
+}